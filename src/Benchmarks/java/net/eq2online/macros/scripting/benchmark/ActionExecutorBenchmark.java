@@ -0,0 +1,159 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.eq2online.macros.scripting.ActionExecutor;
+import net.eq2online.macros.scripting.api.IMacro;
+import net.eq2online.macros.scripting.api.IMacroAction;
+import net.eq2online.macros.scripting.api.IReturnValue;
+import net.eq2online.macros.scripting.api.IScriptActionProvider;
+import net.eq2online.macros.scripting.headless.HeadlessActionProcessor;
+import net.eq2online.macros.scripting.headless.HeadlessEnvironment;
+import net.eq2online.macros.scripting.headless.HeadlessMacro;
+import net.eq2online.macros.scripting.headless.HeadlessScriptAction;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One tick of a set of macros whose scripts call a thread-safe action which blocks for about 1ms, as an
+ * action doing file or network I/O would, with the action executor disabled so that the action runs on the
+ * tick thread and enabled so that it runs on a worker and the macro waits for it as a latent action. The
+ * auxiliary counters report the actions completed and the number of ticks on which a macro was waiting for
+ * an action running off-thread.
+ *
+ * @author Adam Mummery-Smith
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionExecutorBenchmark
+{
+	private static final int SCRIPT_ACTIONS = 20;
+
+	/**
+	 * Actions completed and latent returns per tick
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Counters
+	{
+		public long actions;
+
+		public long waits;
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			this.actions = 0;
+			this.waits = 0;
+		}
+	}
+
+	@Param({ "false", "true" })
+	public boolean offThread;
+
+	@Param({ "8" })
+	public int macroCount;
+
+	private HeadlessEnvironment environment;
+
+	private ActionExecutor executor;
+
+	private HeadlessMacro[] macros;
+
+	private HeadlessActionProcessor[] processors;
+
+	@Setup
+	public void setup()
+	{
+		this.environment = HeadlessEnvironment.get();
+		this.executor = this.environment.getCore().getActionExecutor();
+		this.executor.setEnabled(this.offThread);
+
+		if (this.environment.getContext().getAction("blockingread") == null)
+		{
+			this.environment.getCore().registerScriptAction(new HeadlessScriptAction(this.environment.getContext(), "blockingread")
+			{
+				@Override
+				public IReturnValue execute(IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+				{
+					try
+					{
+						Thread.sleep(1L);
+					}
+					catch (InterruptedException ex)
+					{
+						Thread.currentThread().interrupt();
+					}
+
+					return null;
+				}
+			});
+		}
+
+		StringBuilder script = new StringBuilder();
+		for (int index = 0; index < ActionExecutorBenchmark.SCRIPT_ACTIONS; index++) script.append("blockingread;");
+
+		this.macros = new HeadlessMacro[this.macroCount];
+		this.processors = new HeadlessActionProcessor[this.macroCount];
+
+		for (int index = 0; index < this.macroCount; index++)
+		{
+			this.macros[index] = this.environment.createMacro(index);
+			this.processors[index] = new HeadlessActionProcessor(this.environment.getParser(), script.toString());
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		this.executor.shutdown();
+	}
+
+	@Benchmark
+	public void tick(Counters counters)
+	{
+		long executed = 0L, waits = 0L;
+
+		for (int index = 0; index < this.macroCount; index++)
+		{
+			HeadlessActionProcessor processor = this.processors[index];
+
+			if (!this.environment.getCore().getScheduler().isScheduled(this.macros[index]))
+			{
+				processor.reset();
+				this.environment.schedule(this.macros[index], processor, 1);
+			}
+
+			executed -= processor.getExecutedCount();
+			waits -= processor.getLatentCount();
+		}
+
+		this.environment.tick(true);
+
+		for (HeadlessActionProcessor processor : this.processors)
+		{
+			executed += processor.getExecutedCount();
+			waits += processor.getLatentCount();
+		}
+
+		counters.actions += executed;
+		counters.waits += waits;
+	}
+}
@@ -0,0 +1,30 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the scripting benchmarks with the GC profiler attached, so that allocation rates are reported
+ * alongside throughput. Pass a regular expression to run only the matching benchmarks.
+ *
+ * @author Adam Mummery-Smith
+ */
+public final class BenchmarkRunner
+{
+	private BenchmarkRunner() {}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+
+		Options options = new OptionsBuilder()
+			.include(include)
+			.addProfiler(GCProfiler.class)
+			.build();
+
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,54 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.eq2online.macros.scripting.api.IMacroEventVariableProvider;
+
+/**
+ * Variable provider for a chat event, in the shape of the providers supplied with the game's events
+ *
+ * @author Adam Mummery-Smith
+ */
+public class ChatEventVariables implements IMacroEventVariableProvider
+{
+	private static final Set<String> VARIABLES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList("CHAT", "CHATCLEAN", "CHATPLAYER")));
+
+	protected String chat, chatClean, chatPlayer;
+
+	@Override
+	public void initInstance(String[] instanceVariables)
+	{
+		this.chat = instanceVariables.length > 0 ? instanceVariables[0] : "";
+		this.chatClean = this.chat.replaceAll("\\u00A7.", "");
+		int end = this.chat.indexOf('>');
+		this.chatPlayer = this.chat.startsWith("<") && end > 0 ? this.chat.substring(1, end) : "";
+	}
+
+	@Override
+	public void updateVariables(boolean clock)
+	{
+	}
+
+	@Override
+	public Object getVariable(String variableName)
+	{
+		if ("CHAT".equals(variableName)) return this.chat;
+		if ("CHATCLEAN".equals(variableName)) return this.chatClean;
+		if ("CHATPLAYER".equals(variableName)) return this.chatPlayer;
+		return null;
+	}
+
+	@Override
+	public Set<String> getVariables()
+	{
+		return ChatEventVariables.VARIABLES;
+	}
+
+	@Override
+	public void onInit()
+	{
+	}
+}
@@ -0,0 +1,66 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.eq2online.macros.scripting.Direction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Angle normalisation in the Direction constructor, with in-range angles, small negative angles as produced
+ * by relative LOOK commands and large angles as produced by accumulated yaw
+ *
+ * @author Adam Mummery-Smith
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DirectionBenchmark
+{
+	private static final float[] IN_RANGE = { 0F, 45F, 90F, 180F, 270F, 359.5F };
+
+	private static final float[] NEGATIVE = { -0.5F, -45F, -90F, -180F, -270F, -359.5F };
+
+	private static final float[] LARGE = { 3600F, -7200.5F, 12345.6F, -98765.4F, 720F, 1080.25F };
+
+	@Benchmark
+	public void inRange(Blackhole blackhole)
+	{
+		DirectionBenchmark.normalise(DirectionBenchmark.IN_RANGE, blackhole);
+	}
+
+	@Benchmark
+	public void negative(Blackhole blackhole)
+	{
+		DirectionBenchmark.normalise(DirectionBenchmark.NEGATIVE, blackhole);
+	}
+
+	@Benchmark
+	public void large(Blackhole blackhole)
+	{
+		DirectionBenchmark.normalise(DirectionBenchmark.LARGE, blackhole);
+	}
+
+	private static void normalise(float[] angles, Blackhole blackhole)
+	{
+		for (int index = 0; index < angles.length; index++)
+		{
+			Direction direction = new Direction(angles[index], angles[angles.length - 1 - index]);
+			blackhole.consume(direction.yaw);
+			blackhole.consume(direction.pitch);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.eq2online.macros.scripting.MacroEventQueue;
+import net.eq2online.macros.scripting.api.IMacroEventVariableProvider;
+import net.eq2online.macros.scripting.api.IPooledMacroEvent;
+import net.eq2online.macros.scripting.headless.HeadlessEventManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A burst of events as raised by a busy chat and status provider in one tick, sent by name and by ID with and
+ * without coalescing or priorities and then drained as a batch, and the variable providers spawned for each
+ * dispatched event with and without pooling
+ *
+ * @author Adam Mummery-Smith
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventDispatchBenchmark
+{
+	private static final int BURST = 32;
+
+	private static final String[] CHAT = { "<Steve> anyone got iron?", "[Server] Restarting in 5 minutes", "<Alex> brb" };
+
+	private HeadlessEventManager manager;
+
+	private HeadlessEventManager coalescingManager;
+
+	private int chatId, healthId;
+
+	private IPooledMacroEvent chatEvent, pooledChatEvent;
+
+	private final List<MacroEventQueue.QueuedEvent> batch = new ArrayList<MacroEventQueue.QueuedEvent>();
+
+	@Setup
+	public void setup()
+	{
+		this.manager = EventDispatchBenchmark.createManager();
+		this.coalescingManager = EventDispatchBenchmark.createManager();
+		this.chatId = this.manager.getEventID("onChat");
+		this.healthId = this.manager.getEventID("onHealthChange");
+		this.coalescingManager.getQueue().setCoalescePolicy(this.healthId, MacroEventQueue.Coalesce.LATEST_WINS);
+
+		this.chatEvent = (IPooledMacroEvent)this.manager.getEvent(this.chatId);
+		this.chatEvent.setVariableProviderClass(ChatEventVariables.class);
+		this.pooledChatEvent = (IPooledMacroEvent)this.coalescingManager.getEvent(this.chatId);
+		this.pooledChatEvent.setVariableProviderClass(PooledChatEventVariables.class);
+	}
+
+	private static HeadlessEventManager createManager()
+	{
+		HeadlessEventManager manager = new HeadlessEventManager();
+		manager.registerEvent(null, "onChat");
+		manager.registerEvent(null, "onHealthChange");
+
+		// Drain every burst completely so that invocations do not build up a backlog
+		for (int priority = MacroEventQueue.PRIORITY_LOW; priority <= MacroEventQueue.PRIORITY_CRITICAL; priority++)
+		{
+			manager.getQueue().setQuota(priority, 0);
+		}
+
+		return manager;
+	}
+
+	@Benchmark
+	public void sendByName(Blackhole blackhole)
+	{
+		for (int index = 0; index < EventDispatchBenchmark.BURST; index++)
+		{
+			this.manager.sendEvent("onChat", 0, EventDispatchBenchmark.CHAT[index % EventDispatchBenchmark.CHAT.length]);
+			this.manager.sendEvent("onHealthChange", 0, "20");
+		}
+
+		this.drain(this.manager, blackhole);
+	}
+
+	@Benchmark
+	public void sendById(Blackhole blackhole)
+	{
+		for (int index = 0; index < EventDispatchBenchmark.BURST; index++)
+		{
+			this.manager.sendEvent(this.chatId, 0, EventDispatchBenchmark.CHAT[index % EventDispatchBenchmark.CHAT.length]);
+			this.manager.sendEvent(this.healthId, 0, "20");
+		}
+
+		this.drain(this.manager, blackhole);
+	}
+
+	@Benchmark
+	public void sendByIdCoalesced(Blackhole blackhole)
+	{
+		for (int index = 0; index < EventDispatchBenchmark.BURST; index++)
+		{
+			this.coalescingManager.sendEvent(this.chatId, 0, EventDispatchBenchmark.CHAT[index % EventDispatchBenchmark.CHAT.length]);
+			this.coalescingManager.sendEvent(this.healthId, 0, "20");
+		}
+
+		this.drain(this.coalescingManager, blackhole);
+	}
+
+	@Benchmark
+	public void sendByIdPrioritised(Blackhole blackhole)
+	{
+		for (int index = 0; index < EventDispatchBenchmark.BURST; index++)
+		{
+			this.manager.sendEvent(this.chatId, MacroEventQueue.PRIORITY_LOW, EventDispatchBenchmark.CHAT[index % EventDispatchBenchmark.CHAT.length]);
+			this.manager.sendEvent(this.healthId, MacroEventQueue.PRIORITY_CRITICAL, "20");
+		}
+
+		this.drain(this.manager, blackhole);
+	}
+
+	@Benchmark
+	public void spawnVariableProviders(Blackhole blackhole)
+	{
+		this.spawnVariableProviders(this.chatEvent, blackhole);
+	}
+
+	@Benchmark
+	public void spawnVariableProvidersPooled(Blackhole blackhole)
+	{
+		this.spawnVariableProviders(this.pooledChatEvent, blackhole);
+	}
+
+	private void spawnVariableProviders(IPooledMacroEvent event, Blackhole blackhole)
+	{
+		for (int index = 0; index < EventDispatchBenchmark.BURST; index++)
+		{
+			IMacroEventVariableProvider provider = event.getVariableProvider(new String[] { EventDispatchBenchmark.CHAT[index % EventDispatchBenchmark.CHAT.length] });
+			blackhole.consume(provider.getVariable("CHATPLAYER"));
+			event.releaseVariableProvider(provider);
+		}
+	}
+
+	private void drain(HeadlessEventManager manager, Blackhole blackhole)
+	{
+		this.batch.clear();
+		blackhole.consume(manager.getQueue().drainTo(this.batch, Integer.MAX_VALUE));
+		blackhole.consume(this.batch);
+	}
+}
@@ -0,0 +1,100 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.eq2online.macros.scripting.LazyVariableProvider;
+import net.eq2online.macros.scripting.api.IVariableSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * One tick of a provider exposing a few hundred environment variables of which a script reads three,
+ * computed up front in updateVariables() and computed lazily on read
+ *
+ * @author Adam Mummery-Smith
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyVariableBenchmark
+{
+	private static final int VARIABLES = 256;
+
+	private static final String[] READ = { "VAR0", "VAR17", "VAR200" };
+
+	/**
+	 * Eager provider computing every variable on each update
+	 */
+	private static class EagerProvider extends ProviderUpdateBenchmark.PolledProvider
+	{
+		@Override
+		public void updateVariables(boolean clock)
+		{
+			this.tick++;
+
+			for (int index = 0; index < LazyVariableBenchmark.VARIABLES; index++)
+			{
+				this.variables.put("VAR" + index, LazyVariableBenchmark.compute(this.tick, index));
+			}
+		}
+	}
+
+	private int tick;
+
+	private EagerProvider eager;
+
+	private LazyVariableProvider lazy;
+
+	@Setup
+	public void setup()
+	{
+		this.eager = new EagerProvider();
+		this.lazy = new LazyVariableProvider();
+
+		for (int index = 0; index < LazyVariableBenchmark.VARIABLES; index++)
+		{
+			final int variable = index;
+			this.lazy.register("VAR" + index, new IVariableSupplier()
+			{
+				@Override
+				public Object get()
+				{
+					return LazyVariableBenchmark.compute(LazyVariableBenchmark.this.tick, variable);
+				}
+			});
+		}
+	}
+
+	static Object compute(int tick, int variable)
+	{
+		return (variable & 1) == 0 ? (Object)Integer.valueOf(tick * 31 + variable) : "value" + (tick + variable);
+	}
+
+	@Benchmark
+	public void eager(Blackhole blackhole)
+	{
+		this.eager.updateVariables(true);
+		for (String name : LazyVariableBenchmark.READ) blackhole.consume(this.eager.getVariable(name));
+	}
+
+	@Benchmark
+	public void lazy(Blackhole blackhole)
+	{
+		this.tick++;
+		this.lazy.updateVariables(true);
+		for (String name : LazyVariableBenchmark.READ) blackhole.consume(this.lazy.getVariable(name));
+	}
+}
@@ -0,0 +1,108 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.eq2online.macros.scripting.ScriptCore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the ScriptCore numeric parsers with the previous exception-based implementations, on both numeric
+ * input and the non-numeric text (mostly chat) which ReturnValue and ReturnValueArray feed them
+ *
+ * @author Adam Mummery-Smith
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumberParsingBenchmark
+{
+	private static final String[] NUMERIC = { "0", "42", "-17", " 1024 ", "1,000,000", "2147483647", "-2147483648", "65535" };
+
+	private static final String[] NON_NUMERIC = { "", "true", "Hello there!", "<Steve> anyone got iron?", "[Server] Restarting in 5 minutes", "x", "12 apples", "-", "I think so", "No" };
+
+	private static final String[] FLOATS = { "0.5", "-1.25", "3.14159", "100", "1e3", "0.1", "-273.15", "12345.678" };
+
+	@Param({ "numeric", "nonNumeric" })
+	public String input;
+
+	private String[] values;
+
+	private String[] floatValues;
+
+	@Setup
+	public void setup()
+	{
+		this.values = "numeric".equals(this.input) ? NumberParsingBenchmark.NUMERIC : NumberParsingBenchmark.NON_NUMERIC;
+		this.floatValues = "numeric".equals(this.input) ? NumberParsingBenchmark.FLOATS : NumberParsingBenchmark.NON_NUMERIC;
+	}
+
+	@Benchmark
+	public void tryParseInt(Blackhole blackhole)
+	{
+		for (String value : this.values) blackhole.consume(ScriptCore.tryParseInt(value, 0));
+	}
+
+	@Benchmark
+	public void tryParseIntLegacy(Blackhole blackhole)
+	{
+		for (String value : this.values) blackhole.consume(NumberParsingBenchmark.legacyTryParseInt(value, 0));
+	}
+
+	@Benchmark
+	public void tryParseLong(Blackhole blackhole)
+	{
+		for (String value : this.values) blackhole.consume(ScriptCore.tryParseLong(value, 0L));
+	}
+
+	@Benchmark
+	public void tryParseLongLegacy(Blackhole blackhole)
+	{
+		for (String value : this.values) blackhole.consume(NumberParsingBenchmark.legacyTryParseLong(value, 0L));
+	}
+
+	@Benchmark
+	public void tryParseFloat(Blackhole blackhole)
+	{
+		for (String value : this.floatValues) blackhole.consume(ScriptCore.tryParseFloat(value, 0F));
+	}
+
+	@Benchmark
+	public void tryParseFloatLegacy(Blackhole blackhole)
+	{
+		for (String value : this.floatValues) blackhole.consume(NumberParsingBenchmark.legacyTryParseFloat(value, 0F));
+	}
+
+	/**
+	 * Previous implementations, kept here as the baseline
+	 */
+	static int legacyTryParseInt(String value, int defaultValue)
+	{
+		if (value == null) return defaultValue;
+		try { return Integer.parseInt(value.trim().replaceAll(",", "")); } catch (NumberFormatException ex) {} return defaultValue;
+	}
+
+	static long legacyTryParseLong(String value, long defaultValue)
+	{
+		try { return Long.parseLong(value.trim()); } catch (NumberFormatException ex) {} return defaultValue;
+	}
+
+	static float legacyTryParseFloat(String value, float defaultValue)
+	{
+		try { return Float.parseFloat(value.trim()); } catch (NumberFormatException ex) {} return defaultValue;
+	}
+}
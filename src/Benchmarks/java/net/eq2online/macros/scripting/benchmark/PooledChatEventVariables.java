@@ -0,0 +1,17 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import net.eq2online.macros.scripting.api.IPooledVariableProvider;
+
+/**
+ * Chat event variables which can be reused
+ *
+ * @author Adam Mummery-Smith
+ */
+public class PooledChatEventVariables extends ChatEventVariables implements IPooledVariableProvider
+{
+	@Override
+	public void reset()
+	{
+		this.chat = this.chatClean = this.chatPlayer = null;
+	}
+}
@@ -0,0 +1,149 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.eq2online.macros.scripting.api.IChangeTrackingVariableProvider;
+import net.eq2online.macros.scripting.api.IVariableChangeTracker;
+import net.eq2online.macros.scripting.api.IVariableProvider;
+import net.eq2online.macros.scripting.headless.HeadlessScriptActionProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One tick of variable provider updates with providers which rebuild their variables every tick and with
+ * change-tracking providers of which only one changes per tick
+ *
+ * @author Adam Mummery-Smith
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProviderUpdateBenchmark
+{
+	/**
+	 * Provider which rebuilds a map of environment variables on every update
+	 */
+	public static class PolledProvider implements IVariableProvider
+	{
+		protected final Map<String, Object> variables = new HashMap<String, Object>();
+
+		protected int tick;
+
+		@Override
+		public void updateVariables(boolean clock)
+		{
+			this.tick++;
+			this.variables.clear();
+			this.variables.put("XPOS", Integer.valueOf(this.tick & 0xFF));
+			this.variables.put("YPOS", Integer.valueOf(64));
+			this.variables.put("ZPOS", Integer.valueOf(-this.tick & 0xFF));
+			this.variables.put("BIOME", "Plains");
+		}
+
+		@Override
+		public Object getVariable(String variableName)
+		{
+			return this.variables.get(variableName);
+		}
+
+		@Override
+		public Set<String> getVariables()
+		{
+			return Collections.unmodifiableSet(this.variables.keySet());
+		}
+
+		@Override
+		public void onInit()
+		{
+		}
+	}
+
+	/**
+	 * The same provider updated only when it is told its position has changed
+	 */
+	public static class TrackedProvider extends PolledProvider implements IChangeTrackingVariableProvider
+	{
+		private volatile IVariableChangeTracker tracker;
+
+		@Override
+		public void setChangeTracker(IVariableChangeTracker tracker)
+		{
+			this.tracker = tracker;
+		}
+
+		@Override
+		public void updateVariables(boolean clock)
+		{
+			super.updateVariables(clock);
+
+			IVariableChangeTracker tracker = this.tracker;
+			if (tracker != null)
+			{
+				tracker.markChanged("XPOS");
+				tracker.markChanged("ZPOS");
+			}
+		}
+
+		void moved()
+		{
+			IVariableChangeTracker tracker = this.tracker;
+			if (tracker != null) tracker.markDirty();
+		}
+	}
+
+	@Param({ "10", "100" })
+	public int providerCount;
+
+	private HeadlessScriptActionProvider polled, tracked;
+
+	private TrackedProvider[] trackedProviders;
+
+	private int tick;
+
+	@Setup
+	public void setup()
+	{
+		this.polled = new HeadlessScriptActionProvider();
+		this.tracked = new HeadlessScriptActionProvider();
+		this.trackedProviders = new TrackedProvider[this.providerCount];
+
+		for (int index = 0; index < this.providerCount; index++)
+		{
+			this.polled.registerVariableProvider(new PolledProvider());
+			this.trackedProviders[index] = new TrackedProvider();
+			this.tracked.registerVariableProvider(this.trackedProviders[index]);
+		}
+
+		this.tracked.updateVariableProviders(true);
+	}
+
+	@Benchmark
+	public void updatePolled()
+	{
+		this.polled.updateVariableProviders(true);
+	}
+
+	@Benchmark
+	public void updateTracked()
+	{
+		this.trackedProviders[this.tick++ % this.providerCount].moved();
+		this.tracked.updateVariableProviders(true);
+	}
+}
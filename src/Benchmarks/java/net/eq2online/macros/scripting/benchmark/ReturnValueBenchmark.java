@@ -0,0 +1,86 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.eq2online.macros.scripting.api.ReturnValue;
+import net.eq2online.macros.scripting.api.ReturnValueArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Return value construction and conversion between the string, integer and boolean representations, which
+ * happens for every action whose result is assigned to a variable
+ *
+ * @author Adam Mummery-Smith
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReturnValueBenchmark
+{
+	private static final String[] STRINGS = { "42", "-17", "true", "false", "Steve", "<Steve> anyone got iron?", "1,000", "" };
+
+	private List<String> strings;
+
+	private List<Integer> ints;
+
+	@Setup
+	public void setup()
+	{
+		this.strings = Arrays.asList(ReturnValueBenchmark.STRINGS);
+		this.ints = new ArrayList<Integer>();
+		for (int value = -8; value < 56; value++) this.ints.add(Integer.valueOf(value));
+	}
+
+	@Benchmark
+	public void stringToInteger(Blackhole blackhole)
+	{
+		for (String value : ReturnValueBenchmark.STRINGS) blackhole.consume(new ReturnValue(value).getInteger());
+	}
+
+	@Benchmark
+	public void stringToBoolean(Blackhole blackhole)
+	{
+		for (String value : ReturnValueBenchmark.STRINGS) blackhole.consume(new ReturnValue(value).getBoolean());
+	}
+
+	@Benchmark
+	public void integerToString(Blackhole blackhole)
+	{
+		for (int value = -8; value < 56; value++) blackhole.consume(new ReturnValue(value).getString());
+	}
+
+	@Benchmark
+	public void arrayStringsToIntegers(Blackhole blackhole)
+	{
+		ReturnValueArray array = new ReturnValueArray(false);
+		array.putStrings(this.strings);
+		List<Integer> integers = array.getIntegers();
+		for (int index = 0; index < integers.size(); index++) blackhole.consume(integers.get(index));
+	}
+
+	@Benchmark
+	public void arrayIntegersToStrings(Blackhole blackhole)
+	{
+		ReturnValueArray array = new ReturnValueArray(false);
+		array.putInts(this.ints);
+		List<String> strings = array.getStrings();
+		for (int index = 0; index < strings.size(); index++) blackhole.consume(strings.get(index));
+	}
+}
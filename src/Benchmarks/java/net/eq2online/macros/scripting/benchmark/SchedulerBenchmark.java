@@ -0,0 +1,153 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.eq2online.macros.scripting.api.IMacro;
+import net.eq2online.macros.scripting.api.IMacroAction;
+import net.eq2online.macros.scripting.api.IReturnValue;
+import net.eq2online.macros.scripting.api.IScriptActionProvider;
+import net.eq2online.macros.scripting.headless.HeadlessActionProcessor;
+import net.eq2online.macros.scripting.headless.HeadlessEnvironment;
+import net.eq2online.macros.scripting.headless.HeadlessMacro;
+import net.eq2online.macros.scripting.headless.HeadlessScriptAction;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One tick of a set of busy macros, each a long script of actions which take about 50us, run by the
+ * {@link net.eq2online.macros.scripting.MacroScheduler} within its tick budget and, for comparison, run to
+ * completion without a scheduler. The scheduled tick time should stay within the budget however many macros
+ * are running, the auxiliary counters report the actions run and the number of times a macro yielded at an
+ * action boundary.
+ *
+ * @author Adam Mummery-Smith
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark
+{
+	private static final int SCRIPT_ACTIONS = 100;
+
+	private static final long ACTION_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	/**
+	 * Actions run and yields per tick
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Counters
+	{
+		public long actions;
+
+		public long yields;
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			this.actions = 0;
+			this.yields = 0;
+		}
+	}
+
+	@Param({ "2", "8" })
+	public int macroCount;
+
+	private HeadlessEnvironment environment;
+
+	private HeadlessMacro[] macros;
+
+	private HeadlessActionProcessor[] processors;
+
+	@Setup
+	public void setup()
+	{
+		this.environment = HeadlessEnvironment.get();
+
+		if (this.environment.getContext().getAction("busywork") == null)
+		{
+			this.environment.getCore().registerScriptAction(new HeadlessScriptAction(this.environment.getContext(), "busywork")
+			{
+				@Override
+				public IReturnValue execute(IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+				{
+					for (long end = System.nanoTime() + SchedulerBenchmark.ACTION_NANOS; System.nanoTime() < end;);
+					return null;
+				}
+			});
+		}
+
+		StringBuilder script = new StringBuilder();
+		for (int index = 0; index < SchedulerBenchmark.SCRIPT_ACTIONS; index++) script.append("busywork;");
+
+		this.macros = new HeadlessMacro[this.macroCount];
+		this.processors = new HeadlessActionProcessor[this.macroCount];
+
+		for (int index = 0; index < this.macroCount; index++)
+		{
+			this.macros[index] = this.environment.createMacro(index);
+			this.processors[index] = new HeadlessActionProcessor(this.environment.getParser(), script.toString());
+		}
+	}
+
+	@Benchmark
+	public void scheduledTick(Counters counters)
+	{
+		long executed = 0L, yields = 0L;
+
+		for (int index = 0; index < this.macroCount; index++)
+		{
+			HeadlessActionProcessor processor = this.processors[index];
+
+			// Restart macros which finished on the last tick so that every tick is equally busy
+			if (!this.environment.getCore().getScheduler().isScheduled(this.macros[index]))
+			{
+				processor.reset();
+				this.environment.schedule(this.macros[index], processor, 1);
+			}
+
+			executed -= processor.getExecutedCount();
+			yields -= processor.getYieldCount();
+		}
+
+		this.environment.tick(true);
+
+		for (HeadlessActionProcessor processor : this.processors)
+		{
+			executed += processor.getExecutedCount();
+			yields += processor.getYieldCount();
+		}
+
+		counters.actions += executed;
+		counters.yields += yields;
+	}
+
+	@Benchmark
+	public void unscheduledTick(Counters counters)
+	{
+		for (int index = 0; index < this.macroCount; index++)
+		{
+			HeadlessActionProcessor processor = this.processors[index];
+			long executed = processor.getExecutedCount();
+
+			processor.reset();
+			processor.execute(this.macros[index], this.macros[index].getContext(), false, true, true);
+			counters.actions += processor.getExecutedCount() - executed;
+		}
+	}
+}
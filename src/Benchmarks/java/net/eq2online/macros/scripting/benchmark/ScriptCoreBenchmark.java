@@ -0,0 +1,80 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.eq2online.macros.scripting.ScriptCore;
+import net.eq2online.macros.scripting.ScriptTokenizer;
+import net.eq2online.macros.scripting.headless.HeadlessEnvironment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parameter tokenising and action name highlighting, run against the lines and parameter lists in
+ * {@link ScriptCorpus}
+ *
+ * @author Adam Mummery-Smith
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptCoreBenchmark
+{
+	private ScriptCore core;
+
+	private ScriptTokenizer tokenizer;
+
+	private StringBuilder rawString;
+
+	@Setup
+	public void setup()
+	{
+		this.core = HeadlessEnvironment.get().registerActions(ScriptCorpus.ACTION_NAMES).getCore();
+		this.tokenizer = new ScriptTokenizer(',', '"', '"', '\\');
+		this.rawString = new StringBuilder();
+	}
+
+	@Benchmark
+	public void tokenize(Blackhole blackhole)
+	{
+		for (String params : ScriptCorpus.PARAMS)
+		{
+			this.rawString.setLength(0);
+			blackhole.consume(ScriptCore.tokenize(params, ',', '"', '"', '\\', this.rawString));
+		}
+	}
+
+	@Benchmark
+	public void tokenizeReused(Blackhole blackhole)
+	{
+		for (String params : ScriptCorpus.PARAMS)
+		{
+			ScriptTokenizer tokenizer = this.tokenizer.tokenize(params);
+			for (int index = 0; index < tokenizer.getCount(); index++) blackhole.consume(tokenizer.getLength(index));
+		}
+	}
+
+	@Benchmark
+	public void highlight(Blackhole blackhole)
+	{
+		for (String line : ScriptCorpus.LINES) blackhole.consume(this.core.highlight(line));
+	}
+
+	@Benchmark
+	public void getAction(Blackhole blackhole)
+	{
+		for (String actionName : ScriptCorpus.ACTION_NAMES) blackhole.consume(this.core.getAction(actionName));
+	}
+}
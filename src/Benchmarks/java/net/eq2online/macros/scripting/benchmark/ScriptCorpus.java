@@ -0,0 +1,74 @@
+package net.eq2online.macros.scripting.benchmark;
+
+/**
+ * Script fragments taken from typical user scripts, shared by the benchmarks so that they all measure the
+ * same kind of input
+ *
+ * @author Adam Mummery-Smith
+ */
+final class ScriptCorpus
+{
+	/**
+	 * Names of the actions the corpus uses, registered with the benchmark context so that highlighting finds
+	 * them
+	 */
+	static final String[] ACTION_NAMES = {
+		"echo", "log", "set", "unset", "inc", "dec", "if", "else", "endif", "ifmatches", "do", "loop", "while",
+		"until", "for", "next", "foreach", "wait", "key", "keydown", "keyup", "look", "looks", "pick", "slot",
+		"getid", "getslot", "match", "replace", "split", "join", "indexof", "push", "pop", "arraysize", "calcyawto",
+		"strip", "lcase", "ucase", "sprint", "unsprint", "title", "playsound", "stop", "random", "time"
+	};
+
+	/**
+	 * Parameter lists as they appear between the parentheses of an action
+	 */
+	static final String[] PARAMS = {
+		"\"Hello %PLAYER%\"",
+		"&msg,\"<(\\w+)> (.+)\",{&who,&text}",
+		"#count,1",
+		"%XPOS%,%YPOS%,%ZPOS%",
+		"\"/tp %PLAYER% 100 64 -200\"",
+		"\"{\\\"text\\\":\\\"a, b, c\\\"}\",\"escaped \\\"quote\\\"\"",
+		"&items[],\",\",\"stone,dirt,cobblestone,oak_planks,iron_ingot\"",
+		"attack",
+		"90,0,200ms",
+		"",
+		"&target,\"%&who% said %&text%\"",
+		"  padded  ,  values  ,\"  quoted  \"  "
+	};
+
+	/**
+	 * Text containing variable references, expanded against the benchmark macro
+	 */
+	static final String[] TEMPLATES = {
+		"Hello %PLAYER%, you have %#count% items",
+		"/tp %PLAYER% %XPOS% %YPOS% %ZPOS%",
+		"Plain chat with no variables at all",
+		"%&who% said: %&text%",
+		"Slot %#slot% holds %&items[2]% (%@#total% total)",
+		"100% sure this has stray percent signs %&who%",
+		"%@&shared% and %flag% and %#missing%"
+	};
+
+	/**
+	 * Variable specifiers, with and without type prefixes, shared markers and array indices
+	 */
+	static final String[] VARIABLES = {
+		"flag", "#count", "&who", "@#total", "@&shared", "&items[2]", "#slot", "&text", "@flag", "&missing[12]"
+	};
+
+	/**
+	 * Complete script lines, as they are highlighted by the editor
+	 */
+	static final String[] LINES = {
+		"IF(flag); ECHO(\"Hello %PLAYER%\"); ENDIF;",
+		"DO(5); KEY(attack); WAIT(200ms); LOOP;",
+		"IFMATCHES(&msg,\"<(\\w+)> (.+)\",&who,1); LOG(\"%&who% said something\"); ENDIF;",
+		"SET(#count,0); FOREACH(&items[],&item); INC(#count); NEXT; ECHO(\"%#count% items\");",
+		"LOOK(90,0,200ms); PICK(stone,dirt); SLOT(3); SPRINT; WAIT(1); UNSPRINT;",
+		"SPLIT(\",\",\"a,b,c\",&parts[]); ARRAYSIZE(&parts[],#len); JOIN(\" \",&parts[],&joined);",
+		"just some text without any actions in it, like a chat message"
+	};
+
+	private ScriptCorpus() {}
+}
@@ -0,0 +1,73 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.eq2online.macros.scripting.api.IMacroAction;
+import net.eq2online.macros.scripting.api.IMacroActionContext;
+import net.eq2online.macros.scripting.headless.HeadlessEnvironment;
+import net.eq2online.macros.scripting.headless.HeadlessMacro;
+import net.eq2online.macros.scripting.headless.HeadlessScriptParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing the script lines in {@link ScriptCorpus} into macro actions and executing the parsed actions in a
+ * headless environment, which measures the engine's own overhead per action since the actions do nothing
+ *
+ * @author Adam Mummery-Smith
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptExecutionBenchmark
+{
+	private HeadlessScriptParser parser;
+
+	private HeadlessMacro macro;
+
+	private IMacroActionContext context;
+
+	private List<IMacroAction> actions;
+
+	@Setup
+	public void setup()
+	{
+		HeadlessEnvironment environment = HeadlessEnvironment.get().registerActions(ScriptCorpus.ACTION_NAMES);
+		this.parser = environment.getParser();
+		this.macro = environment.createMacro(1);
+		this.context = this.macro.getContext();
+
+		this.actions = new ArrayList<IMacroAction>();
+		for (String line : ScriptCorpus.LINES) this.actions.addAll(this.parser.parseScript(null, line));
+	}
+
+	@Benchmark
+	public void parse(Blackhole blackhole)
+	{
+		for (String line : ScriptCorpus.LINES) blackhole.consume(this.parser.parseScript(null, line));
+	}
+
+	@Benchmark
+	public void execute(Blackhole blackhole) throws Exception
+	{
+		for (int index = 0; index < this.actions.size(); index++)
+		{
+			blackhole.consume(this.actions.get(index).execute(this.context, this.macro, false, true));
+		}
+	}
+}
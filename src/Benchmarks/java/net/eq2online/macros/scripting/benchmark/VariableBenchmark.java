@@ -0,0 +1,106 @@
+package net.eq2online.macros.scripting.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.eq2online.macros.scripting.ScriptCore;
+import net.eq2online.macros.scripting.Variable;
+import net.eq2online.macros.scripting.VariableExpander;
+import net.eq2online.macros.scripting.api.IScriptActionProvider;
+import net.eq2online.macros.scripting.api.IVariableProviderShared;
+import net.eq2online.macros.scripting.headless.HeadlessEnvironment;
+import net.eq2online.macros.scripting.headless.HeadlessMacro;
+import net.eq2online.macros.scripting.headless.HeadlessVariableStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Variable expansion and lookup against a headless macro whose variables are populated with the values
+ * referenced by {@link ScriptCorpus}
+ *
+ * @author Adam Mummery-Smith
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariableBenchmark
+{
+	private IScriptActionProvider provider;
+
+	private IVariableProviderShared shared;
+
+	private HeadlessMacro macro;
+
+	@Setup
+	public void setup()
+	{
+		HeadlessEnvironment environment = HeadlessEnvironment.get().registerActions(ScriptCorpus.ACTION_NAMES);
+		this.provider = environment.getProvider();
+		this.shared = this.provider.getSharedVariableProvider();
+		this.macro = environment.createMacro(1);
+
+		HeadlessVariableStore variables = this.macro.getVariableStore();
+		variables.setFlag("flag", true);
+		variables.setCounter("count", 42);
+		variables.setCounter("slot", 3);
+		variables.setString("who", "Steve");
+		variables.setString("text", "anyone got iron?");
+		variables.setString("items", 2, "cobblestone");
+		this.shared.setCounter("total", 1024);
+		this.shared.setString("shared", "shared value");
+		this.shared.setFlag("flag", true);
+	}
+
+	@Benchmark
+	public void parseVars(Blackhole blackhole)
+	{
+		for (String template : ScriptCorpus.TEMPLATES) blackhole.consume(ScriptCore.parseVars(this.provider, this.macro, template, false));
+	}
+
+	@Benchmark
+	public void parseVarsQuoted(Blackhole blackhole)
+	{
+		for (String template : ScriptCorpus.TEMPLATES) blackhole.consume(new VariableExpander(this.provider, this.macro, template, true).toString());
+	}
+
+	@Benchmark
+	public void expand(Blackhole blackhole)
+	{
+		for (String variableName : ScriptCorpus.VARIABLES) blackhole.consume(VariableExpander.expand(this.provider, this.macro, variableName));
+	}
+
+	@Benchmark
+	public void getVariable(Blackhole blackhole)
+	{
+		for (String variableName : ScriptCorpus.VARIABLES) blackhole.consume(Variable.getVariable(this.shared, null, this.macro, variableName));
+	}
+
+	@Benchmark
+	public void getVariableValue(Blackhole blackhole)
+	{
+		for (String variableName : ScriptCorpus.VARIABLES)
+		{
+			Variable variable = Variable.getVariable(this.shared, null, this.macro, variableName);
+			if (variable == null) continue;
+
+			switch (variable.type)
+			{
+				case Counter: blackhole.consume(variable.getCounter()); break;
+				case String:  blackhole.consume(variable.getString()); break;
+				default:      blackhole.consume(variable.getFlag()); break;
+			}
+		}
+	}
+}
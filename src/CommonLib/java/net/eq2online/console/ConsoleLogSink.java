@@ -0,0 +1,35 @@
+package net.eq2online.console;
+
+import java.io.PrintStream;
+
+/**
+ * Log sink which writes to standard error, used when LiteLoader is not available
+ *
+ * @author Adam Mummery-Smith
+ */
+public class ConsoleLogSink implements ILogSink
+{
+	private final PrintStream out;
+
+	public ConsoleLogSink()
+	{
+		this(System.err);
+	}
+
+	public ConsoleLogSink(PrintStream out)
+	{
+		this.out = out;
+	}
+
+	@Override
+	public void write(Log.Level level, String message)
+	{
+		this.out.println("[Macros] [" + level + "] " + message);
+	}
+
+	@Override
+	public Log.Level getLevel()
+	{
+		return Log.Level.INFO;
+	}
+}
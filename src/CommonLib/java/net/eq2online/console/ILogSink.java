@@ -0,0 +1,23 @@
+package net.eq2online.console;
+
+/**
+ * Destination for messages written by {@link Log}, called only from the log's appender thread
+ *
+ * @author Adam Mummery-Smith
+ */
+public interface ILogSink
+{
+	/**
+	 * Write a formatted message
+	 *
+	 * @param level
+	 * @param message
+	 */
+	public abstract void write(Log.Level level, String message);
+
+	/**
+	 * Get the lowest level the underlying logger will actually output, used as the log level unless one is
+	 * set explicitly
+	 */
+	public abstract Log.Level getLevel();
+}
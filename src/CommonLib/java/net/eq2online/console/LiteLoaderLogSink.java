@@ -0,0 +1,46 @@
+package net.eq2online.console;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
+
+/**
+ * Log sink which writes to the LiteLoader logger, only loaded by {@link Log} if LiteLoader is present
+ *
+ * @author Adam Mummery-Smith
+ */
+final class LiteLoaderLogSink implements ILogSink
+{
+	/**
+	 * Name of the log4j logger LiteLoaderLogger writes to
+	 */
+	private static final String LOGGER_NAME = "LiteLoader";
+
+	@Override
+	public void write(Log.Level level, String message)
+	{
+		switch (level)
+		{
+			case DEBUG:
+				LiteLoaderLogger.debug("%s", message);
+				break;
+
+			case WARN:
+				LiteLoaderLogger.warning("%s", message);
+				break;
+
+			default:
+				LiteLoaderLogger.info("%s", message);
+				break;
+		}
+	}
+
+	@Override
+	public Log.Level getLevel()
+	{
+		Logger logger = LogManager.getLogger(LiteLoaderLogSink.LOGGER_NAME);
+		if (logger.isDebugEnabled()) return Log.Level.DEBUG;
+		return logger.isInfoEnabled() ? Log.Level.INFO : Log.Level.WARN;
+	}
+}
@@ -3,58 +3,441 @@ package net.eq2online.console;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.MessageFormat;
-
-import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Macros log writer
- * 
+ * Macros log writer. Messages below the current level are discarded before anything is formatted, messages
+ * which pass are placed in a fixed-size ring buffer and formatted and written by a background appender
+ * thread, so callers never wait for formatting or for the underlying logger. Because formatting is deferred,
+ * arguments should not be mutated after they are passed in. If the buffer is full the message is dropped
+ * and the number of dropped messages is reported once there is space again.
+ *
+ * Messages are written to the LiteLoader logger if LiteLoader is on the class path and to standard error
+ * otherwise, another {@link ILogSink} can be set with {@link #setSink}.
+ *
+ * By default the minimum level is the lowest level the sink's underlying logger outputs, so the LiteLoader
+ * logging configuration decides whether debug messages are written. The level can be fixed instead with
+ * {@link #setLevel} or by setting the system property macros.log.level to DEBUG, INFO or WARN.
+ *
  * @author Adam Mummery-Smith
  */
 public final class Log
 {
+	/**
+	 * Log levels
+	 */
+	public enum Level
+	{
+		DEBUG,
+		INFO,
+		WARN
+	}
+
+	/**
+	 * Number of slots in the ring buffer, must be a power of two
+	 */
+	private static final int BUFFER_SIZE = 1024;
+
+	private static final int BUFFER_MASK = Log.BUFFER_SIZE - 1;
+
+	/**
+	 * Slot kinds
+	 */
+	private static final int KIND_TEXT = 0, KIND_FORMAT = 1, KIND_OBJECT = 2, KIND_THROWABLE = 3;
+
+	/**
+	 * System property which fixes the minimum level
+	 */
+	public static final String LEVEL_PROPERTY = "macros.log.level";
+
+	/**
+	 * Destination for formatted messages
+	 */
+	private static volatile ILogSink sink = Log.createDefaultSink();
+
+	/**
+	 * Level set by the system property or setLevel, null to follow the sink
+	 */
+	private static volatile Level fixedLevel = Log.parseLevel(System.getProperty(Log.LEVEL_PROPERTY), null);
+
+	/**
+	 * Minimum level which will be written
+	 */
+	private static volatile Level level = Log.fixedLevel != null ? Log.fixedLevel : Log.getSinkLevel(Log.sink);
+
+	/**
+	 * Slot contents, written by the producer which claimed the slot and read by the appender once the slot's
+	 * sequence has been published
+	 */
+	private static final Level[] levels = new Level[Log.BUFFER_SIZE];
+
+	private static final int[] kinds = new int[Log.BUFFER_SIZE];
+
+	private static final Object[] payloads = new Object[Log.BUFFER_SIZE];
+
+	private static final Object[][] arguments = new Object[Log.BUFFER_SIZE][];
+
+	/**
+	 * Sequence number of the message each slot holds, a slot is readable once this equals the read sequence
+	 */
+	private static final AtomicLongArray published = new AtomicLongArray(Log.BUFFER_SIZE);
+
+	/**
+	 * Next sequence number to claim
+	 */
+	private static final AtomicLong writeSequence = new AtomicLong();
+
+	/**
+	 * Next sequence number the appender will read
+	 */
+	private static final AtomicLong readSequence = new AtomicLong();
+
+	/**
+	 * Messages dropped because the buffer was full
+	 */
+	private static final AtomicLong dropped = new AtomicLong();
+
+	private static volatile Thread appender;
+
+	private static volatile boolean appenderWaiting;
+
+	static
+	{
+		for (int slot = 0; slot < Log.BUFFER_SIZE; slot++)
+		{
+			Log.published.set(slot, -1L);
+		}
+	}
+
+	private Log() {}
+
+	/**
+	 * Set the minimum level to write, or null to use the sink's level
+	 *
+	 * @param level
+	 */
+	public static void setLevel(Level level)
+	{
+		Log.fixedLevel = level;
+		Log.level = level != null ? level : Log.getSinkLevel(Log.sink);
+	}
+
+	/**
+	 * Get the minimum level to write
+	 */
+	public static Level getLevel()
+	{
+		return Log.level;
+	}
+
+	/**
+	 * Set the destination for messages, messages already queued may be written to the new sink
+	 *
+	 * @param sink
+	 */
+	public static void setSink(ILogSink sink)
+	{
+		if (sink == null) return;
+
+		Log.sink = sink;
+		if (Log.fixedLevel == null) Log.level = Log.getSinkLevel(sink);
+	}
+
+	/**
+	 * Get the destination for messages
+	 */
+	public static ILogSink getSink()
+	{
+		return Log.sink;
+	}
+
+	/**
+	 * Get whether messages at the specified level are written
+	 *
+	 * @param level
+	 */
+	public static boolean isEnabled(Level level)
+	{
+		return level.ordinal() >= Log.level.ordinal();
+	}
+
+	/**
+	 * Write a debug entry to the log
+	 *
+	 * @param debug
+	 */
+	public static void debug(final String debug)
+	{
+		if (Log.isEnabled(Level.DEBUG)) Log.enqueue(Level.DEBUG, Log.KIND_TEXT, debug, null);
+	}
+
+	/**
+	 * Write a formatted debug entry to the log
+	 *
+	 * @param format
+	 * @param args
+	 */
+	public static void debug(final String format, final Object... args)
+	{
+		if (Log.isEnabled(Level.DEBUG)) Log.enqueue(Level.DEBUG, Log.KIND_FORMAT, format, args);
+	}
+
 	/**
 	 * Write an entry to the log
-	 * 
+	 *
 	 * @param info
 	 */
 	public static void info(final String info)
 	{
-		LiteLoaderLogger.info(info.replace("%", "%%"));
+		if (Log.isEnabled(Level.INFO)) Log.enqueue(Level.INFO, Log.KIND_TEXT, info, null);
 	}
-    
+
 	/**
 	 * Write an object value to the log
-	 * 
+	 *
 	 * @param info
 	 */
 	public static void info(final Object data)
 	{
 		if (data == null) return;
-		LiteLoaderLogger.info(("[" + data.getClass().getSimpleName() + "] " + data.toString()).replace("%", "%%"));
+		if (Log.isEnabled(Level.INFO)) Log.enqueue(Level.INFO, Log.KIND_OBJECT, data, null);
 	}
 
 	/**
 	 * Write a formatted entry to the log
-	 * 
+	 *
 	 * @param format
 	 * @param args
 	 */
 	public static void info(final String format, final Object... args)
 	{
-		LiteLoaderLogger.info(MessageFormat.format(format, args).replace("%", "%%"));
+		if (Log.isEnabled(Level.INFO)) Log.enqueue(Level.INFO, Log.KIND_FORMAT, format, args);
+	}
+
+	/**
+	 * Write a warning to the log
+	 *
+	 * @param warning
+	 */
+	public static void warn(final String warning)
+	{
+		if (Log.isEnabled(Level.WARN)) Log.enqueue(Level.WARN, Log.KIND_TEXT, warning, null);
+	}
+
+	/**
+	 * Write a formatted warning to the log
+	 *
+	 * @param format
+	 * @param args
+	 */
+	public static void warn(final String format, final Object... args)
+	{
+		if (Log.isEnabled(Level.WARN)) Log.enqueue(Level.WARN, Log.KIND_FORMAT, format, args);
 	}
-	
+
 	/**
 	 * Print a stack trace for the specified throwable to the log
-	 * 
+	 *
 	 * @param th
 	 */
 	public static void printStackTrace(final Throwable th)
 	{
-		StringWriter writer = new StringWriter();
-		th.printStackTrace(new PrintWriter(writer));
-		String stackTrace = writer.toString();
-		Log.info(stackTrace);
+		if (Log.isEnabled(Level.INFO)) Log.enqueue(Level.INFO, Log.KIND_THROWABLE, th, null);
+	}
+
+	/**
+	 * Wait for the appender to write all messages logged so far
+	 *
+	 * @param timeoutMillis maximum time to wait
+	 * @return true if all messages were written
+	 */
+	public static boolean flush(long timeoutMillis)
+	{
+		long target = Log.writeSequence.get();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		while (Log.readSequence.get() < target)
+		{
+			if (System.nanoTime() > deadline || Log.appender == null) return false;
+			LockSupport.unpark(Log.appender);
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+
+		return true;
+	}
+
+	/**
+	 * Claim a slot and publish a message to it, drops the message if the buffer is full
+	 */
+	private static void enqueue(Level level, int kind, Object payload, Object[] args)
+	{
+		long sequence;
+
+		do
+		{
+			sequence = Log.writeSequence.get();
+
+			if (sequence - Log.readSequence.get() >= Log.BUFFER_SIZE)
+			{
+				Log.dropped.incrementAndGet();
+				return;
+			}
+		}
+		while (!Log.writeSequence.compareAndSet(sequence, sequence + 1));
+
+		int slot = (int)(sequence & Log.BUFFER_MASK);
+		Log.levels[slot] = level;
+		Log.kinds[slot] = kind;
+		Log.payloads[slot] = payload;
+		Log.arguments[slot] = args;
+		Log.published.set(slot, sequence);
+
+		Thread appender = Log.appender;
+		if (appender == null)
+		{
+			Log.startAppender();
+		}
+		else if (Log.appenderWaiting)
+		{
+			LockSupport.unpark(appender);
+		}
+	}
+
+	private static synchronized void startAppender()
+	{
+		if (Log.appender != null) return;
+
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				Log.runAppender();
+			}
+		}, "Macros log appender");
+		thread.setDaemon(true);
+
+		Runtime.getRuntime().addShutdownHook(new Thread("Macros log flush")
+		{
+			@Override
+			public void run()
+			{
+				Log.flush(500);
+			}
+		});
+
+		Log.appender = thread;
+		thread.start();
+	}
+
+	/**
+	 * Appender loop, the only consumer of the ring buffer
+	 */
+	private static void runAppender()
+	{
+		while (true)
+		{
+			long sequence = Log.readSequence.get();
+			int slot = (int)(sequence & Log.BUFFER_MASK);
+
+			if (Log.published.get(slot) != sequence)
+			{
+				Log.appenderWaiting = true;
+				if (Log.published.get(slot) != sequence) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+				Log.appenderWaiting = false;
+				continue;
+			}
+
+			Level level = Log.levels[slot];
+			int kind = Log.kinds[slot];
+			Object payload = Log.payloads[slot];
+			Object[] args = Log.arguments[slot];
+			Log.payloads[slot] = null;
+			Log.arguments[slot] = null;
+			Log.readSequence.set(sequence + 1);
+
+			long dropped = Log.dropped.getAndSet(0);
+			if (dropped > 0) Log.write(Level.WARN, "Log buffer full, " + dropped + " message(s) dropped");
+
+			try
+			{
+				Log.write(level, Log.format(kind, payload, args));
+			}
+			catch (Throwable th)
+			{
+				// A bad argument must not stop the appender
+			}
+		}
+	}
+
+	private static String format(int kind, Object payload, Object[] args)
+	{
+		switch (kind)
+		{
+			case Log.KIND_FORMAT:
+				return MessageFormat.format((String)payload, args);
+
+			case Log.KIND_OBJECT:
+				return "[" + payload.getClass().getSimpleName() + "] " + payload.toString();
+
+			case Log.KIND_THROWABLE:
+				StringWriter writer = new StringWriter();
+				((Throwable)payload).printStackTrace(new PrintWriter(writer));
+				return writer.toString();
+
+			default:
+				return (String)payload;
+		}
+	}
+
+	private static void write(Level level, String message)
+	{
+		Log.sink.write(level, message);
+	}
+
+	private static Level getSinkLevel(ILogSink sink)
+	{
+		try
+		{
+			Level level = sink.getLevel();
+			return level != null ? level : Level.INFO;
+		}
+		catch (Throwable th)
+		{
+			return Level.INFO;
+		}
+	}
+
+	/**
+	 * Use the LiteLoader sink if LiteLoader is present, the sink is loaded by name so that this class never
+	 * links against LiteLoader itself
+	 */
+	private static ILogSink createDefaultSink()
+	{
+		try
+		{
+			Class.forName("com.mumfrey.liteloader.util.log.LiteLoaderLogger", false, Log.class.getClassLoader());
+			return (ILogSink)Class.forName("net.eq2online.console.LiteLoaderLogSink").getDeclaredConstructor().newInstance();
+		}
+		catch (Throwable th)
+		{
+			return new ConsoleLogSink();
+		}
+	}
+
+	private static Level parseLevel(String name, Level defaultLevel)
+	{
+		if (name != null)
+		{
+			for (Level level : Level.values())
+			{
+				if (level.name().equalsIgnoreCase(name.trim())) return level;
+			}
+		}
+
+		return defaultLevel;
 	}
 }
@@ -4,6 +4,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilder;
@@ -18,6 +20,7 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
@@ -29,21 +32,28 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 /**
- * XML helper functions to make working with XML in Java less of a nuisance
+ * XML helper functions to make working with XML in Java less of a nuisance. None of the JAXP builders,
+ * transformers or xpath objects are thread-safe, so each thread gets its own instances and its own cache of
+ * compiled xpath expressions, which means documents can be loaded and queried from any thread.
  * 
  * @author Adam Mummery-Smith
  */
 public class Xml
 {
 	/**
-	 * xpath evaluator
+	 * Maximum number of compiled xpath expressions to cache per thread
 	 */
-	private static XPath xpath;
+	private static final int MAX_CACHED_EXPRESSIONS = 128;
 	
 	/**
 	 * Namespace context helper for resolving namespaces
 	 */
-	private static Xmlns staticNamespaceContext;
+	private static volatile Xmlns staticNamespaceContext;
+	
+	/**
+	 * Factory for xpath evaluators
+	 */
+	private static XPathFactory xpathFactory;
 	
 	/**
 	 * Factory for document builders
@@ -51,54 +61,124 @@ public class Xml
 	private static DocumentBuilderFactory documentBuilderFactory;
 
 	/**
-	 * Document builder
+	 * Factory for transformers (not the big robotic kind, the small boring kind)
 	 */
-	private static DocumentBuilder documentBuilder;
+	private static TransformerFactory transformerFactory;
 	
 	/**
-	 * Factory for transformers (not the big robotic kind, the small boring kind)
+	 * Per-thread xpath evaluator
 	 */
-	private static TransformerFactory transformerFactory;
+	private static final ThreadLocal<XPath> xpath = new ThreadLocal<XPath>()
+	{
+		@Override
+		protected XPath initialValue()
+		{
+			synchronized (xpathFactory)
+			{
+				return xpathFactory.newXPath();
+			}
+		}
+	};
 	
 	/**
-	 * Robots in disguise! (Wait, no...) :)
+	 * Per-thread document builder, null if the builder could not be created
 	 */
-	private static Transformer transformer;
+	private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>();
+
+	/**
+	 * Robots in disguise! (Wait, no...) :) One per thread, null if the transformer could not be created
+	 */
+	private static final ThreadLocal<Transformer> transformer = new ThreadLocal<Transformer>();
+	
+	/**
+	 * Per-thread LRU cache of compiled xpath expressions
+	 */
+	private static final ThreadLocal<Map<ExpressionKey, XPathExpression>> expressions = new ThreadLocal<Map<ExpressionKey, XPathExpression>>()
+	{
+		@Override
+		protected Map<ExpressionKey, XPathExpression> initialValue()
+		{
+			return new LinkedHashMap<ExpressionKey, XPathExpression>(16, 0.75F, true)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<ExpressionKey, XPathExpression> eldest)
+				{
+					return this.size() > MAX_CACHED_EXPRESSIONS;
+				}
+			};
+		}
+	};
+	
+	/**
+	 * Key for a compiled expression, prefixes are resolved when an expression is compiled so the key includes
+	 * the namespace context and, if the context is an Xmlns, its revision
+	 */
+	private static final class ExpressionKey
+	{
+		private final String expression;
+		
+		private final NamespaceContext namespaceContext;
+		
+		private final int revision;
+		
+		ExpressionKey(String expression, NamespaceContext namespaceContext)
+		{
+			this.expression = expression;
+			this.namespaceContext = namespaceContext;
+			this.revision = namespaceContext instanceof Xmlns ? ((Xmlns)namespaceContext).getRevision() : 0;
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof ExpressionKey)) return false;
+			ExpressionKey other = (ExpressionKey)obj;
+			return this.namespaceContext == other.namespaceContext && this.revision == other.revision && this.expression.equals(other.expression);
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return this.expression.hashCode() * 31 + System.identityHashCode(this.namespaceContext) + this.revision;
+		}
+	}
 
 	static
 	{
 		// XML namespace manager which is used if a context is not specified
 		staticNamespaceContext = new Xmlns();
 
-		// Create the xpath evaluator
-		xpath = XPathFactory.newInstance().newXPath();
-		xpath.setNamespaceContext(staticNamespaceContext);
+		// Create the xpath factory
+		xpathFactory = XPathFactory.newInstance();
 		
 		// Create the document builder factory and enable namespaces
 		documentBuilderFactory = DocumentBuilderFactory.newInstance();
 		documentBuilderFactory.setNamespaceAware(true);
-		createDocumentBuilder(documentBuilderFactory);
 
 		// Create the transformer factory
 		transformerFactory = TransformerFactory.newInstance();
-		createTransformer(transformerFactory);
 	}
 	
 	/**
-	 * Attempts to create the document builder if one is not initialised already. This may
-	 * fail in which case the function will return FALSE
+	 * Attempts to create the document builder for the current thread if one is not initialised already. This
+	 * may fail in which case the function will return FALSE
 	 * 
 	 * @param factory
 	 * @return
 	 */
 	protected static boolean createDocumentBuilder(DocumentBuilderFactory factory)
 	{
-		if (documentBuilder == null)
+		if (documentBuilder.get() == null)
 		{
 			try
 			{
-				// Create the document builder
-				documentBuilder = documentBuilderFactory.newDocumentBuilder();
+				// Create the document builder, factories are not thread-safe
+				synchronized (factory)
+				{
+					documentBuilder.set(factory.newDocumentBuilder());
+				}
 			}
 			catch (ParserConfigurationException e) { return false; }
 		}
@@ -107,38 +187,70 @@ public class Xml
 	}
 	
 	/**
-	 * Attempts to create the dom transformer if one is not initialised already. This may
-	 * fail in which case the function will return FALSE
+	 * Attempts to create the dom transformer for the current thread if one is not initialised already. This
+	 * may fail in which case the function will return FALSE
 	 * 
 	 * @param factory
 	 * @return
 	 */
 	protected static boolean createTransformer(TransformerFactory factory)
 	{
-		if (transformer == null)
+		if (transformer.get() == null)
 		{
+			Transformer newTransformer;
+			
 			try
 			{
-				transformer = transformerFactory.newTransformer();
+				synchronized (factory)
+				{
+					newTransformer = factory.newTransformer();
+				}
 			}
 			catch (TransformerConfigurationException e) { return false; }
 
 			// Set transformer properties for the desired output layout that we need for transformation 
-			transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
-			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-			transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+			newTransformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
+			newTransformer.setOutputProperty(OutputKeys.INDENT, "yes");
+			newTransformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+			transformer.set(newTransformer);
 		}
 		
 		return true;
 	}
 	
+	/**
+	 * Get the compiled form of the specified expression from the current thread's cache, compiling it if it
+	 * is not cached
+	 * 
+	 * @param xPath
+	 * @param namespaceContext
+	 * @return
+	 * @throws XPathExpressionException
+	 */
+	protected static XPathExpression compile(String xPath, NamespaceContext namespaceContext) throws XPathExpressionException
+	{
+		Map<ExpressionKey, XPathExpression> cache = expressions.get();
+		ExpressionKey key = new ExpressionKey(xPath, namespaceContext);
+		XPathExpression expression = cache.get(key);
+		
+		if (expression == null)
+		{
+			XPath evaluator = xpath.get();
+			evaluator.setNamespaceContext(namespaceContext);
+			expression = evaluator.compile(xPath);
+			cache.put(key, expression);
+		}
+		
+		return expression;
+	}
+	
 	/**
 	 * Create and return a new, empty document. Returns null if the document builder cannot be initialised
 	 * @return new document
 	 */
 	public static Document createDocument()
 	{
-		return (createDocumentBuilder(documentBuilderFactory)) ? documentBuilder.newDocument() : null;
+		return (createDocumentBuilder(documentBuilderFactory)) ? documentBuilder.get().newDocument() : null;
 	}
 	
 	/**
@@ -148,7 +260,7 @@ public class Xml
 	 */
 	public static Document getDocument(String uri) throws SAXException, IOException
 	{
-		return (createDocumentBuilder(documentBuilderFactory)) ? documentBuilder.parse(uri) : null;
+		return (createDocumentBuilder(documentBuilderFactory)) ? documentBuilder.get().parse(uri) : null;
 	}
 	
 	/**
@@ -158,12 +270,12 @@ public class Xml
 	 */
 	public static Document getDocument (File file) throws SAXException, IOException
 	{
-		return (createDocumentBuilder(documentBuilderFactory)) ? documentBuilder.parse(file) : null;
+		return (createDocumentBuilder(documentBuilderFactory)) ? documentBuilder.get().parse(file) : null;
 	}
 
 	public static Document getDocument (InputStream stream) throws SAXException, IOException
 	{
-		return (createDocumentBuilder(documentBuilderFactory)) ? documentBuilder.parse(stream) : null;
+		return (createDocumentBuilder(documentBuilderFactory)) ? documentBuilder.get().parse(stream) : null;
 	}
 	
 	/**
@@ -179,7 +291,7 @@ public class Xml
 		{
 			try
 			{
-				transformer.transform(new DOMSource(document), new StreamResult(file));
+				transformer.get().transform(new DOMSource(document), new StreamResult(file));
 				return true;
 			}
 			catch (TransformerException e) {}
@@ -235,10 +347,7 @@ public class Xml
 	{
 		try
 		{
-			xpath.setNamespaceContext(namespaceContext);
-
-//    		Log.info("Result is: " + xpath.evaluate(xPath, xml));
-			return (NodeList)xpath.evaluate(xPath, xml, XPathConstants.NODESET);
+			return (NodeList)compile(xPath, namespaceContext).evaluate(xml, XPathConstants.NODESET);
 		}
 		catch (XPathExpressionException ex)
 		{
@@ -275,8 +384,7 @@ public class Xml
 	{
     	try
 		{
-    		xpath.setNamespaceContext(namespaceContext);
-			return (Node)xpath.evaluate(nodeName, node, XPathConstants.NODE);
+			return (Node)compile(nodeName, namespaceContext).evaluate(node, XPathConstants.NODE);
 		}
 		catch (XPathExpressionException e) {}
 
@@ -292,8 +400,7 @@ public class Xml
 	{
     	try
 		{
-    		xpath.setNamespaceContext(namespaceContext);
-			NodeList nodes = (NodeList)xpath.evaluate(nodeName, node, XPathConstants.NODESET);
+			NodeList nodes = (NodeList)compile(nodeName, namespaceContext).evaluate(node, XPathConstants.NODESET);
 			
 			if (nodes.getLength() > 0)
 				return nodes.item(0).getTextContent();
@@ -1,13 +1,16 @@
 package net.eq2online.xml;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.namespace.NamespaceContext;
 
 /**
- * XML Namespace helper
+ * XML Namespace helper, prefixes may be added from any thread. The revision is incremented whenever the
+ * prefixes change so that expressions compiled against an earlier revision can be discarded.
  *
  * @author Adam Mummery-Smith
  */
@@ -15,29 +18,55 @@ public class Xmlns implements NamespaceContext
 {
 	private HashMap<String, String> prefixes = new HashMap<String, String>();
 	
+	private final AtomicInteger revision = new AtomicInteger();
+	
 	public void addPrefix(String prefix, String namespaceURI)
 	{
-		this.prefixes.put(prefix, namespaceURI);
+		synchronized (this.prefixes)
+		{
+			this.prefixes.put(prefix, namespaceURI);
+		}
+		
+		this.revision.incrementAndGet();
 	}
 	
 	public void clear()
 	{
-		this.prefixes.clear();
+		synchronized (this.prefixes)
+		{
+			this.prefixes.clear();
+		}
+		
+		this.revision.incrementAndGet();
+	}
+	
+	/**
+	 * Get the current revision of the prefix mappings
+	 */
+	public int getRevision()
+	{
+		return this.revision.get();
 	}
 	
 	@Override
 	public Iterator<String> getPrefixes(String namespaceURI)
 	{
-		return this.prefixes.keySet().iterator();
+		synchronized (this.prefixes)
+		{
+			return new ArrayList<String>(this.prefixes.keySet()).iterator();
+		}
 	}
 	
 	@Override
 	public String getPrefix(String namespaceURI)
 	{
-		for (Entry<String, String> prefix : this.prefixes.entrySet())
+		synchronized (this.prefixes)
 		{
-			if (prefix.getValue().equals(namespaceURI))
-				return prefix.getKey();
+			for (Entry<String, String> prefix : this.prefixes.entrySet())
+			{
+				if (prefix.getValue().equals(namespaceURI))
+					return prefix.getKey();
+			}
 		}
 		
 		return null;
@@ -46,6 +75,9 @@ public class Xmlns implements NamespaceContext
 	@Override
 	public String getNamespaceURI(String prefix)
 	{
-		return this.prefixes.get(prefix);
+		synchronized (this.prefixes)
+		{
+			return this.prefixes.get(prefix);
+		}
 	}
 }
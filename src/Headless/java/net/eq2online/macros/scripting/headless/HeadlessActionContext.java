@@ -0,0 +1,45 @@
+package net.eq2online.macros.scripting.headless;
+
+import net.eq2online.macros.scripting.ScriptContext;
+import net.eq2online.macros.scripting.api.IMacroActionContext;
+import net.eq2online.macros.scripting.api.IScriptActionProvider;
+import net.eq2online.macros.scripting.api.IVariableProvider;
+
+/**
+ * Minimal action context, created by {@link ScriptContext#createActionContext}
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessActionContext implements IMacroActionContext
+{
+	private final ScriptContext context;
+
+	private final IScriptActionProvider provider;
+
+	private final IVariableProvider variableProvider;
+
+	public HeadlessActionContext(ScriptContext context, IScriptActionProvider provider, IVariableProvider variableProvider)
+	{
+		this.context = context;
+		this.provider = provider;
+		this.variableProvider = variableProvider;
+	}
+
+	@Override
+	public ScriptContext getScriptContext()
+	{
+		return this.context;
+	}
+
+	@Override
+	public IScriptActionProvider getProvider()
+	{
+		return this.provider;
+	}
+
+	@Override
+	public IVariableProvider getVariableProvider()
+	{
+		return this.variableProvider;
+	}
+}
@@ -0,0 +1,53 @@
+package net.eq2online.macros.scripting.headless;
+
+import java.util.regex.Matcher;
+
+import net.eq2online.macros.scripting.ActionParser;
+import net.eq2online.macros.scripting.ActionTable;
+import net.eq2online.macros.scripting.ScriptContext;
+import net.eq2online.macros.scripting.ScriptCore;
+import net.eq2online.macros.scripting.api.IMacroAction;
+import net.eq2online.macros.scripting.api.IMacroActionProcessor;
+
+/**
+ * Parses ACTION(params) and DIRECTIVE entries into {@link HeadlessMacroAction}s using the actions registered
+ * with the context's script core, entries which name an unknown action are not parsed. The action name is
+ * resolved to its ordinal when the entry is parsed and the parsed action dispatches through the action table
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessActionParser extends ActionParser
+{
+	public HeadlessActionParser(ScriptContext context)
+	{
+		super(context);
+	}
+
+	@Override
+	public IMacroAction parse(IMacroActionProcessor actionProcessor, String scriptEntry)
+	{
+		Matcher actionMatcher = ActionParser.scriptActionPattern.matcher(scriptEntry);
+
+		if (actionMatcher.matches())
+		{
+			int ordinal = this.context.getActionOrdinal(actionMatcher.group(1));
+			if (ordinal == ActionTable.NO_ORDINAL) return null;
+
+			StringBuilder rawParams = new StringBuilder();
+			String[] params = ScriptCore.tokenize(actionMatcher.group(2), ',', '"', '"', '\\', rawParams);
+			return new HeadlessMacroAction(actionProcessor, this.context.getActionTable(), ordinal, rawParams.toString(), params, null);
+		}
+
+		Matcher directiveMatcher = ActionParser.scriptDirectivePattern.matcher(scriptEntry);
+
+		if (directiveMatcher.matches())
+		{
+			int ordinal = this.context.getActionOrdinal(directiveMatcher.group(1));
+			if (ordinal == ActionTable.NO_ORDINAL) return null;
+
+			return new HeadlessMacroAction(actionProcessor, this.context.getActionTable(), ordinal, "", new String[0], null);
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,408 @@
+package net.eq2online.macros.scripting.headless;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.eq2online.macros.scripting.MacroScheduler;
+import net.eq2online.macros.scripting.api.IMacro;
+import net.eq2online.macros.scripting.api.IMacroAction;
+import net.eq2online.macros.scripting.api.IMacroActionContext;
+import net.eq2online.macros.scripting.api.IMacroActionProcessor;
+import net.eq2online.macros.scripting.api.IMacroActionStackEntry;
+import net.eq2online.macros.scripting.api.IScriptAction;
+import net.eq2online.macros.scripting.api.IScriptActionProvider;
+import net.eq2online.macros.scripting.api.IScriptParser;
+import net.eq2online.macros.scripting.exceptions.ScriptException;
+import net.eq2online.macros.scripting.exceptions.ScriptExceptionStackOverflow;
+
+/**
+ * Action processor which runs a parsed script one action at a time. Processors are intended to be run by a
+ * {@link MacroScheduler}: the processor checks {@link MacroScheduler#shouldYield} after every action and
+ * returns with its pointer on the next action when the macro's slice has been used up, and it returns when
+ * an action is latent so that the action is executed again on the next tick. Outside a scheduler the whole
+ * script runs in one call unless an action is latent.
+ *
+ * Stack and conditional operators are supported in the same way as by the game client's processor, actions
+ * which are skipped because an enclosing conditional is false still push and pop the stack so that blocks
+ * stay balanced.
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessActionProcessor implements IMacroActionProcessor
+{
+	/**
+	 * Maximum stack depth
+	 */
+	public static final int MAX_STACK_DEPTH = 64;
+
+	/**
+	 * Stack entry for an action which pushed the stack
+	 */
+	static final class StackEntry implements IMacroActionStackEntry
+	{
+		private final int ptr;
+
+		private final IMacroAction action;
+
+		private final boolean conditional;
+
+		private boolean conditionalFlag, ifFlag, elseFlag;
+
+		StackEntry(int ptr, IMacroAction action, boolean conditional, boolean conditionalFlag)
+		{
+			this.ptr             = ptr;
+			this.action          = action;
+			this.conditional     = conditional;
+			this.conditionalFlag = conditionalFlag;
+			this.ifFlag          = conditionalFlag;
+		}
+
+		@Override
+		public boolean isStackPushOperator()
+		{
+			return !this.conditional;
+		}
+
+		@Override
+		public boolean canBePoppedBy(IMacroAction action)
+		{
+			return this.action.getAction().canBePoppedBy(action.getAction());
+		}
+
+		@Override
+		public void executeStackPop(IMacroActionProcessor processor, IMacroActionContext context, IMacro macro, IMacroAction popAction)
+		{
+			// Loops which were entered return to the action after the one which pushed the stack for as long as
+			// their pop returns true
+			if (!this.conditional && this.conditionalFlag && this.action.executeStackPop(processor, context, macro, popAction))
+			{
+				((HeadlessActionProcessor)processor).pointer = this.ptr + 1;
+				return;
+			}
+
+			processor.popStack();
+		}
+
+		@Override
+		public boolean isConditionalOperator()
+		{
+			return this.conditional;
+		}
+
+		@Override
+		public boolean isConditionalElseOperator(IMacroAction action)
+		{
+			return this.conditional && this.action.getAction().isConditionalElseOperator(action.getAction());
+		}
+
+		@Override
+		public boolean matchesConditionalOperator(IMacroAction action)
+		{
+			return this.conditional && this.action.getAction().matchesConditionalOperator(action.getAction());
+		}
+
+		@Override
+		public boolean getConditionalFlag()
+		{
+			return this.conditionalFlag;
+		}
+
+		@Override
+		public void setConditionalFlag(boolean newFlag)
+		{
+			this.conditionalFlag = newFlag;
+		}
+
+		@Override
+		public boolean getIfFlag()
+		{
+			return this.ifFlag;
+		}
+
+		@Override
+		public void setIfFlag(boolean newFlag)
+		{
+			this.ifFlag = newFlag;
+		}
+
+		@Override
+		public boolean getElseFlag()
+		{
+			return this.elseFlag;
+		}
+
+		@Override
+		public void setElseFlag(boolean newFlag)
+		{
+			this.elseFlag = newFlag;
+		}
+
+		@Override
+		public IMacroAction getAction()
+		{
+			return this.action;
+		}
+
+		@Override
+		public int getStackPointer()
+		{
+			return this.ptr;
+		}
+	}
+
+	private final List<IMacroAction> actions;
+
+	private final List<StackEntry> stack = new ArrayList<StackEntry>();
+
+	/**
+	 * Index of the next action to execute
+	 */
+	int pointer;
+
+	/**
+	 * Actions left in the current unsafe block, the processor does not yield while this is positive
+	 */
+	private int unsafeActions, unsafeDepth;
+
+	private long executed, yields, latentReturns;
+
+	/**
+	 * @param parser parser to parse the script with
+	 * @param script
+	 */
+	public HeadlessActionProcessor(IScriptParser parser, String script)
+	{
+		this.actions = Collections.unmodifiableList(parser.parseScript(this, script));
+	}
+
+	public List<IMacroAction> getActions()
+	{
+		return this.actions;
+	}
+
+	/**
+	 * Get the index of the next action to execute
+	 */
+	public int getPointer()
+	{
+		return this.pointer;
+	}
+
+	/**
+	 * Return to the start of the script so that it can be run again
+	 */
+	public void reset()
+	{
+		this.pointer = 0;
+		this.stack.clear();
+		this.unsafeActions = 0;
+		this.unsafeDepth = 0;
+	}
+
+	@Override
+	public boolean execute(IMacro macro, IMacroActionContext context, boolean stop, boolean allowLatent, boolean clock) throws ScriptException
+	{
+		if (stop)
+		{
+			this.stopped(macro, context);
+			return true;
+		}
+
+		while (this.pointer < this.actions.size())
+		{
+			IMacroAction action = this.actions.get(this.pointer);
+			IScriptAction scriptAction = action.getAction();
+			boolean executing = this.getConditionalExecutionState();
+
+			if (executing && action.isClocked() && !clock) return false;
+
+			if (scriptAction.isStackPopOperator())
+			{
+				StackEntry top = this.getTopStackEntry();
+				this.pointer++;
+				if (top != null && top.canBePoppedBy(action)) top.executeStackPop(this, context, macro, action);
+			}
+			else if (scriptAction.isConditionalOperator() || scriptAction.isStackPushOperator())
+			{
+				boolean flag = false;
+
+				if (executing)
+				{
+					if (!action.execute(context, macro, false, allowLatent)) return this.latent();
+					flag = ((Boolean)action.getState()).booleanValue();
+				}
+
+				this.pushStack(action, scriptAction.isConditionalOperator(), flag);
+				this.pointer++;
+			}
+			else if (this.isElse(action))
+			{
+				// The else operator decides which branch runs, unless the whole conditional is being skipped
+				StackEntry top = this.getTopStackEntry();
+				if (this.isExecuting(this.stack.size() - 1)) scriptAction.executeConditionalElse(context.getProvider(), macro, action, action.getRawParams(), action.getParams(), top);
+				this.pointer++;
+			}
+			else
+			{
+				if (executing)
+				{
+					if (!action.canExecuteNow(context, macro) || !action.execute(context, macro, false, allowLatent)) return this.latent();
+					this.executed++;
+				}
+
+				this.pointer++;
+			}
+
+			if (this.unsafeActions > 0)
+			{
+				this.unsafeActions--;
+			}
+			else if (this.pointer < this.actions.size() && MacroScheduler.shouldYield())
+			{
+				this.yields++;
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Get whether the action is the else branch of the conditional on top of the stack
+	 */
+	private boolean isElse(IMacroAction action)
+	{
+		StackEntry top = this.getTopStackEntry();
+		return top != null && top.isConditionalElseOperator(action);
+	}
+
+	private boolean latent()
+	{
+		this.latentReturns++;
+		return false;
+	}
+
+	private void stopped(IMacro macro, IMacroActionContext context)
+	{
+		if (this.pointer < this.actions.size()) this.actions.get(this.pointer).onStopped(this, context, macro);
+
+		for (int index = this.stack.size() - 1; index >= 0; index--)
+		{
+			this.stack.get(index).getAction().onStopped(this, context, macro);
+		}
+
+		this.stack.clear();
+		this.pointer = this.actions.size();
+	}
+
+	@Override
+	public void pushStack(IMacroAction action, boolean conditional) throws ScriptExceptionStackOverflow
+	{
+		this.pushStack(this.pointer, action, conditional);
+	}
+
+	@Override
+	public void pushStack(int ptr, IMacroAction action, boolean conditional) throws ScriptExceptionStackOverflow
+	{
+		if (this.stack.size() >= HeadlessActionProcessor.MAX_STACK_DEPTH) throw new ScriptExceptionStackOverflow();
+		this.stack.add(new StackEntry(ptr, action, false, conditional));
+	}
+
+	private void pushStack(IMacroAction action, boolean conditional, boolean flag)
+	{
+		if (this.stack.size() >= HeadlessActionProcessor.MAX_STACK_DEPTH) throw new ScriptExceptionStackOverflow();
+		this.stack.add(new StackEntry(this.pointer, action, conditional, flag));
+	}
+
+	@Override
+	public boolean popStack()
+	{
+		if (this.stack.isEmpty()) return false;
+		this.stack.remove(this.stack.size() - 1);
+		return true;
+	}
+
+	@Override
+	public StackEntry getTopStackEntry()
+	{
+		return this.stack.isEmpty() ? null : this.stack.get(this.stack.size() - 1);
+	}
+
+	@Override
+	public boolean getConditionalExecutionState()
+	{
+		return this.isExecuting(this.stack.size());
+	}
+
+	/**
+	 * Get whether the bottom depth entries of the stack all allow execution
+	 */
+	private boolean isExecuting(int depth)
+	{
+		for (int index = 0; index < depth; index++)
+		{
+			if (!this.stack.get(index).getConditionalFlag()) return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public void breakLoop(IScriptActionProvider provider, IMacro macro, IMacroAction breakAction)
+	{
+		for (int index = this.stack.size() - 1; index >= 0; index--)
+		{
+			StackEntry entry = this.stack.get(index);
+
+			if (entry.isStackPushOperator() && entry.getAction().canBreak(this, provider, macro, breakAction))
+			{
+				entry.setConditionalFlag(false);
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void beginUnsafeBlock(IScriptActionProvider provider, IMacro macro, IMacroAction instance, int maxActions)
+	{
+		this.unsafeDepth++;
+		this.unsafeActions = Math.max(this.unsafeActions, maxActions);
+	}
+
+	@Override
+	public void endUnsafeBlock(IScriptActionProvider provider, IMacro macro, IMacroAction instance)
+	{
+		if (this.unsafeDepth > 0 && --this.unsafeDepth == 0) this.unsafeActions = 0;
+	}
+
+	@Override
+	public boolean isUnsafe()
+	{
+		return this.unsafeDepth > 0;
+	}
+
+	/**
+	 * Get the number of actions executed
+	 */
+	public long getExecutedCount()
+	{
+		return this.executed;
+	}
+
+	/**
+	 * Get the number of times the processor returned early because the scheduler asked it to yield
+	 */
+	public long getYieldCount()
+	{
+		return this.yields;
+	}
+
+	/**
+	 * Get the number of times the processor returned to wait for a latent action
+	 */
+	public long getLatentCount()
+	{
+		return this.latentReturns;
+	}
+}
@@ -0,0 +1,54 @@
+package net.eq2online.macros.scripting.headless;
+
+import net.eq2online.macros.scripting.IDocumentationEntry;
+
+/**
+ * Documentation entry read by the {@link HeadlessDocumentor}
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessDocumentationEntry implements IDocumentationEntry
+{
+	private final String name, usage, description, returnType;
+
+	private final boolean hidden;
+
+	public HeadlessDocumentationEntry(String name, String usage, String description, String returnType, boolean hidden)
+	{
+		this.name        = name;
+		this.usage       = usage;
+		this.description = description;
+		this.returnType  = returnType;
+		this.hidden      = hidden;
+	}
+
+	@Override
+	public boolean isHidden()
+	{
+		return this.hidden;
+	}
+
+	@Override
+	public String getName()
+	{
+		return this.name;
+	}
+
+	@Override
+	public String getUsage()
+	{
+		return this.usage;
+	}
+
+	@Override
+	public String getDescription()
+	{
+		return this.description;
+	}
+
+	@Override
+	public String getReturnType()
+	{
+		return this.returnType;
+	}
+}
@@ -0,0 +1,57 @@
+package net.eq2online.macros.scripting.headless;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.eq2online.macros.scripting.IDocumentationEntry;
+import net.eq2online.macros.scripting.StreamingDocumentor;
+
+/**
+ * Documentor which streams entries from the documentation XML files in a directory, one file per language
+ * named after the language, eg. en_US.xml. Has no entries until a directory is set.
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessDocumentor extends StreamingDocumentor
+{
+	private volatile File directory;
+
+	public HeadlessDocumentor()
+	{
+	}
+
+	public HeadlessDocumentor(File directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * Set the directory documentation is loaded from, takes effect the next time a language is loaded
+	 *
+	 * @param directory
+	 * @return fluent interface
+	 */
+	public HeadlessDocumentor setDirectory(File directory)
+	{
+		this.directory = directory;
+		return this;
+	}
+
+	@Override
+	protected InputStream openXml(String language) throws IOException
+	{
+		File directory = this.directory;
+		if (directory == null || language == null) return null;
+
+		File xmlFile = new File(directory, language + ".xml");
+		return xmlFile.isFile() ? new FileInputStream(xmlFile) : null;
+	}
+
+	@Override
+	protected IDocumentationEntry createEntry(String name, String usage, String description, String returnType, boolean hidden)
+	{
+		return new HeadlessDocumentationEntry(name, usage, description, returnType, hidden);
+	}
+}
@@ -0,0 +1,198 @@
+package net.eq2online.macros.scripting.headless;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.eq2online.macros.scripting.IActionFilter;
+import net.eq2online.macros.scripting.IErrorLogger;
+import net.eq2online.macros.scripting.MacroScheduler;
+import net.eq2online.macros.scripting.ScriptContext;
+import net.eq2online.macros.scripting.ScriptCore;
+import net.eq2online.macros.scripting.api.IScriptAction;
+
+/**
+ * A script context created with the headless provider, event manager, parser and documentor, so that the
+ * scripting core can be driven on a plain JVM for load tests and benchmarks. Macros are scheduled with
+ * {@link #schedule} and run by the core's {@link MacroScheduler} each time {@link #tick} is called, in place
+ * of the game client's tick. Script contexts can only be created once per JVM so environments are created on
+ * demand and then shared.
+ *
+ * @author Adam Mummery-Smith
+ */
+public final class HeadlessEnvironment
+{
+	/**
+	 * Name of the context used by the default environment
+	 */
+	public static final String CONTEXT_NAME = "headless";
+
+	private static final Map<String, HeadlessEnvironment> environments = new ConcurrentHashMap<String, HeadlessEnvironment>();
+
+	private static final IErrorLogger logger = new IErrorLogger()
+	{
+		@Override
+		public void logError(String errorMessage)
+		{
+		}
+	};
+
+	private static final IActionFilter filter = new IActionFilter()
+	{
+		@Override
+		public boolean pass(ScriptContext context, ScriptCore scriptCore, IScriptAction action)
+		{
+			return true;
+		}
+	};
+
+	private final ScriptContext context;
+
+	private final HeadlessScriptActionProvider provider = new HeadlessScriptActionProvider();
+
+	private final HeadlessEventManager eventManager = new HeadlessEventManager();
+
+	private final HeadlessDocumentor documentor = new HeadlessDocumentor();
+
+	private final HeadlessScriptParser parser;
+
+	private HeadlessEnvironment(ScriptContext context)
+	{
+		this.context = context;
+		this.parser = new HeadlessScriptParser(context);
+
+		if (!context.create(this.provider, this.eventManager, this.parser, HeadlessEnvironment.logger, this.documentor, HeadlessEnvironment.filter, HeadlessActionContext.class))
+		{
+			throw new IllegalStateException("Script context " + context + " has already been created");
+		}
+	}
+
+	/**
+	 * Get the default environment
+	 */
+	public static HeadlessEnvironment get()
+	{
+		return HeadlessEnvironment.get(HeadlessEnvironment.CONTEXT_NAME);
+	}
+
+	/**
+	 * Get the environment for the specified context, creating it if it does not exist
+	 *
+	 * @param contextName
+	 * @return
+	 * @throws IllegalStateException if the context was already created outside of this class
+	 */
+	public static synchronized HeadlessEnvironment get(String contextName)
+	{
+		HeadlessEnvironment environment = HeadlessEnvironment.environments.get(contextName);
+
+		if (environment == null)
+		{
+			environment = new HeadlessEnvironment(ScriptContext.getContext(contextName));
+			HeadlessEnvironment.environments.put(contextName, environment);
+		}
+
+		return environment;
+	}
+
+	public ScriptContext getContext()
+	{
+		return this.context;
+	}
+
+	public ScriptCore getCore()
+	{
+		return this.context.getCore();
+	}
+
+	public HeadlessScriptActionProvider getProvider()
+	{
+		return this.provider;
+	}
+
+	public HeadlessEventManager getEventManager()
+	{
+		return this.eventManager;
+	}
+
+	public HeadlessScriptParser getParser()
+	{
+		return this.parser;
+	}
+
+	public HeadlessDocumentor getDocumentor()
+	{
+		return this.documentor;
+	}
+
+	/**
+	 * Register a {@link HeadlessScriptAction} for each of the specified names which is not already registered
+	 *
+	 * @param actionNames
+	 * @return fluent interface
+	 */
+	public HeadlessEnvironment registerActions(String... actionNames)
+	{
+		for (String actionName : actionNames)
+		{
+			if (this.context.getAction(actionName.toLowerCase()) == null)
+			{
+				this.getCore().registerScriptAction(new HeadlessScriptAction(this.context, actionName));
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Create a macro bound to this environment's context
+	 *
+	 * @param id
+	 * @return
+	 */
+	public HeadlessMacro createMacro(int id)
+	{
+		HeadlessMacro macro = new HeadlessMacro(id);
+		macro.setContext(this.context.createActionContext(macro));
+		return macro;
+	}
+
+	/**
+	 * Parse a script and schedule it to run as the specified macro on the following ticks
+	 *
+	 * @param macro
+	 * @param script
+	 * @param weight relative share of the tick budget
+	 * @return processor running the script, or null if the macro is already scheduled
+	 */
+	public HeadlessActionProcessor schedule(HeadlessMacro macro, String script, int weight)
+	{
+		HeadlessActionProcessor processor = new HeadlessActionProcessor(this.parser, script);
+		return this.schedule(macro, processor, weight) ? processor : null;
+	}
+
+	/**
+	 * Schedule a processor, which may have been run before, to run as the specified macro
+	 *
+	 * @param macro
+	 * @param processor
+	 * @param weight relative share of the tick budget
+	 * @return false if the macro is already scheduled
+	 */
+	public boolean schedule(HeadlessMacro macro, HeadlessActionProcessor processor, int weight)
+	{
+		return this.getCore().getScheduler().schedule(macro, processor, macro.getContext(), weight);
+	}
+
+	/**
+	 * Run one tick: collect the actions which finished off-thread, update the variable providers and then run
+	 * the scheduled macros within the scheduler's budget, must always be called on the same thread
+	 *
+	 * @param clock true if this is a clock tick
+	 */
+	public void tick(boolean clock)
+	{
+		this.getCore().getActionExecutor().processCompletions();
+		this.provider.updateVariableProviders(clock);
+		this.getCore().getScheduler().tick(clock);
+	}
+}
@@ -0,0 +1,210 @@
+package net.eq2online.macros.scripting.headless;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.eq2online.console.Log;
+import net.eq2online.macros.scripting.MacroEventQueue;
+import net.eq2online.macros.scripting.api.IIndexedMacroEventManager;
+import net.eq2online.macros.scripting.api.IMacroEvent;
+import net.eq2online.macros.scripting.api.IMacroEventProvider;
+import net.eq2online.macros.scripting.api.IMacroEventVariableProvider;
+import net.eq2online.macros.scripting.api.IPooledMacroEvent;
+
+/**
+ * Event manager which keeps registered events in memory and queues sent events in a {@link MacroEventQueue}
+ * rather than dispatching them immediately, {@link #dispatch} then delivers one tick's worth of queued events
+ * to a handler in place of the game client's executive. Event IDs
+ * are assigned in order of registration starting at zero, events created by this manager also remember their
+ * ID so that they can be sent without a lookup by name.
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessEventManager implements IIndexedMacroEventManager
+{
+	/**
+	 * Receives the events delivered by {@link HeadlessEventManager#dispatch}
+	 */
+	public interface IEventHandler
+	{
+		/**
+		 * Handle a dispatched event
+		 * 
+		 * @param queued the dispatched event and its arguments
+		 * @param variableProvider provider spawned by the event for this dispatch, or null if the event has no
+		 *      provider class. Pooled providers are released when this method returns and must not be retained
+		 */
+		public abstract void onEvent(MacroEventQueue.QueuedEvent queued, IMacroEventVariableProvider variableProvider);
+	}
+
+	private final List<IMacroEventProvider> providers = new CopyOnWriteArrayList<IMacroEventProvider>();
+
+	private final List<IMacroEvent> events = new CopyOnWriteArrayList<IMacroEvent>();
+
+	/**
+	 * Event IDs keyed by lower case event name
+	 */
+	private final Map<String, Integer> eventIds = new ConcurrentHashMap<String, Integer>();
+
+	private final MacroEventQueue queue;
+
+	/**
+	 * Reused by dispatch(), which is only called on the tick thread
+	 */
+	private final List<MacroEventQueue.QueuedEvent> batch = new ArrayList<MacroEventQueue.QueuedEvent>();
+
+	public HeadlessEventManager()
+	{
+		this(new MacroEventQueue());
+	}
+
+	public HeadlessEventManager(MacroEventQueue queue)
+	{
+		this.queue = queue;
+	}
+
+	@Override
+	public void registerEventProvider(IMacroEventProvider provider)
+	{
+		if (provider != null && !this.providers.contains(provider))
+		{
+			this.providers.add(provider);
+			provider.registerEvents(this);
+		}
+	}
+
+	@Override
+	public IMacroEvent registerEvent(IMacroEventProvider provider, String name)
+	{
+		return this.registerEvent(provider, name, null);
+	}
+
+	@Override
+	public IMacroEvent registerEvent(IMacroEventProvider provider, String name, String permissionGroup)
+	{
+		IMacroEvent event = this.getEvent(name);
+		return event != null ? event : this.registerEvent(new HeadlessMacroEvent(provider, name, permissionGroup));
+	}
+
+	@Override
+	public synchronized IMacroEvent registerEvent(IMacroEvent event)
+	{
+		String key = event.getName().toLowerCase();
+		Integer eventId = this.eventIds.get(key);
+		if (eventId != null) return this.events.get(eventId.intValue());
+
+		this.events.add(event);
+		eventId = Integer.valueOf(this.events.size() - 1);
+		this.eventIds.put(key, eventId);
+		if (event instanceof HeadlessMacroEvent) ((HeadlessMacroEvent)event).setEventId(this, eventId.intValue());
+		return event;
+	}
+
+	@Override
+	public IMacroEvent getEvent(int mappingId)
+	{
+		return mappingId >= 0 && mappingId < this.events.size() ? this.events.get(mappingId) : null;
+	}
+
+	@Override
+	public IMacroEvent getEvent(String eventName)
+	{
+		return this.getEvent(this.getEventID(eventName));
+	}
+
+	@Override
+	public List<IMacroEvent> getEvents()
+	{
+		return Collections.unmodifiableList(this.events);
+	}
+
+	@Override
+	public int getEventID(String name)
+	{
+		Integer eventId = name != null ? this.eventIds.get(name.toLowerCase()) : null;
+		return eventId != null ? eventId.intValue() : -1;
+	}
+
+	@Override
+	public int getEventID(IMacroEvent event)
+	{
+		if (event instanceof HeadlessMacroEvent)
+		{
+			int eventId = ((HeadlessMacroEvent)event).getEventId(this);
+			if (eventId > -1) return eventId;
+		}
+
+		return event != null ? this.getEventID(event.getName()) : -1;
+	}
+
+	@Override
+	public void sendEvent(IMacroEvent event, String... eventArgs)
+	{
+		int eventId = this.getEventID(event);
+		if (eventId > -1) this.queue.offer(eventId, this.events.get(eventId), MacroEventQueue.PRIORITY_NORMAL, eventArgs);
+	}
+
+	@Override
+	public void sendEvent(String eventName, int priority, String... eventArgs)
+	{
+		this.sendEvent(this.getEventID(eventName), priority, eventArgs);
+	}
+
+	@Override
+	public void sendEvent(int eventId, int priority, String... eventArgs)
+	{
+		IMacroEvent event = this.getEvent(eventId);
+		if (event != null) this.queue.offer(eventId, event, priority, eventArgs);
+	}
+
+	/**
+	 * Dispatch one tick's worth of queued events to the specified handler, each event spawns its variable
+	 * provider which is released back to the event once the handler returns. Exceptions thrown by the handler
+	 * are logged and do not prevent the rest of the batch being dispatched. Should be called once per tick
+	 * 
+	 * @param handler
+	 * @param maxEvents maximum number of events to dispatch
+	 * @return number of events dispatched
+	 */
+	public int dispatch(IEventHandler handler, int maxEvents)
+	{
+		this.batch.clear();
+		int count = this.queue.drainTo(this.batch, maxEvents);
+
+		for (int index = 0; index < count; index++)
+		{
+			MacroEventQueue.QueuedEvent queued = this.batch.get(index);
+			queued.event.onDispatch();
+			IMacroEventVariableProvider variableProvider = queued.event.getVariableProvider(queued.getArgs());
+
+			try
+			{
+				handler.onEvent(queued, variableProvider);
+			}
+			catch (Exception ex)
+			{
+				Log.info("Error dispatching event {0}: {1}", queued.event.getName(), ex.getMessage());
+			}
+
+			if (variableProvider != null && queued.event instanceof IPooledMacroEvent)
+			{
+				((IPooledMacroEvent)queued.event).releaseVariableProvider(variableProvider);
+			}
+		}
+
+		this.batch.clear();
+		return count;
+	}
+
+	/**
+	 * Get the queue sent events are placed in
+	 */
+	public MacroEventQueue getQueue()
+	{
+		return this.queue;
+	}
+}
@@ -0,0 +1,205 @@
+package net.eq2online.macros.scripting.headless;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.eq2online.macros.scripting.api.IArrayProvider;
+import net.eq2online.macros.scripting.api.ICounterProvider;
+import net.eq2online.macros.scripting.api.IFlagProvider;
+import net.eq2online.macros.scripting.api.IMacro;
+import net.eq2online.macros.scripting.api.IMacroActionContext;
+import net.eq2online.macros.scripting.api.IStringProvider;
+import net.eq2online.macros.scripting.api.IVariableProvider;
+
+/**
+ * Macro which keeps its variables in a {@link HeadlessVariableStore}
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessMacro implements IMacro
+{
+	private final int id;
+
+	private final HeadlessVariableStore variables = new HeadlessVariableStore();
+
+	private final HashMap<String, Object> stateData = new HashMap<String, Object>();
+
+	private final List<IVariableProvider> variableProviders = new ArrayList<IVariableProvider>();
+
+	private IMacroActionContext context;
+
+	private boolean dirty, dead;
+
+	public HeadlessMacro(int id)
+	{
+		this.id = id;
+	}
+
+	public HeadlessVariableStore getVariableStore()
+	{
+		return this.variables;
+	}
+
+	public void setContext(IMacroActionContext context)
+	{
+		this.context = context;
+	}
+
+	@Override
+	public void onInit()
+	{
+	}
+
+	@Override
+	public void updateVariables(boolean clock)
+	{
+	}
+
+	@Override
+	public Object getVariable(String variableName)
+	{
+		Object value = this.variables.getValue(variableName);
+
+		for (int index = 0; value == null && index < this.variableProviders.size(); index++)
+		{
+			value = this.variableProviders.get(index).getVariable(variableName);
+		}
+
+		return value;
+	}
+
+	@Override
+	public Set<String> getVariables()
+	{
+		return this.variables.getVariables();
+	}
+
+	@Override
+	public void setVariable(String variableName, boolean variableValue)
+	{
+		this.variables.setFlag(variableName, variableValue);
+	}
+
+	@Override
+	public void setVariable(String variableName, int variableValue)
+	{
+		this.variables.setCounter(variableName, variableValue);
+	}
+
+	@Override
+	public void setVariable(String variableName, String variableValue)
+	{
+		this.variables.setString(variableName, variableValue);
+	}
+
+	@Override
+	public void setVariables(Map<String, Object> variables)
+	{
+		for (Map.Entry<String, Object> variable : variables.entrySet())
+		{
+			Object value = variable.getValue();
+			if (value instanceof Boolean) this.setVariable(variable.getKey(), ((Boolean)value).booleanValue());
+			else if (value instanceof Integer) this.setVariable(variable.getKey(), ((Integer)value).intValue());
+			else this.setVariable(variable.getKey(), String.valueOf(value));
+		}
+	}
+
+	@Override
+	public int getID()
+	{
+		return this.id;
+	}
+
+	@Override
+	public String getDisplayName()
+	{
+		return "Macro " + this.id;
+	}
+
+	@Override
+	public IFlagProvider getFlagProvider()
+	{
+		return this.variables;
+	}
+
+	@Override
+	public ICounterProvider getCounterProvider()
+	{
+		return this.variables;
+	}
+
+	@Override
+	public IStringProvider getStringProvider()
+	{
+		return this.variables;
+	}
+
+	@Override
+	public IArrayProvider getArrayProvider()
+	{
+		return this.variables;
+	}
+
+	@Override
+	public IMacroActionContext getContext()
+	{
+		return this.context;
+	}
+
+	@Override
+	public HashMap<String, Object> getStateData()
+	{
+		return this.stateData;
+	}
+
+	@Override
+	public Object getState(String key)
+	{
+		return this.stateData.get(key);
+	}
+
+	@Override
+	public void setState(String key, Object value)
+	{
+		this.stateData.put(key, value);
+	}
+
+	@Override
+	public void markDirty()
+	{
+		this.dirty = true;
+	}
+
+	@Override
+	public boolean isDirty()
+	{
+		return this.dirty;
+	}
+
+	@Override
+	public void kill()
+	{
+		this.dead = true;
+	}
+
+	@Override
+	public boolean isDead()
+	{
+		return this.dead;
+	}
+
+	@Override
+	public void registerVariableProvider(IVariableProvider variableProvider)
+	{
+		this.variableProviders.add(variableProvider);
+	}
+
+	@Override
+	public void unregisterVariableProvider(IVariableProvider variableProvider)
+	{
+		this.variableProviders.remove(variableProvider);
+	}
+}
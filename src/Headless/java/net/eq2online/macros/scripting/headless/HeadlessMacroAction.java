@@ -0,0 +1,246 @@
+package net.eq2online.macros.scripting.headless;
+
+import net.eq2online.macros.scripting.ActionExecutor;
+import net.eq2online.macros.scripting.ActionProfiler;
+import net.eq2online.macros.scripting.ActionTable;
+import net.eq2online.macros.scripting.ScriptCore;
+import net.eq2online.macros.scripting.api.IMacro;
+import net.eq2online.macros.scripting.api.IMacroAction;
+import net.eq2online.macros.scripting.api.IMacroActionContext;
+import net.eq2online.macros.scripting.api.IMacroActionProcessor;
+import net.eq2online.macros.scripting.api.IReturnValue;
+import net.eq2online.macros.scripting.api.IScriptAction;
+import net.eq2online.macros.scripting.api.IScriptActionProvider;
+import net.eq2online.macros.scripting.api.IScriptParser;
+
+/**
+ * Parsed instance of a script action. Executing the instance invokes the action through the script core's
+ * profiler and stores the return value in the out variable if one was specified. Stack and conditional
+ * operators are executed but the stack itself is left to the action processor. Instances created by the
+ * parser hold the action's ordinal and the action table it was resolved from, so the action and its metadata
+ * are read from the table rather than looked up by name.
+ *
+ * When the core's {@link ActionExecutor} is enabled and latent execution is allowed, actions which declare
+ * themselves thread-safe are submitted to the executor instead of being run inline. The instance is then
+ * latent, execute() returns false until the executor's completion has been processed on the tick thread, and
+ * the return value is assigned to the out variable on the tick thread when execute() is next called.
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessMacroAction implements IMacroAction
+{
+	private final IMacroActionProcessor actionProcessor;
+
+	private final ActionTable table;
+
+	private final int ordinal;
+
+	private final IScriptAction action;
+
+	private final String rawParams;
+
+	private final String[] params;
+
+	private final String outVarName;
+
+	private Object state;
+
+	/**
+	 * Action submitted to the executor which has not yet been collected
+	 */
+	private ActionExecutor.PendingAction pending;
+
+	public HeadlessMacroAction(IMacroActionProcessor actionProcessor, IScriptAction action, String rawParams, String[] params)
+	{
+		this(actionProcessor, action, rawParams, params, null);
+	}
+
+	public HeadlessMacroAction(IMacroActionProcessor actionProcessor, IScriptAction action, String rawParams, String[] params, String outVarName)
+	{
+		this.actionProcessor = actionProcessor;
+		this.table           = null;
+		this.ordinal         = ActionTable.NO_ORDINAL;
+		this.action          = action;
+		this.rawParams       = rawParams;
+		this.params          = params;
+		this.outVarName      = outVarName;
+	}
+
+	/**
+	 * @param actionProcessor
+	 * @param table action table the ordinal was resolved against
+	 * @param ordinal
+	 * @param rawParams
+	 * @param params
+	 * @param outVarName
+	 */
+	public HeadlessMacroAction(IMacroActionProcessor actionProcessor, ActionTable table, int ordinal, String rawParams, String[] params, String outVarName)
+	{
+		this.actionProcessor = actionProcessor;
+		this.table           = table;
+		this.ordinal         = ordinal;
+		this.action          = table.get(ordinal);
+		this.rawParams       = rawParams;
+		this.params          = params;
+		this.outVarName      = outVarName;
+	}
+
+	/**
+	 * Get the ordinal of the action in the action table, or ActionTable.NO_ORDINAL if this instance was not
+	 * created from a table
+	 */
+	public int getOrdinal()
+	{
+		return this.ordinal;
+	}
+
+	@Override
+	public boolean canExecuteNow(IMacroActionContext context, IMacro macro)
+	{
+		return this.action.canExecuteNow(context.getProvider(), macro, this, this.rawParams, this.params);
+	}
+
+	@Override
+	public boolean isClocked()
+	{
+		return this.table != null ? this.table.isClocked(this.ordinal) : this.action.isClocked();
+	}
+
+	@Override
+	public boolean execute(IMacroActionContext context, IMacro macro, boolean stop, boolean allowLatent)
+	{
+		IScriptActionProvider provider = context.getProvider();
+		ScriptCore core = context.getScriptContext().getCore();
+		ActionProfiler profiler = core.getProfiler();
+
+		if (this.action.isConditionalOperator())
+		{
+			this.state = Boolean.valueOf(profiler.executeConditional(this.ordinal, this.action, provider, macro, this, this.rawParams, this.params));
+		}
+		else if (this.action.isStackPushOperator())
+		{
+			this.state = Boolean.valueOf(profiler.executeStackPush(this.ordinal, this.action, provider, macro, this, this.rawParams, this.params));
+		}
+		else
+		{
+			IReturnValue returnValue;
+			ActionExecutor executor = core.getActionExecutor();
+
+			if (this.pending != null)
+			{
+				if (!this.pending.isComplete()) return false;
+				ActionExecutor.PendingAction pending = this.pending;
+				this.pending = null;
+				returnValue = pending.getResult();
+			}
+			else if (allowLatent && executor.isEnabled() && this.action.isThreadSafe())
+			{
+				ActionExecutor.PendingAction pending = executor.submit(this.ordinal, this.action, provider, macro, this, this.rawParams, this.params);
+
+				if (!pending.isComplete())
+				{
+					this.pending = pending;
+					return false;
+				}
+
+				returnValue = pending.getResult();
+			}
+			else
+			{
+				returnValue = profiler.execute(this.ordinal, this.action, provider, macro, this, this.rawParams, this.params);
+			}
+
+			if (this.hasOutVar() && returnValue != null) provider.setVariable(macro, this.outVarName, returnValue);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Get whether the action has been submitted to the executor and its result has not yet been collected
+	 */
+	public boolean isPending()
+	{
+		return this.pending != null;
+	}
+
+	@Override
+	public boolean executeStackPop(IMacroActionProcessor processor, IMacroActionContext context, IMacro macro, IMacroAction popAction)
+	{
+		return context.getScriptContext().getCore().getProfiler().executeStackPop(this.ordinal, this.action, context.getProvider(), macro, this, this.rawParams, this.params, popAction);
+	}
+
+	@Override
+	public boolean canBreak(IMacroActionProcessor processor, IScriptActionProvider provider, IMacro macro, IMacroAction breakAction)
+	{
+		return this.action.canBreak(processor, provider, macro, this, breakAction);
+	}
+
+	@Override
+	public IScriptAction getAction()
+	{
+		return this.action;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T getState()
+	{
+		return (T)this.state;
+	}
+
+	@Override
+	public void setState(Object state)
+	{
+		this.state = state;
+	}
+
+	@Override
+	public String[] getParams()
+	{
+		return this.params;
+	}
+
+	@Override
+	public String getRawParams()
+	{
+		return this.rawParams;
+	}
+
+	@Override
+	public IMacroActionProcessor getActionProcessor()
+	{
+		return this.actionProcessor;
+	}
+
+	@Override
+	public void refreshPermissions(IScriptParser parser)
+	{
+	}
+
+	@Override
+	public void onStopped(IMacroActionProcessor macroActionProcessor, IMacroActionContext context, IMacro macro)
+	{
+		// An action still running off-thread completes normally but its result is discarded
+		this.pending = null;
+		this.action.onStopped(context.getProvider(), macro, this);
+	}
+
+	@Override
+	public boolean hasOutVar()
+	{
+		return this.outVarName != null;
+	}
+
+	@Override
+	public String getOutVarName()
+	{
+		return this.outVarName;
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.action + "(" + this.rawParams.trim() + ")";
+	}
+}
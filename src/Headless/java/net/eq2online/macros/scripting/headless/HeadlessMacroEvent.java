@@ -0,0 +1,153 @@
+package net.eq2online.macros.scripting.headless;
+
+import net.eq2online.console.Log;
+import net.eq2online.macros.scripting.VariableProviderPool;
+import net.eq2online.macros.scripting.api.IMacroEventProvider;
+import net.eq2online.macros.scripting.api.IMacroEventVariableProvider;
+import net.eq2online.macros.scripting.api.IPooledMacroEvent;
+
+/**
+ * Macro event registered with a {@link HeadlessEventManager}, events have no icon. Variable providers are
+ * taken from a {@link VariableProviderPool} for the provider class and are returned to it by
+ * {@link HeadlessEventManager#dispatch} once the handler has run
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessMacroEvent implements IPooledMacroEvent
+{
+	private final IMacroEventProvider provider;
+
+	private final String name;
+
+	private final String permissionGroup;
+
+	private volatile VariableProviderPool variableProviderPool;
+
+	/**
+	 * Manager the event was registered with and the ID it was assigned, set once on registration so that
+	 * sending the event does not need to look it up by name
+	 */
+	private volatile HeadlessEventManager manager;
+
+	private volatile int eventId = -1;
+
+	public HeadlessMacroEvent(IMacroEventProvider provider, String name, String permissionGroup)
+	{
+		this.provider = provider;
+		this.name = name;
+		this.permissionGroup = permissionGroup;
+	}
+
+	@Override
+	public String getName()
+	{
+		return this.name;
+	}
+
+	@Override
+	public IMacroEventProvider getProvider()
+	{
+		return this.provider;
+	}
+
+	@Override
+	public void setVariableProviderClass(Class<? extends IMacroEventVariableProvider> providerClass)
+	{
+		if (providerClass == null)
+		{
+			this.variableProviderPool = null;
+			return;
+		}
+
+		try
+		{
+			this.variableProviderPool = new VariableProviderPool(providerClass);
+		}
+		catch (Exception ex)
+		{
+			Log.info("Error setting variable provider for event {0}: {1}", this.name, ex.getMessage());
+			this.variableProviderPool = null;
+		}
+	}
+
+	@Override
+	public IMacroEventVariableProvider getVariableProvider(String[] args)
+	{
+		VariableProviderPool pool = this.variableProviderPool;
+		if (pool == null) return null;
+
+		try
+		{
+			return pool.acquire(args);
+		}
+		catch (Exception ex)
+		{
+			Log.info("Error creating variable provider for event {0}: {1}", this.name, ex.getMessage());
+			return null;
+		}
+	}
+
+	@Override
+	public void releaseVariableProvider(IMacroEventVariableProvider provider)
+	{
+		VariableProviderPool pool = this.variableProviderPool;
+		if (pool != null) pool.release(provider);
+	}
+
+	void setEventId(HeadlessEventManager manager, int eventId)
+	{
+		this.eventId = eventId;
+		this.manager = manager;
+	}
+
+	/**
+	 * Get the ID assigned to the event by the specified manager, or -1 if it was not registered with it
+	 */
+	int getEventId(HeadlessEventManager manager)
+	{
+		return this.manager == manager ? this.eventId : -1;
+	}
+
+	/**
+	 * Get the pool variable providers are taken from, null if no provider class is set
+	 */
+	public VariableProviderPool getVariableProviderPool()
+	{
+		return this.variableProviderPool;
+	}
+
+	@Override
+	public void onDispatch()
+	{
+	}
+
+	@Override
+	public boolean isPermissible()
+	{
+		return this.permissionGroup != null;
+	}
+
+	@Override
+	public String getPermissionGroup()
+	{
+		return this.permissionGroup;
+	}
+
+	@Override
+	public String getPermissionName()
+	{
+		return this.name.toLowerCase();
+	}
+
+	@Override
+	public String getHelpLine(int eventId, int line)
+	{
+		return this.provider != null ? this.provider.getHelp(this, eventId, line) : "";
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.name;
+	}
+}
@@ -0,0 +1,47 @@
+package net.eq2online.macros.scripting.headless;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import net.eq2online.macros.scripting.IModuleClassPath;
+
+/**
+ * Module class path for loading script modules without the launch wrapper, modules are loaded by a child of
+ * the class loader which loaded the scripting core
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessModuleClassPath implements IModuleClassPath
+{
+	/**
+	 * URLClassLoader with a public addURL
+	 */
+	private static final class ModuleClassLoader extends URLClassLoader
+	{
+		ModuleClassLoader(ClassLoader parent)
+		{
+			super(new URL[0], parent);
+		}
+
+		@Override
+		public void addURL(URL url)
+		{
+			super.addURL(url);
+		}
+	}
+
+	private final ModuleClassLoader classLoader = new ModuleClassLoader(HeadlessModuleClassPath.class.getClassLoader());
+
+	@Override
+	public void addModule(File moduleFile) throws Exception
+	{
+		this.classLoader.addURL(moduleFile.toURI().toURL());
+	}
+
+	@Override
+	public ClassLoader getClassLoader()
+	{
+		return this.classLoader;
+	}
+}
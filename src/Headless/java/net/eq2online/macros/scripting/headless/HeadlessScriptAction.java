@@ -0,0 +1,160 @@
+package net.eq2online.macros.scripting.headless;
+
+import net.eq2online.macros.scripting.ScriptActionBase;
+import net.eq2online.macros.scripting.ScriptContext;
+import net.eq2online.macros.scripting.api.IMacro;
+import net.eq2online.macros.scripting.api.IMacroAction;
+import net.eq2online.macros.scripting.api.IMacroActionProcessor;
+import net.eq2online.macros.scripting.api.IMacroActionStackEntry;
+import net.eq2online.macros.scripting.api.IReturnValue;
+import net.eq2online.macros.scripting.api.IScriptAction;
+import net.eq2online.macros.scripting.api.IScriptActionProvider;
+
+/**
+ * Script action which does nothing and returns no value, registered under real action names so that name
+ * lookups, parsing and highlighting in a headless core see a realistic action set. Subclasses override the
+ * operations they need.
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessScriptAction extends ScriptActionBase
+{
+	public HeadlessScriptAction(ScriptContext context, String actionName)
+	{
+		super(context, actionName);
+	}
+
+	@Override
+	public void onInit()
+	{
+	}
+
+	@Override
+	public boolean isThreadSafe()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean isStackPushOperator()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isStackPopOperator()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean canBePoppedBy(IScriptAction action)
+	{
+		return false;
+	}
+
+	@Override
+	public boolean executeStackPush(IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+	{
+		return false;
+	}
+
+	@Override
+	public boolean executeStackPop(IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params, IMacroAction popAction)
+	{
+		return false;
+	}
+
+	@Override
+	public boolean canBreak(IMacroActionProcessor processor, IScriptActionProvider provider, IMacro macro, IMacroAction instance, IMacroAction breakAction)
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isConditionalOperator()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isConditionalElseOperator(IScriptAction action)
+	{
+		return false;
+	}
+
+	@Override
+	public boolean matchesConditionalOperator(IScriptAction action)
+	{
+		return false;
+	}
+
+	@Override
+	public boolean executeConditional(IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+	{
+		return false;
+	}
+
+	@Override
+	public void executeConditionalElse(IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params, IMacroActionStackEntry top)
+	{
+	}
+
+	@Override
+	public IReturnValue execute(IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+	{
+		return null;
+	}
+
+	@Override
+	public boolean canExecuteNow(IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+	{
+		return true;
+	}
+
+	@Override
+	public int onTick(IScriptActionProvider provider)
+	{
+		return 0;
+	}
+
+	@Override
+	public boolean isClocked()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isPermissable()
+	{
+		return false;
+	}
+
+	@Override
+	public String getPermissionGroup()
+	{
+		return null;
+	}
+
+	@Override
+	public void registerPermissions(String actionName, String actionGroup)
+	{
+	}
+
+	@Override
+	public boolean checkExecutePermission()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean checkPermission(String actionName, String permission)
+	{
+		return true;
+	}
+
+	@Override
+	public void onStopped(IScriptActionProvider provider, IMacro macro, IMacroAction instance)
+	{
+	}
+}
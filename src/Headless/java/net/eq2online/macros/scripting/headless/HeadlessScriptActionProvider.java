@@ -0,0 +1,441 @@
+package net.eq2online.macros.scripting.headless;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.eq2online.macros.scripting.ScriptContext;
+import net.eq2online.macros.scripting.Variable;
+import net.eq2online.macros.scripting.VariableProviderUpdater;
+import net.eq2online.macros.scripting.api.IExpressionEvaluator;
+import net.eq2online.macros.scripting.api.IMacro;
+import net.eq2online.macros.scripting.api.IMacroAction;
+import net.eq2online.macros.scripting.api.IReturnValue;
+import net.eq2online.macros.scripting.api.IScriptActionProvider;
+import net.eq2online.macros.scripting.api.IVariableListener;
+import net.eq2online.macros.scripting.api.IVariableProvider;
+import net.eq2online.macros.scripting.api.IVariableProviderShared;
+
+/**
+ * Script action provider which resolves variables against in-memory stores, so that the scripting core can be
+ * run on a plain JVM. Chat and input are forwarded to adapters if they have been set, every other call which
+ * would affect the game is ignored.
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessScriptActionProvider implements IScriptActionProvider
+{
+	private final HeadlessVariableStore sharedVariables = new HeadlessVariableStore();
+
+	private final List<IVariableProvider> variableProviders = new CopyOnWriteArrayList<IVariableProvider>();
+
+	private final List<IVariableListener> variableListeners = new CopyOnWriteArrayList<IVariableListener>();
+
+	private final VariableProviderUpdater updater = new VariableProviderUpdater();
+
+	private volatile IChatAdapter chatAdapter;
+
+	private volatile IInputAdapter inputAdapter;
+
+	/**
+	 * Set the adapter which receives chat and log output, null to discard it
+	 *
+	 * @param chatAdapter
+	 */
+	public void setChatAdapter(IChatAdapter chatAdapter)
+	{
+		this.chatAdapter = chatAdapter;
+	}
+
+	/**
+	 * Set the adapter which receives keyboard and inventory input, null to discard it
+	 *
+	 * @param inputAdapter
+	 */
+	public void setInputAdapter(IInputAdapter inputAdapter)
+	{
+		this.inputAdapter = inputAdapter;
+	}
+
+	@Override
+	public void registerVariableProvider(IVariableProvider variableProvider)
+	{
+		if (this.updater.register(variableProvider))
+		{
+			this.variableProviders.add(variableProvider);
+		}
+	}
+
+	@Override
+	public void unregisterVariableProvider(IVariableProvider variableProvider)
+	{
+		if (this.updater.unregister(variableProvider))
+		{
+			this.variableProviders.remove(variableProvider);
+		}
+	}
+
+	@Override
+	public void updateVariableProviders(boolean clock)
+	{
+		this.updater.update(clock, this.variableListeners);
+	}
+
+	/**
+	 * Get the updater for the registered variable providers, which records their update timings
+	 */
+	public VariableProviderUpdater getVariableProviderUpdater()
+	{
+		return this.updater;
+	}
+
+	@Override
+	public IVariableProvider getProviderForVariable(String variableName)
+	{
+		for (IVariableProvider variableProvider : this.variableProviders)
+		{
+			if (variableProvider.getVariable(variableName) != null) return variableProvider;
+		}
+
+		return null;
+	}
+
+	@Override
+	public void registerVariableListener(IVariableListener variableListener)
+	{
+		this.variableListeners.add(variableListener);
+	}
+
+	@Override
+	public void unregisterVariableListener(IVariableListener variableListener)
+	{
+		this.variableListeners.remove(variableListener);
+	}
+
+	@Override
+	public IVariableProviderShared getSharedVariableProvider()
+	{
+		return this.sharedVariables;
+	}
+
+	@Override
+	public Set<String> getEnvironmentVariables()
+	{
+		Set<String> variables = new HashSet<String>();
+
+		for (IVariableProvider variableProvider : this.variableProviders)
+		{
+			variables.addAll(variableProvider.getVariables());
+		}
+
+		return variables;
+	}
+
+	@Override
+	public Object getVariable(String variableName, IVariableProvider inContextProvider)
+	{
+		Object value = inContextProvider != null ? inContextProvider.getVariable(variableName) : null;
+
+		for (int index = 0; value == null && index < this.variableProviders.size(); index++)
+		{
+			value = this.variableProviders.get(index).getVariable(variableName);
+		}
+
+		return value;
+	}
+
+	@Override
+	public Object getVariable(String variableName, IMacro macro)
+	{
+		if (variableName.startsWith(Variable.PREFIX_SHARED))
+		{
+			return this.sharedVariables.getValue(variableName.substring(Variable.PREFIX_SHARED.length()));
+		}
+
+		return this.getVariable(variableName, (IVariableProvider)macro);
+	}
+
+	@Override
+	public IExpressionEvaluator getExpressionEvaluator(IMacro macro, String expression)
+	{
+		return null;
+	}
+
+	@Override
+	public void actionSendChatMessage(IMacro macro, IMacroAction instance, String message)
+	{
+		IChatAdapter chatAdapter = this.chatAdapter;
+		if (chatAdapter != null) chatAdapter.sendChatMessage(message);
+	}
+
+	@Override
+	public void actionAddChatMessage(String message)
+	{
+		IChatAdapter chatAdapter = this.chatAdapter;
+		if (chatAdapter != null) chatAdapter.addChatMessage(message);
+	}
+
+	@Override
+	public void actionDisconnect()
+	{
+	}
+
+	@Override
+	public void actionDisplayGuiScreen(String guiScreenName, ScriptContext context)
+	{
+	}
+
+	@Override
+	public void actionDisplayCustomScreen(String screenName, String backScreenName)
+	{
+	}
+
+	@Override
+	public void actionBindScreenToSlot(String slotName, String screenName)
+	{
+	}
+
+	@Override
+	public String actionSwitchConfig(String configName, boolean verbose)
+	{
+		return configName;
+	}
+
+	@Override
+	public String actionOverlayConfig(String configName, boolean toggle, boolean verbose)
+	{
+		return configName;
+	}
+
+	@Override
+	public void actionRenderDistance()
+	{
+	}
+
+	@Override
+	public boolean actionInventoryPick(String itemId, int damage)
+	{
+		IInputAdapter inputAdapter = this.inputAdapter;
+		return inputAdapter != null && inputAdapter.pickItem(itemId, damage);
+	}
+
+	@Override
+	public void actionInventorySlot(int slotId)
+	{
+		IInputAdapter inputAdapter = this.inputAdapter;
+		if (inputAdapter != null) inputAdapter.selectSlot(slotId);
+	}
+
+	@Override
+	public void actionInventoryMove(int offset)
+	{
+		IInputAdapter inputAdapter = this.inputAdapter;
+		if (inputAdapter != null) inputAdapter.scrollSlot(offset);
+	}
+
+	@Override
+	public void actionSetSprinting(boolean sprint)
+	{
+		IInputAdapter inputAdapter = this.inputAdapter;
+		if (inputAdapter != null) inputAdapter.setSprinting(sprint);
+	}
+
+	@Override
+	public void actionStopMacros()
+	{
+	}
+
+	@Override
+	public void actionStopMacros(IMacro macro, int keyCode)
+	{
+	}
+
+	@Override
+	public boolean getFlagValue(IMacro macro, String flag)
+	{
+		Variable variable = Variable.getVariable(this.sharedVariables, null, macro, flag);
+		return variable != null && variable.getFlag();
+	}
+
+	@Override
+	public void setFlagVariable(IMacro macro, String flag, boolean value)
+	{
+		Variable variable = Variable.getVariable(this.sharedVariables, null, macro, flag);
+		if (variable != null) variable.setFlag(value);
+	}
+
+	@Override
+	public void setVariable(IMacro macro, String variableName, String variableValue, int intValue, boolean boolValue)
+	{
+		Variable variable = Variable.getVariable(this.sharedVariables, null, macro, variableName);
+		if (variable == null) return;
+
+		switch (variable.type)
+		{
+			case Counter: variable.setCounter(intValue); break;
+			case String:  variable.setString(variableValue); break;
+			default:      variable.setFlag(boolValue); break;
+		}
+	}
+
+	@Override
+	public void setVariable(IMacro macro, String variableName, IReturnValue returnValue)
+	{
+		if (returnValue != null && !returnValue.isVoid())
+		{
+			this.setVariable(macro, variableName, returnValue.getString(), returnValue.getInteger(), returnValue.getBoolean());
+		}
+	}
+
+	@Override
+	public void unsetVariable(IMacro macro, String variableName)
+	{
+		Variable variable = Variable.getVariable(this.sharedVariables, null, macro, variableName);
+		if (variable == null) return;
+
+		variable.unSetFlag();
+		variable.unSetCounter();
+		variable.unSetString();
+	}
+
+	@Override
+	public void incrementCounterVariable(IMacro macro, String counter, int increment)
+	{
+		Variable variable = Variable.getVariable(this.sharedVariables, null, macro, counter);
+		if (variable != null) variable.setCounter(variable.getCounter() + increment);
+	}
+
+	@Override
+	public void pushValueToArray(IMacro macro, String arrayName, String variableValue)
+	{
+		macro.getArrayProvider().push(arrayName, variableValue);
+	}
+
+	@Override
+	public String popValueFromArray(IMacro macro, String arrayName)
+	{
+		return macro.getArrayProvider().pop(arrayName);
+	}
+
+	@Override
+	public void putValueToArray(IMacro macro, String arrayName, String variableValue)
+	{
+		macro.getArrayProvider().put(arrayName, variableValue);
+	}
+
+	@Override
+	public void clearArray(IMacro macro, String arrayName)
+	{
+		macro.getArrayProvider().clear(arrayName);
+	}
+
+	@Override
+	public void deleteArrayElement(IMacro macro, String arrayName, int offset)
+	{
+		macro.getArrayProvider().delete(arrayName, offset);
+	}
+
+	@Override
+	public Object getArrayElement(IMacro macro, String arrayName, int offset)
+	{
+		return macro.getArrayProvider().getArrayVariableValue(arrayName, offset);
+	}
+
+	@Override
+	public int getArrayIndexOf(IMacro macro, String arrayName, String search, boolean caseSensitive)
+	{
+		return macro.getArrayProvider().indexOf(arrayName, search, caseSensitive);
+	}
+
+	@Override
+	public int getArraySize(IMacro macro, String arrayName)
+	{
+		return macro.getArrayProvider().getMaxArrayIndex(arrayName) + 1;
+	}
+
+	@Override
+	public boolean getArrayExists(IMacro macro, String arrayName)
+	{
+		return macro.getArrayProvider().checkArrayExists(arrayName);
+	}
+
+	@Override
+	public void actionPumpCharacters(String chars)
+	{
+		IInputAdapter inputAdapter = this.inputAdapter;
+		if (inputAdapter != null) inputAdapter.pumpCharacters(chars);
+	}
+
+	@Override
+	public void actionPumpKeyPress(int keyCode, boolean deep)
+	{
+		IInputAdapter inputAdapter = this.inputAdapter;
+		if (inputAdapter != null) inputAdapter.pumpKeyPress(keyCode, deep);
+	}
+
+	@Override
+	public void actionSelectResourcePacks(String[] resourcePackNames)
+	{
+	}
+
+	@Override
+	public void actionBindKey(int keyBindId, int keyCode)
+	{
+		IInputAdapter inputAdapter = this.inputAdapter;
+		if (inputAdapter != null) inputAdapter.bindKey(keyBindId, keyCode);
+	}
+
+	@Override
+	public void actionRespawnPlayer()
+	{
+	}
+
+	@Override
+	public void actionSetRenderDistance(String distance)
+	{
+	}
+
+	@Override
+	public void onTick()
+	{
+	}
+
+	@Override
+	public void actionAddLogMessage(String targetName, String logMessage)
+	{
+		IChatAdapter chatAdapter = this.chatAdapter;
+		if (chatAdapter != null) chatAdapter.addLogMessage(targetName, logMessage);
+	}
+
+	@Override
+	public void actionSetLabel(String targetName, String text, String binding)
+	{
+	}
+
+	@Override
+	public void actionBreakLoop(IMacro macro, IMacroAction breakAction)
+	{
+	}
+
+	@Override
+	public void actionBeginUnsafeBlock(IMacro macro, IMacroAction instance, int maxActions)
+	{
+	}
+
+	@Override
+	public void actionEndUnsafeBlock(IMacro macro, IMacroAction instance)
+	{
+	}
+
+	@Override
+	public void actionScheduleResChange(int width, int height)
+	{
+	}
+
+	@Override
+	public String getSoundResourceNamespace()
+	{
+		return "minecraft";
+	}
+}
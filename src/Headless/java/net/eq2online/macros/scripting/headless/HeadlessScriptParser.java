@@ -0,0 +1,115 @@
+package net.eq2online.macros.scripting.headless;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.eq2online.macros.scripting.ActionParser;
+import net.eq2online.macros.scripting.ScriptContext;
+import net.eq2online.macros.scripting.api.IMacroAction;
+import net.eq2online.macros.scripting.api.IMacroActionProcessor;
+import net.eq2online.macros.scripting.api.IScriptParser;
+
+/**
+ * Script parser which splits a script into semicolon-separated entries and offers each entry to the
+ * registered action parsers in order. Semicolons inside quoted strings or parentheses do not separate
+ * entries. A {@link HeadlessActionParser} is registered by default.
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessScriptParser implements IScriptParser
+{
+	private final ScriptContext context;
+
+	private final List<ActionParser> actionParsers = new CopyOnWriteArrayList<ActionParser>();
+
+	public HeadlessScriptParser(ScriptContext context)
+	{
+		this.context = context;
+		this.actionParsers.add(new HeadlessActionParser(context));
+	}
+
+	@Override
+	public void addActionParser(ActionParser parser)
+	{
+		this.actionParsers.add(0, parser);
+	}
+
+	@Override
+	public ScriptContext getContext()
+	{
+		return this.context;
+	}
+
+	@Override
+	public List<IMacroAction> parseScript(IMacroActionProcessor actionProcessor, String script)
+	{
+		List<IMacroAction> actions = new ArrayList<IMacroAction>();
+
+		for (String entry : HeadlessScriptParser.split(script))
+		{
+			for (ActionParser parser : this.actionParsers)
+			{
+				IMacroAction action = parser.parse(actionProcessor, entry);
+
+				if (action != null)
+				{
+					actions.add(action);
+					break;
+				}
+			}
+		}
+
+		return actions;
+	}
+
+	/**
+	 * Split a script into trimmed, non-empty entries
+	 *
+	 * @param script
+	 * @return
+	 */
+	static List<String> split(String script)
+	{
+		List<String> entries = new ArrayList<String>();
+		int start = 0, depth = 0;
+		boolean quoted = false, escaped = false;
+
+		for (int pos = 0; pos < script.length(); pos++)
+		{
+			char currentChar = script.charAt(pos);
+
+			if (escaped)
+			{
+				escaped = false;
+			}
+			else if (currentChar == '\\')
+			{
+				escaped = true;
+			}
+			else if (currentChar == '"')
+			{
+				quoted = !quoted;
+			}
+			else if (!quoted)
+			{
+				if (currentChar == '(') depth++;
+				else if (currentChar == ')' && depth > 0) depth--;
+				else if (currentChar == ';' && depth == 0)
+				{
+					HeadlessScriptParser.addEntry(entries, script.substring(start, pos));
+					start = pos + 1;
+				}
+			}
+		}
+
+		HeadlessScriptParser.addEntry(entries, script.substring(start));
+		return entries;
+	}
+
+	private static void addEntry(List<String> entries, String entry)
+	{
+		entry = entry.trim();
+		if (entry.length() > 0) entries.add(entry);
+	}
+}
@@ -0,0 +1,333 @@
+package net.eq2online.macros.scripting.headless;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.eq2online.macros.scripting.Variable;
+import net.eq2online.macros.scripting.api.ICounterProvider;
+import net.eq2online.macros.scripting.api.IFlagProvider;
+import net.eq2online.macros.scripting.api.IStringProvider;
+import net.eq2online.macros.scripting.api.IVariableProviderShared;
+
+/**
+ * In-memory flag, counter, string and array store used as both the macro-local and shared variable provider
+ * when running the scripting core without the game. Array elements are addressed as name[offset] in the
+ * scalar maps, offsets below zero address the scalar itself. Scalars are held in concurrent maps and array
+ * operations are synchronised, so a single store can be shared by macros running on different threads.
+ *
+ * @author Adam Mummery-Smith
+ */
+public class HeadlessVariableStore implements IVariableProviderShared
+{
+	private final Map<String, Boolean> flags = new ConcurrentHashMap<String, Boolean>();
+
+	private final Map<String, Integer> counters = new ConcurrentHashMap<String, Integer>();
+
+	private final Map<String, String> strings = new ConcurrentHashMap<String, String>();
+
+	private final Map<String, List<String>> arrays = new HashMap<String, List<String>>();
+
+	private static String key(String name, int offset)
+	{
+		return offset < 0 ? name : name + "[" + offset + "]";
+	}
+
+	/**
+	 * Get the value of a variable by its qualified name, eg. "#counter", "&string" or "flag"
+	 *
+	 * @param qualifiedName
+	 * @return value or null if the variable is not set
+	 */
+	public Object getValue(String qualifiedName)
+	{
+		if (qualifiedName.startsWith(Variable.PREFIX_INT)) return this.counters.get(qualifiedName.substring(1));
+		if (qualifiedName.startsWith(Variable.PREFIX_STRING)) return this.strings.get(qualifiedName.substring(1));
+		return this.flags.get(qualifiedName);
+	}
+
+	@Override
+	public void onInit()
+	{
+	}
+
+	@Override
+	public void updateVariables(boolean clock)
+	{
+	}
+
+	@Override
+	public Object getVariable(String variableName)
+	{
+		return this.getValue(variableName);
+	}
+
+	@Override
+	public Set<String> getVariables()
+	{
+		Set<String> variables = new HashSet<String>(this.flags.keySet());
+		for (String counter : this.counters.keySet()) variables.add(Variable.PREFIX_INT + counter);
+		for (String string : this.strings.keySet()) variables.add(Variable.PREFIX_STRING + string);
+		return variables;
+	}
+
+	@Override
+	public boolean getFlag(String flag)
+	{
+		return this.getFlag(flag, -1);
+	}
+
+	@Override
+	public boolean getFlag(String flag, int offset)
+	{
+		Boolean value = this.flags.get(HeadlessVariableStore.key(flag, offset));
+		return value != null ? value.booleanValue() : IFlagProvider.EMPTY;
+	}
+
+	@Override
+	public void setFlag(String flag, boolean value)
+	{
+		this.setFlag(flag, -1, value);
+	}
+
+	@Override
+	public void setFlag(String flag, int offset, boolean value)
+	{
+		this.flags.put(HeadlessVariableStore.key(flag, offset), value);
+	}
+
+	@Override
+	public void setFlag(String flag)
+	{
+		this.setFlag(flag, -1, true);
+	}
+
+	@Override
+	public void setFlag(String flag, int offset)
+	{
+		this.setFlag(flag, offset, true);
+	}
+
+	@Override
+	public void unsetFlag(String flag)
+	{
+		this.unsetFlag(flag, -1);
+	}
+
+	@Override
+	public void unsetFlag(String flag, int offset)
+	{
+		this.flags.remove(HeadlessVariableStore.key(flag, offset));
+	}
+
+	@Override
+	public int getCounter(String counter)
+	{
+		return this.getCounter(counter, -1);
+	}
+
+	@Override
+	public int getCounter(String counter, int offset)
+	{
+		Integer value = this.counters.get(HeadlessVariableStore.key(counter, offset));
+		return value != null ? value.intValue() : ICounterProvider.EMPTY;
+	}
+
+	@Override
+	public void setCounter(String counter, int value)
+	{
+		this.setCounter(counter, -1, value);
+	}
+
+	@Override
+	public void setCounter(String counter, int offset, int value)
+	{
+		this.counters.put(HeadlessVariableStore.key(counter, offset), value);
+	}
+
+	@Override
+	public void unsetCounter(String counter)
+	{
+		this.unsetCounter(counter, -1);
+	}
+
+	@Override
+	public void unsetCounter(String counter, int offset)
+	{
+		this.counters.remove(HeadlessVariableStore.key(counter, offset));
+	}
+
+	@Override
+	public void incrementCounter(String counter, int increment)
+	{
+		this.incrementCounter(counter, -1, increment);
+	}
+
+	@Override
+	public synchronized void incrementCounter(String counter, int offset, int increment)
+	{
+		this.setCounter(counter, offset, this.getCounter(counter, offset) + increment);
+	}
+
+	@Override
+	public void decrementCounter(String counter, int decrement)
+	{
+		this.incrementCounter(counter, -1, -decrement);
+	}
+
+	@Override
+	public void decrementCounter(String counter, int offset, int decrement)
+	{
+		this.incrementCounter(counter, offset, -decrement);
+	}
+
+	@Override
+	public String getString(String stringName)
+	{
+		return this.getString(stringName, -1);
+	}
+
+	@Override
+	public String getString(String stringName, int offset)
+	{
+		String value = this.strings.get(HeadlessVariableStore.key(stringName, offset));
+		return value != null ? value : IStringProvider.EMPTY;
+	}
+
+	@Override
+	public void setString(String stringName, String value)
+	{
+		this.setString(stringName, -1, value);
+	}
+
+	@Override
+	public void setString(String stringName, int offset, String value)
+	{
+		if (value == null)
+		{
+			this.unsetString(stringName, offset);
+			return;
+		}
+
+		this.strings.put(HeadlessVariableStore.key(stringName, offset), value);
+	}
+
+	@Override
+	public void unsetString(String stringName)
+	{
+		this.unsetString(stringName, -1);
+	}
+
+	@Override
+	public void unsetString(String stringName, int offset)
+	{
+		this.strings.remove(HeadlessVariableStore.key(stringName, offset));
+	}
+
+	private List<String> getArray(String arrayName, boolean create)
+	{
+		List<String> array = this.arrays.get(arrayName);
+
+		if (array == null && create)
+		{
+			array = new ArrayList<String>();
+			this.arrays.put(arrayName, array);
+		}
+
+		return array;
+	}
+
+	@Override
+	public synchronized boolean push(String arrayName, String value)
+	{
+		return this.getArray(arrayName, true).add(value);
+	}
+
+	@Override
+	public synchronized String pop(String arrayName)
+	{
+		List<String> array = this.getArray(arrayName, false);
+		return array != null && array.size() > 0 ? array.remove(array.size() - 1) : null;
+	}
+
+	@Override
+	public synchronized boolean put(String arrayName, String value)
+	{
+		List<String> array = this.getArray(arrayName, true);
+		int index = array.indexOf(null);
+		if (index < 0) return array.add(value);
+		array.set(index, value);
+		return true;
+	}
+
+	@Override
+	public synchronized int indexOf(String arrayName, String value, boolean caseSensitive)
+	{
+		List<String> array = this.getArray(arrayName, false);
+		if (array == null) return MISSING;
+
+		for (int index = 0; index < array.size(); index++)
+		{
+			String element = array.get(index);
+			if (element != null && (caseSensitive ? element.equals(value) : element.equalsIgnoreCase(value))) return index;
+		}
+
+		return MISSING;
+	}
+
+	@Override
+	public synchronized void delete(String arrayName, int offset)
+	{
+		List<String> array = this.getArray(arrayName, false);
+		if (array != null && offset >= 0 && offset < array.size()) array.set(offset, null);
+	}
+
+	@Override
+	public synchronized void clear(String arrayName)
+	{
+		this.arrays.remove(arrayName);
+	}
+
+	@Override
+	public synchronized int getMaxArrayIndex(String arrayName)
+	{
+		List<String> array = this.getArray(arrayName, false);
+		return array != null ? array.size() - 1 : MISSING;
+	}
+
+	@Override
+	public synchronized boolean checkArrayExists(String arrayName)
+	{
+		return this.arrays.containsKey(arrayName);
+	}
+
+	@Override
+	public synchronized Object getArrayVariableValue(String variableName, int offset)
+	{
+		List<String> array = this.getArray(variableName, false);
+		return array != null && offset >= 0 && offset < array.size() ? array.get(offset) : null;
+	}
+
+	@Override
+	public void setSharedVariable(String variableName, String variableValue)
+	{
+		this.setString(variableName, variableValue);
+	}
+
+	@Override
+	public String getSharedVariable(String variableName)
+	{
+		return this.getString(variableName);
+	}
+
+	@Override
+	public int getSharedVariable(String variableName, int defaultValue)
+	{
+		Integer value = this.counters.get(variableName);
+		return value != null ? value.intValue() : defaultValue;
+	}
+}
@@ -0,0 +1,32 @@
+package net.eq2online.macros.scripting.headless;
+
+/**
+ * Receives the chat and log output of scripts running in a {@link HeadlessScriptActionProvider}, in place
+ * of the game's chat GUI and network connection
+ *
+ * @author Adam Mummery-Smith
+ */
+public interface IChatAdapter
+{
+	/**
+	 * A script sent a chat message or command to the server
+	 *
+	 * @param message
+	 */
+	public abstract void sendChatMessage(String message);
+
+	/**
+	 * A script added a message to the local chat GUI
+	 *
+	 * @param message
+	 */
+	public abstract void addChatMessage(String message);
+
+	/**
+	 * A script wrote a message to a log target
+	 *
+	 * @param targetName
+	 * @param message
+	 */
+	public abstract void addLogMessage(String targetName, String message);
+}
@@ -0,0 +1,49 @@
+package net.eq2online.macros.scripting.headless;
+
+/**
+ * Receives the keyboard and inventory input generated by scripts running in a
+ * {@link HeadlessScriptActionProvider}, in place of the game's input handling
+ *
+ * @author Adam Mummery-Smith
+ */
+public interface IInputAdapter
+{
+	/**
+	 * @param chars characters to type
+	 */
+	public abstract void pumpCharacters(String chars);
+
+	/**
+	 * @param keyCode key to press
+	 * @param deep true to pass the key press to the game as well as the current GUI
+	 */
+	public abstract void pumpKeyPress(int keyCode, boolean deep);
+
+	/**
+	 * @param keyBindId
+	 * @param keyCode
+	 */
+	public abstract void bindKey(int keyBindId, int keyCode);
+
+	/**
+	 * @param slotId hotbar slot to select
+	 */
+	public abstract void selectSlot(int slotId);
+
+	/**
+	 * @param offset number of slots to scroll the hotbar by
+	 */
+	public abstract void scrollSlot(int offset);
+
+	/**
+	 * @param itemId
+	 * @param damage
+	 * @return true if the item was found and selected
+	 */
+	public abstract boolean pickItem(String itemId, int damage);
+
+	/**
+	 * @param sprint
+	 */
+	public abstract void setSprinting(boolean sprint);
+}
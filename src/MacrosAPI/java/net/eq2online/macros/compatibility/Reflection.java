@@ -11,13 +11,15 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import net.eq2online.console.Log;
 import net.eq2online.macros.scripting.IErrorLogger;
-import net.minecraft.client.ClientBrandRetriever;
+import net.eq2online.macros.scripting.ModuleScanCache;
 
 /**
  * Reflection functions
@@ -36,10 +38,28 @@ public class Reflection
 	 */
 	private static boolean forgeModLoader = false;
 	
+	/**
+	 * True if game classes have their MCP names, ie. we are running inside the debugger
+	 */
+	private static boolean deobfuscated = false;
+	
 	static
 	{
-		// Look for FML since we need to use Searge field names for reflection if running alongside forge
-		forgeModLoader = ClientBrandRetriever.getClientModName().contains("fml");
+		// Look for FML since we need to use Searge field names for reflection if running alongside forge. The
+		// game classes are looked up by name so that this class can also be loaded without the game
+		try
+		{
+			Class<?> brandRetriever = Class.forName("net.minecraft.client.ClientBrandRetriever", false, Reflection.class.getClassLoader());
+			forgeModLoader = String.valueOf(brandRetriever.getMethod("getClientModName").invoke(null)).contains("fml");
+		}
+		catch (Throwable th) {}
+		
+		try
+		{
+			Class.forName("net.minecraft.client.renderer.Tessellator", false, Reflection.class.getClassLoader());
+			deobfuscated = true;
+		}
+		catch (Throwable th) {}
 		
 		try
 		{
@@ -113,7 +133,7 @@ public class Reflection
 	private static String getObfuscatedFieldName(String fieldName, String obfuscatedFieldName, String seargeFieldName)
 	{
 		if (forgeModLoader) return seargeFieldName;
-		return (!net.minecraft.client.renderer.Tessellator.instance.getClass().getSimpleName().equals("Tessellator")) ? obfuscatedFieldName : fieldName;
+		return deobfuscated ? fieldName : obfuscatedFieldName;
 	}
 	
 	/**
@@ -248,7 +268,7 @@ public class Reflection
 				}
 				else if (packagePath.isFile() && (packagePath.getName().endsWith(".jar") || packagePath.getName().endsWith(".zip") || packagePath.getName().endsWith(".litemod")))
 				{
-					enumerateCompressedPackage(prefix, superClass, classloader, classes, packagePath, logger);
+					enumerateCachedPackage(prefix, superClass, classloader, classes, packagePath, logger);
 				}
 				
 				return classes;
@@ -263,6 +283,52 @@ public class Reflection
 		return new LinkedList<Class<? extends T>>();
 	}
 	
+	/**
+	 * Enumerate a compressed package using the default module scan cache if one is available, the classes
+	 * found in a package are stored in the cache so that only those classes need to be loaded next time
+	 * 
+	 * @param superClass
+	 * @param classloader
+	 * @param classes
+	 * @param packagePath
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 */
+	protected static <T> void enumerateCachedPackage(String prefix, Class<T> superClass, ClassLoader classloader, LinkedList<Class<? extends T>> classes, File packagePath, IErrorLogger logger) throws FileNotFoundException, IOException
+	{
+		ModuleScanCache scanCache = ModuleScanCache.getDefault();
+		
+		if (scanCache == null)
+		{
+			enumerateCompressedPackage(prefix, superClass, classloader, classes, packagePath, logger);
+			return;
+		}
+		
+		String scan = "subclasses:" + superClass.getName() + ":" + prefix;
+		List<ModuleScanCache.Entry> entries = scanCache.get(packagePath, scan);
+		
+		if (entries != null)
+		{
+			for (ModuleScanCache.Entry entry : entries)
+			{
+				checkAndAddClass(classloader, superClass, classes, entry.className, logger);
+			}
+			
+			return;
+		}
+		
+		enumerateCompressedPackage(prefix, superClass, classloader, classes, packagePath, logger);
+		
+		entries = new ArrayList<ModuleScanCache.Entry>();
+		for (Class<? extends T> subClass : classes)
+		{
+			entries.add(new ModuleScanCache.Entry(superClass.getSimpleName(), subClass.getName(), ModuleScanCache.UNKNOWN_VERSION));
+		}
+		
+		scanCache.put(packagePath, scan, entries);
+		scanCache.save();
+	}
+	
 	/**
 	 * @param superClass
 	 * @param classloader
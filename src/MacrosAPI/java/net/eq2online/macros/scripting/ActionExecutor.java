@@ -0,0 +1,488 @@
+package net.eq2online.macros.scripting;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.eq2online.macros.scripting.api.IMacro;
+import net.eq2online.macros.scripting.api.IMacroAction;
+import net.eq2online.macros.scripting.api.IReturnValue;
+import net.eq2online.macros.scripting.api.IScriptAction;
+import net.eq2online.macros.scripting.api.IScriptActionProvider;
+import net.eq2online.macros.scripting.exceptions.ScriptExceptionAction;
+
+/**
+ * Runs actions which declare themselves thread-safe on worker threads so that slow actions do not stall the
+ * tick. The action processor submits an action and treats it as latent until the returned
+ * {@link PendingAction} is complete, results are handed back through a completion queue which is drained on
+ * the tick thread by {@link #processCompletions}, so return values are only ever seen (and assigned to
+ * variables) on the tick thread.
+ *
+ * Actions which are not thread-safe, and all actions while off-thread execution is disabled, are run
+ * immediately on the calling thread and are complete when submit() returns. Thread-safe actions submitted
+ * while the number of actions in flight is at its limit are deferred and handed to a worker as soon as one
+ * of the running actions finishes, so a burst of slow actions never runs on the tick thread. Virtual threads are used for workers where the JVM supports them, otherwise a fixed
+ * pool of daemon threads.
+ *
+ * @author Adam Mummery-Smith
+ */
+public final class ActionExecutor
+{
+	/**
+	 * Default maximum number of actions running off-thread at once
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+	/**
+	 * An action which has been submitted for execution
+	 */
+	public static final class PendingAction
+	{
+		private final ActionExecutor executor;
+
+		private final int ordinal;
+
+		private final IScriptAction action;
+
+		private final IScriptActionProvider provider;
+
+		private final IMacro macro;
+
+		private final IMacroAction instance;
+
+		private final String rawParams;
+
+		private final String[] params;
+
+		/**
+		 * Written by the worker before the action is queued for completion
+		 */
+		private volatile IReturnValue result;
+
+		private volatile Throwable error;
+
+		/**
+		 * Set on the tick thread when the completion is processed
+		 */
+		private volatile boolean complete;
+
+		PendingAction(ActionExecutor executor, int ordinal, IScriptAction action, IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+		{
+			this.executor  = executor;
+			this.ordinal   = ordinal;
+			this.action    = action;
+			this.provider  = provider;
+			this.macro     = macro;
+			this.instance  = instance;
+			this.rawParams = rawParams;
+			this.params    = params;
+		}
+
+		void execute()
+		{
+			try
+			{
+				this.result = this.ordinal != ActionTable.NO_ORDINAL
+					? this.executor.profiler.execute(this.ordinal, this.action, this.provider, this.macro, this.instance, this.rawParams, this.params)
+					: this.executor.profiler.execute(this.action, this.provider, this.macro, this.instance, this.rawParams, this.params);
+			}
+			catch (Throwable th)
+			{
+				this.error = th;
+			}
+		}
+
+		public IScriptAction getAction()
+		{
+			return this.action;
+		}
+
+		public IMacro getMacro()
+		{
+			return this.macro;
+		}
+
+		public IMacroAction getInstance()
+		{
+			return this.instance;
+		}
+
+		/**
+		 * Get whether the action has finished and its completion has been processed on the tick thread
+		 */
+		public boolean isComplete()
+		{
+			return this.complete;
+		}
+
+		/**
+		 * Get the value returned by the action
+		 *
+		 * @return
+		 * @throws IllegalStateException if the action is not complete
+		 * @throws ScriptExceptionAction if the action threw an exception
+		 */
+		public IReturnValue getResult()
+		{
+			if (!this.complete) throw new IllegalStateException("Action " + this.action + " has not completed");
+			if (this.error != null) throw new ScriptExceptionAction("Error executing " + this.action, this.error);
+			return this.result;
+		}
+
+		/**
+		 * Get the exception thrown by the action, or null if it completed normally or is not complete
+		 */
+		public Throwable getError()
+		{
+			return this.complete ? this.error : null;
+		}
+	}
+
+	/**
+	 * Worker task for a pending action, kept as a named type so that tasks discarded on shutdown can be
+	 * completed
+	 */
+	final class OffThreadTask implements Runnable
+	{
+		final PendingAction pending;
+
+		OffThreadTask(PendingAction pending)
+		{
+			this.pending = pending;
+		}
+
+		@Override
+		public void run()
+		{
+			ActionExecutor.this.runOffThread(this.pending);
+		}
+	}
+
+	private final ActionProfiler profiler;
+
+	private final int threads;
+
+	private final int maxInFlight;
+
+	/**
+	 * Limits the number of actions queued or running off-thread
+	 */
+	private final Semaphore inFlight;
+
+	private final ConcurrentLinkedQueue<PendingAction> completions = new ConcurrentLinkedQueue<PendingAction>();
+
+	/**
+	 * Thread-safe actions waiting for an in-flight permit
+	 */
+	private final ConcurrentLinkedQueue<PendingAction> deferred = new ConcurrentLinkedQueue<PendingAction>();
+
+	private volatile ExecutorService executor;
+
+	private volatile boolean enabled;
+
+	private final AtomicLong submitted = new AtomicLong(), offThread = new AtomicLong(), deferrals = new AtomicLong(), failed = new AtomicLong();
+
+	public ActionExecutor(ActionProfiler profiler)
+	{
+		this(profiler, Math.max(2, Runtime.getRuntime().availableProcessors()), ActionExecutor.DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * @param profiler profiler to invoke actions through
+	 * @param threads number of worker threads if virtual threads are not available
+	 * @param maxInFlight maximum number of actions queued or running off-thread at once
+	 */
+	public ActionExecutor(ActionProfiler profiler, int threads, int maxInFlight)
+	{
+		this.profiler = profiler;
+		this.threads = Math.max(1, threads);
+		this.maxInFlight = Math.max(1, maxInFlight);
+		this.inFlight = new Semaphore(this.maxInFlight);
+	}
+
+	public boolean isEnabled()
+	{
+		return this.enabled;
+	}
+
+	/**
+	 * Enable or disable off-thread execution, actions already running off-thread still complete normally and
+	 * deferred actions are run on the tick thread by the next call to {@link #processCompletions}
+	 *
+	 * @param enabled
+	 */
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Execute an action, off-thread if possible
+	 *
+	 * @param action
+	 * @param provider
+	 * @param macro
+	 * @param instance
+	 * @param rawParams
+	 * @param params parameters, must not be modified until the action is complete
+	 * @return pending action, already complete if the action was run on the calling thread
+	 */
+	public PendingAction submit(IScriptAction action, IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+	{
+		return this.submit(ActionTable.NO_ORDINAL, action, provider, macro, instance, rawParams, params);
+	}
+
+	/**
+	 * Execute an action, off-thread if possible
+	 *
+	 * @param ordinal ordinal of the action in the core's action table, or ActionTable.NO_ORDINAL
+	 * @param action
+	 * @param provider
+	 * @param macro
+	 * @param instance
+	 * @param rawParams
+	 * @param params parameters, must not be modified until the action is complete
+	 * @return pending action, already complete if the action was run on the calling thread
+	 */
+	public PendingAction submit(int ordinal, IScriptAction action, IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+	{
+		PendingAction pending = new PendingAction(this, ordinal, action, provider, macro, instance, rawParams, params);
+		this.submitted.incrementAndGet();
+
+		if (this.enabled && action.isThreadSafe())
+		{
+			// Queue behind actions already waiting for a permit so that they are started in submission order
+			if (this.deferred.isEmpty() && this.inFlight.tryAcquire())
+			{
+				this.dispatch(pending);
+			}
+			else
+			{
+				this.deferrals.incrementAndGet();
+				this.deferred.add(pending);
+				this.dispatchDeferred();
+			}
+
+			return pending;
+		}
+
+		pending.execute();
+		this.complete(pending);
+		return pending;
+	}
+
+	/**
+	 * Hand an action to a worker, the caller must hold an in-flight permit for it
+	 */
+	private void dispatch(PendingAction pending)
+	{
+		try
+		{
+			this.getExecutor().execute(new OffThreadTask(pending));
+			this.offThread.incrementAndGet();
+		}
+		catch (RejectedExecutionException ex)
+		{
+			this.cancel(pending);
+		}
+	}
+
+	/**
+	 * Start deferred actions for as long as permits are available
+	 */
+	private void dispatchDeferred()
+	{
+		while (!this.deferred.isEmpty() && this.inFlight.tryAcquire())
+		{
+			PendingAction pending = this.deferred.poll();
+
+			if (pending == null)
+			{
+				this.inFlight.release();
+				return;
+			}
+
+			this.dispatch(pending);
+		}
+	}
+
+	private void runOffThread(PendingAction pending)
+	{
+		try
+		{
+			pending.execute();
+		}
+		finally
+		{
+			this.completions.add(pending);
+			this.inFlight.release();
+		}
+
+		this.dispatchDeferred();
+	}
+
+	/**
+	 * Complete an action which will never run with a cancellation error and release its permit
+	 */
+	private void cancel(PendingAction pending)
+	{
+		pending.error = new CancellationException("Action " + pending.action + " was cancelled");
+		this.completions.add(pending);
+		this.inFlight.release();
+	}
+
+	/**
+	 * Mark the actions which have finished off-thread as complete, must be called on the tick thread before
+	 * the action processors run
+	 *
+	 * @return number of actions completed
+	 */
+	public int processCompletions()
+	{
+		int count = 0;
+
+		if (this.enabled)
+		{
+			this.dispatchDeferred();
+		}
+		else
+		{
+			for (PendingAction pending = this.deferred.poll(); pending != null; pending = this.deferred.poll())
+			{
+				pending.execute();
+				this.complete(pending);
+				count++;
+			}
+		}
+
+		for (PendingAction pending = this.completions.poll(); pending != null; pending = this.completions.poll())
+		{
+			this.complete(pending);
+			count++;
+		}
+
+		return count;
+	}
+
+	private void complete(PendingAction pending)
+	{
+		if (pending.error != null) this.failed.incrementAndGet();
+		pending.complete = true;
+	}
+
+	/**
+	 * Get the number of actions currently queued or running off-thread
+	 */
+	public int getInFlight()
+	{
+		return this.maxInFlight - this.inFlight.availablePermits();
+	}
+
+	/**
+	 * Get the number of thread-safe actions waiting for a worker because the in-flight limit was reached
+	 */
+	public int getDeferred()
+	{
+		return this.deferred.size();
+	}
+
+	/**
+	 * Get the total number of actions submitted
+	 */
+	public long getSubmittedCount()
+	{
+		return this.submitted.get();
+	}
+
+	/**
+	 * Get the number of submitted actions which were run off-thread
+	 */
+	public long getOffThreadCount()
+	{
+		return this.offThread.get();
+	}
+
+	/**
+	 * Get the number of submitted actions which had to wait for an in-flight permit
+	 */
+	public long getDeferredCount()
+	{
+		return this.deferrals.get();
+	}
+
+	/**
+	 * Get the number of completed actions which threw an exception
+	 */
+	public long getFailedCount()
+	{
+		return this.failed.get();
+	}
+
+	/**
+	 * Stop the workers. Actions which have not started, including deferred actions, are not run and complete
+	 * with a {@link CancellationException} the next time completions are processed
+	 */
+	public synchronized void shutdown()
+	{
+		ExecutorService executor = this.executor;
+		this.executor = null;
+
+		if (executor != null)
+		{
+			for (Runnable task : executor.shutdownNow())
+			{
+				if (task instanceof OffThreadTask) this.cancel(((OffThreadTask)task).pending);
+			}
+		}
+
+		for (PendingAction pending = this.deferred.poll(); pending != null; pending = this.deferred.poll())
+		{
+			pending.error = new CancellationException("Action " + pending.action + " was cancelled");
+			this.completions.add(pending);
+		}
+	}
+
+	private ExecutorService getExecutor()
+	{
+		ExecutorService executor = this.executor;
+
+		if (executor == null)
+		{
+			synchronized (this)
+			{
+				if (this.executor == null) this.executor = this.createExecutor();
+				executor = this.executor;
+			}
+		}
+
+		return executor;
+	}
+
+	private ExecutorService createExecutor()
+	{
+		try
+		{
+			// Virtual threads are only available on recent JVMs, the in-flight limit bounds the executor
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (Exception ex) {}
+
+		return Executors.newFixedThreadPool(this.threads, new ThreadFactory()
+		{
+			private int threadNumber = 0;
+
+			@Override
+			public synchronized Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "Macros action worker #" + (++this.threadNumber));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}
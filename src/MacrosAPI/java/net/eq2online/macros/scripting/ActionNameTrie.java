@@ -0,0 +1,153 @@
+package net.eq2online.macros.scripting;
+
+/**
+ * Case-insensitive prefix tree of script action names, used by the script core to locate action names
+ * in script text when highlighting. Adding a name costs O(length of name) and scanning a string visits
+ * each character at most once per character in the longest registered action name. Names may be added
+ * from a loader thread while the GUI is highlighting, so adding and highlighting are synchronised.
+ *
+ * @author Adam Mummery-Smith
+ */
+final class ActionNameTrie
+{
+	/**
+	 * Node in the tree, children are stored in a pair of small parallel arrays since the fan-out of any
+	 * node is generally tiny and a map would cost far more than a linear probe
+	 */
+	private static final class Node
+	{
+		/**
+		 * Lower-case characters of the child nodes
+		 */
+		char[] keys = new char[0];
+
+		/**
+		 * Child nodes, parallel to keys
+		 */
+		Node[] children = new Node[0];
+
+		/**
+		 * True if a registered name ends at this node
+		 */
+		boolean terminal;
+
+		Node get(char key)
+		{
+			for (int index = 0; index < this.keys.length; index++)
+			{
+				if (this.keys[index] == key) return this.children[index];
+			}
+
+			return null;
+		}
+
+		Node getOrAdd(char key)
+		{
+			Node child = this.get(key);
+
+			if (child == null)
+			{
+				int size = this.keys.length;
+				char[] keys = new char[size + 1];
+				Node[] children = new Node[size + 1];
+				System.arraycopy(this.keys, 0, keys, 0, size);
+				System.arraycopy(this.children, 0, children, 0, size);
+				keys[size] = key;
+				children[size] = child = new Node();
+				this.keys = keys;
+				this.children = children;
+			}
+
+			return child;
+		}
+	}
+
+	/**
+	 * Root node, represents the empty string
+	 */
+	private final Node root = new Node();
+
+	/**
+	 * Add a name to the tree
+	 *
+	 * @param name
+	 */
+	synchronized void add(String name)
+	{
+		if (name == null || name.length() == 0) return;
+
+		Node node = this.root;
+		for (int charPos = 0; charPos < name.length(); charPos++)
+		{
+			node = node.getOrAdd(Character.toLowerCase(name.charAt(charPos)));
+		}
+
+		node.terminal = true;
+	}
+
+	/**
+	 * Get the length of the longest registered name which appears in the text at the specified offset and
+	 * which is immediately followed by an opening bracket, a semicolon or the end of the text
+	 *
+	 * @param text
+	 * @param offset
+	 * @return length of the matched name or 0 if no name matches at this offset
+	 */
+	int matchAt(CharSequence text, int offset)
+	{
+		int length = text.length();
+		int matchLength = 0;
+		Node node = this.root;
+
+		for (int charPos = offset; charPos < length; charPos++)
+		{
+			node = node.get(Character.toLowerCase(text.charAt(charPos)));
+			if (node == null) break;
+
+			if (node.terminal && ActionNameTrie.isTerminator(text, charPos + 1))
+			{
+				matchLength = charPos + 1 - offset;
+			}
+		}
+
+		return matchLength;
+	}
+
+	/**
+	 * Wrap each recognised action name in the text with the specified prefix and suffix
+	 *
+	 * @param text
+	 * @param prefix
+	 * @param suffix
+	 * @return
+	 */
+	synchronized String highlight(String text, String prefix, String suffix)
+	{
+		StringBuilder highlighted = null;
+		int length = text.length();
+		int copiedTo = 0;
+
+		for (int charPos = 0; charPos < length; charPos++)
+		{
+			int matchLength = this.matchAt(text, charPos);
+
+			if (matchLength > 0)
+			{
+				if (highlighted == null) highlighted = new StringBuilder(length + 16);
+				highlighted.append(text, copiedTo, charPos).append(prefix).append(text, charPos, charPos + matchLength).append(suffix);
+				charPos += matchLength - 1;
+				copiedTo = charPos + 1;
+			}
+		}
+
+		if (highlighted == null) return text;
+		return highlighted.append(text, copiedTo, length).toString();
+	}
+
+	private static boolean isTerminator(CharSequence text, int charPos)
+	{
+		if (charPos >= text.length()) return true;
+		char nextChar = text.charAt(charPos);
+		return nextChar == '(' || nextChar == ';';
+	}
+}
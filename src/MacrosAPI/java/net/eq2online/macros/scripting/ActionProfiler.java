@@ -0,0 +1,451 @@
+package net.eq2online.macros.scripting;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.eq2online.console.Log;
+import net.eq2online.macros.scripting.api.IMacro;
+import net.eq2online.macros.scripting.api.IMacroAction;
+import net.eq2online.macros.scripting.api.IReturnValue;
+import net.eq2online.macros.scripting.api.IScriptAction;
+import net.eq2online.macros.scripting.api.IScriptActionProvider;
+
+/**
+ * Opt-in profiler for script actions. The action processor invokes actions through this class instead of
+ * directly, when profiling is disabled each call is passed straight through after a single volatile read.
+ * When enabled, invocation count, cumulative and maximum time and an estimate of the bytes allocated by the
+ * calling thread are recorded per action and operation. Allocation is only measured where the JVM
+ * supports per-thread allocation counters.
+ *
+ * Statistics for registered actions are kept in a flat array indexed by the action's ordinal in the core's
+ * action table, callers which have already resolved the ordinal pass it in so recording a call is an array
+ * read. Actions without an ordinal are recorded by {@link IScriptAction#getName()}.
+ *
+ * @author Adam Mummery-Smith
+ */
+public final class ActionProfiler
+{
+	/**
+	 * Profiled operations
+	 */
+	public enum Operation
+	{
+		EXECUTE,
+		CONDITIONAL,
+		STACK_PUSH,
+		STACK_POP,
+		TICK
+	}
+
+	/**
+	 * Snapshot of the statistics for one action and operation
+	 */
+	public static final class Entry
+	{
+		public final String actionName;
+
+		public final Operation operation;
+
+		public final long invocations;
+
+		public final long totalNanos;
+
+		public final long maxNanos;
+
+		public final long allocatedBytes;
+
+		Entry(String actionName, Operation operation, long invocations, long totalNanos, long maxNanos, long allocatedBytes)
+		{
+			this.actionName     = actionName;
+			this.operation      = operation;
+			this.invocations    = invocations;
+			this.totalNanos     = totalNanos;
+			this.maxNanos       = maxNanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%s.%s: %d call(s), %.3fms total, %.3fms max, %d bytes", this.actionName, this.operation, this.invocations, this.totalNanos / 1000000.0, this.maxNanos / 1000000.0, this.allocatedBytes);
+		}
+	}
+
+	/**
+	 * Accumulated statistics for one action, indexed by operation
+	 */
+	private static final class Stats
+	{
+		final String actionName;
+
+		final long[] invocations = new long[Operation.values().length];
+
+		final long[] totalNanos = new long[Operation.values().length];
+
+		final long[] maxNanos = new long[Operation.values().length];
+
+		final long[] allocatedBytes = new long[Operation.values().length];
+
+		Stats(String actionName)
+		{
+			this.actionName = actionName;
+		}
+
+		synchronized void record(int operation, long nanos, long bytes)
+		{
+			this.invocations[operation]++;
+			this.totalNanos[operation] += nanos;
+			if (nanos > this.maxNanos[operation]) this.maxNanos[operation] = nanos;
+			this.allocatedBytes[operation] += bytes;
+		}
+	}
+
+	private static final Comparator<Entry> BY_TOTAL_TIME = new Comparator<Entry>()
+	{
+		@Override
+		public int compare(Entry o1, Entry o2)
+		{
+			return o1.totalNanos < o2.totalNanos ? 1 : o1.totalNanos > o2.totalNanos ? -1 : 0;
+		}
+	};
+
+	/**
+	 * Core whose action table ordinals index the statistics, null if ordinals are not resolved
+	 */
+	private final ScriptCore core;
+
+	/**
+	 * Statistics for registered actions, indexed by ordinal. Grown and replaced while holding the lock
+	 */
+	private volatile Stats[] stats = new Stats[0];
+
+	/**
+	 * Statistics for actions without an ordinal, keyed by action name
+	 */
+	private final ConcurrentHashMap<String, Stats> unregistered = new ConcurrentHashMap<String, Stats>();
+
+	/**
+	 * Thread bean used for allocation counters, null if per-thread allocation is not supported
+	 */
+	private final com.sun.management.ThreadMXBean allocationBean;
+
+	private volatile boolean enabled;
+
+	public ActionProfiler()
+	{
+		this(null);
+	}
+
+	ActionProfiler(ScriptCore core)
+	{
+		this.core = core;
+
+		com.sun.management.ThreadMXBean allocationBean = null;
+
+		try
+		{
+			ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+			if (threadBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)threadBean).isThreadAllocatedMemorySupported())
+			{
+				allocationBean = (com.sun.management.ThreadMXBean)threadBean;
+			}
+		}
+		catch (Throwable th) {}
+
+		this.allocationBean = allocationBean;
+	}
+
+	public boolean isEnabled()
+	{
+		return this.enabled;
+	}
+
+	public void setEnabled(boolean enabled)
+	{
+		if (enabled && this.allocationBean != null && !this.allocationBean.isThreadAllocatedMemoryEnabled())
+		{
+			this.allocationBean.setThreadAllocatedMemoryEnabled(true);
+		}
+
+		this.enabled = enabled;
+	}
+
+	/**
+	 * True if allocation estimates are available on this JVM
+	 */
+	public boolean isAllocationTracked()
+	{
+		return this.allocationBean != null;
+	}
+
+	/**
+	 * Discard all recorded statistics
+	 */
+	public synchronized void reset()
+	{
+		this.stats = new Stats[0];
+		this.unregistered.clear();
+	}
+
+	public IReturnValue execute(IScriptAction action, IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+	{
+		if (!this.enabled) return action.execute(provider, macro, instance, rawParams, params);
+		return this.execute(this.getOrdinal(action), action, provider, macro, instance, rawParams, params);
+	}
+
+	/**
+	 * @param ordinal ordinal of the action in the core's action table, or ActionTable.NO_ORDINAL
+	 */
+	public IReturnValue execute(int ordinal, IScriptAction action, IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+	{
+		if (!this.enabled) return action.execute(provider, macro, instance, rawParams, params);
+
+		long allocated = this.getAllocatedBytes();
+		long start = System.nanoTime();
+
+		try
+		{
+			return action.execute(provider, macro, instance, rawParams, params);
+		}
+		finally
+		{
+			this.record(ordinal, action, Operation.EXECUTE, start, allocated);
+		}
+	}
+
+	public boolean executeConditional(IScriptAction action, IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+	{
+		if (!this.enabled) return action.executeConditional(provider, macro, instance, rawParams, params);
+		return this.executeConditional(this.getOrdinal(action), action, provider, macro, instance, rawParams, params);
+	}
+
+	/**
+	 * @param ordinal ordinal of the action in the core's action table, or ActionTable.NO_ORDINAL
+	 */
+	public boolean executeConditional(int ordinal, IScriptAction action, IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+	{
+		if (!this.enabled) return action.executeConditional(provider, macro, instance, rawParams, params);
+
+		long allocated = this.getAllocatedBytes();
+		long start = System.nanoTime();
+
+		try
+		{
+			return action.executeConditional(provider, macro, instance, rawParams, params);
+		}
+		finally
+		{
+			this.record(ordinal, action, Operation.CONDITIONAL, start, allocated);
+		}
+	}
+
+	public boolean executeStackPush(IScriptAction action, IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+	{
+		if (!this.enabled) return action.executeStackPush(provider, macro, instance, rawParams, params);
+		return this.executeStackPush(this.getOrdinal(action), action, provider, macro, instance, rawParams, params);
+	}
+
+	/**
+	 * @param ordinal ordinal of the action in the core's action table, or ActionTable.NO_ORDINAL
+	 */
+	public boolean executeStackPush(int ordinal, IScriptAction action, IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params)
+	{
+		if (!this.enabled) return action.executeStackPush(provider, macro, instance, rawParams, params);
+
+		long allocated = this.getAllocatedBytes();
+		long start = System.nanoTime();
+
+		try
+		{
+			return action.executeStackPush(provider, macro, instance, rawParams, params);
+		}
+		finally
+		{
+			this.record(ordinal, action, Operation.STACK_PUSH, start, allocated);
+		}
+	}
+
+	public boolean executeStackPop(IScriptAction action, IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params, IMacroAction popAction)
+	{
+		if (!this.enabled) return action.executeStackPop(provider, macro, instance, rawParams, params, popAction);
+		return this.executeStackPop(this.getOrdinal(action), action, provider, macro, instance, rawParams, params, popAction);
+	}
+
+	/**
+	 * @param ordinal ordinal of the action in the core's action table, or ActionTable.NO_ORDINAL
+	 */
+	public boolean executeStackPop(int ordinal, IScriptAction action, IScriptActionProvider provider, IMacro macro, IMacroAction instance, String rawParams, String[] params, IMacroAction popAction)
+	{
+		if (!this.enabled) return action.executeStackPop(provider, macro, instance, rawParams, params, popAction);
+
+		long allocated = this.getAllocatedBytes();
+		long start = System.nanoTime();
+
+		try
+		{
+			return action.executeStackPop(provider, macro, instance, rawParams, params, popAction);
+		}
+		finally
+		{
+			this.record(ordinal, action, Operation.STACK_POP, start, allocated);
+		}
+	}
+
+	public int onTick(IScriptAction action, IScriptActionProvider provider)
+	{
+		if (!this.enabled) return action.onTick(provider);
+		return this.onTick(this.getOrdinal(action), action, provider);
+	}
+
+	/**
+	 * @param ordinal ordinal of the action in the core's action table, or ActionTable.NO_ORDINAL
+	 */
+	public int onTick(int ordinal, IScriptAction action, IScriptActionProvider provider)
+	{
+		if (!this.enabled) return action.onTick(provider);
+
+		long allocated = this.getAllocatedBytes();
+		long start = System.nanoTime();
+
+		try
+		{
+			return action.onTick(provider);
+		}
+		finally
+		{
+			this.record(ordinal, action, Operation.TICK, start, allocated);
+		}
+	}
+
+	private long getAllocatedBytes()
+	{
+		return this.allocationBean != null ? this.allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0L;
+	}
+
+	private int getOrdinal(IScriptAction action)
+	{
+		return this.core != null ? this.core.getActionOrdinal(action.getName()) : ActionTable.NO_ORDINAL;
+	}
+
+	private void record(int ordinal, IScriptAction action, Operation operation, long start, long allocated)
+	{
+		long nanos = System.nanoTime() - start;
+		long bytes = Math.max(0L, this.getAllocatedBytes() - allocated);
+
+		Stats[] stats = this.stats;
+		Stats actionStats = ordinal > ActionTable.NO_ORDINAL && ordinal < stats.length ? stats[ordinal] : null;
+		if (actionStats == null) actionStats = this.getStats(ordinal, action);
+
+		actionStats.record(operation.ordinal(), nanos, bytes);
+	}
+
+	/**
+	 * Slow path for the first call recorded for an action
+	 */
+	private synchronized Stats getStats(int ordinal, IScriptAction action)
+	{
+		if (ordinal == ActionTable.NO_ORDINAL)
+		{
+			Stats stats = this.unregistered.get(action.getName());
+			if (stats == null)
+			{
+				stats = new Stats(action.getName());
+				this.unregistered.put(stats.actionName, stats);
+			}
+
+			return stats;
+		}
+
+		Stats[] stats = this.stats;
+		if (ordinal >= stats.length)
+		{
+			Stats[] grown = new Stats[ordinal + 1];
+			System.arraycopy(stats, 0, grown, 0, stats.length);
+			stats = grown;
+		}
+
+		if (stats[ordinal] == null)
+		{
+			stats[ordinal] = new Stats(action.getName());
+			this.stats = stats;
+		}
+
+		return stats[ordinal];
+	}
+
+	/**
+	 * Get a snapshot of the statistics recorded so far, sorted by cumulative time with the most expensive first
+	 */
+	public List<Entry> getSnapshot()
+	{
+		List<Entry> snapshot = new ArrayList<Entry>();
+
+		for (Stats stats : this.stats)
+		{
+			if (stats != null) ActionProfiler.addEntries(snapshot, stats);
+		}
+
+		for (Stats stats : this.unregistered.values())
+		{
+			ActionProfiler.addEntries(snapshot, stats);
+		}
+
+		Collections.sort(snapshot, ActionProfiler.BY_TOTAL_TIME);
+		return Collections.unmodifiableList(snapshot);
+	}
+
+	private static void addEntries(List<Entry> snapshot, Stats stats)
+	{
+		synchronized (stats)
+		{
+			for (Operation operation : Operation.values())
+			{
+				int index = operation.ordinal();
+				if (stats.invocations[index] == 0) continue;
+				snapshot.add(new Entry(stats.actionName, operation, stats.invocations[index], stats.totalNanos[index], stats.maxNanos[index], stats.allocatedBytes[index]));
+			}
+		}
+	}
+
+	/**
+	 * Write a snapshot of the statistics to the specified file as tab-separated values
+	 *
+	 * @param file
+	 * @return true if the file was written
+	 */
+	public boolean dump(File file)
+	{
+		PrintWriter writer = null;
+
+		try
+		{
+			writer = new PrintWriter(new FileWriter(file));
+			writer.println("action\toperation\tinvocations\ttotalNanos\tmaxNanos\tmeanNanos\tallocatedBytes");
+
+			for (Entry entry : this.getSnapshot())
+			{
+				writer.printf("%s\t%s\t%d\t%d\t%d\t%d\t%s%n", entry.actionName, entry.operation, entry.invocations, entry.totalNanos, entry.maxNanos, entry.totalNanos / entry.invocations, this.allocationBean != null ? String.valueOf(entry.allocatedBytes) : "n/a");
+			}
+
+			return !writer.checkError();
+		}
+		catch (IOException ex)
+		{
+			Log.info("Error writing action profile to {0}: {1}", file.getName(), ex.getMessage());
+			return false;
+		}
+		finally
+		{
+			if (writer != null) writer.close();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package net.eq2online.macros.scripting;
+
+import net.eq2online.macros.scripting.api.IScriptAction;
+
+/**
+ * Immutable dispatch table of the actions registered with a script core. Each action is assigned an ordinal
+ * when it is registered, which is its index in the table and never changes, so parsers can resolve an action
+ * name to an ordinal once and the engine can then dispatch and read per-action metadata with plain array
+ * lookups. Metadata is captured from the action when it is registered. Registering an action creates a new
+ * table, tables which have been handed out are never modified.
+ *
+ * @author Adam Mummery-Smith
+ */
+public final class ActionTable
+{
+	/**
+	 * Returned by lookups for actions which are not registered
+	 */
+	public static final int NO_ORDINAL = -1;
+
+	static final ActionTable EMPTY = new ActionTable(new IScriptAction[0], new String[0], new boolean[0], new boolean[0], new boolean[0], new String[0]);
+
+	private final IScriptAction[] actions;
+
+	private final String[] names;
+
+	private final boolean[] threadSafe;
+
+	private final boolean[] clocked;
+
+	private final boolean[] permissable;
+
+	private final String[] permissionGroups;
+
+	private ActionTable(IScriptAction[] actions, String[] names, boolean[] threadSafe, boolean[] clocked, boolean[] permissable, String[] permissionGroups)
+	{
+		this.actions          = actions;
+		this.names            = names;
+		this.threadSafe       = threadSafe;
+		this.clocked          = clocked;
+		this.permissable      = permissable;
+		this.permissionGroups = permissionGroups;
+	}
+
+	/**
+	 * Create a new table containing the actions in this table followed by the specified action, whose ordinal
+	 * is therefore the size of this table
+	 *
+	 * @param action
+	 * @return
+	 */
+	ActionTable append(IScriptAction action)
+	{
+		int ordinal = this.actions.length;
+		int size = ordinal + 1;
+
+		IScriptAction[] actions = new IScriptAction[size];
+		String[] names = new String[size];
+		boolean[] threadSafe = new boolean[size];
+		boolean[] clocked = new boolean[size];
+		boolean[] permissable = new boolean[size];
+		String[] permissionGroups = new String[size];
+
+		System.arraycopy(this.actions, 0, actions, 0, ordinal);
+		System.arraycopy(this.names, 0, names, 0, ordinal);
+		System.arraycopy(this.threadSafe, 0, threadSafe, 0, ordinal);
+		System.arraycopy(this.clocked, 0, clocked, 0, ordinal);
+		System.arraycopy(this.permissable, 0, permissable, 0, ordinal);
+		System.arraycopy(this.permissionGroups, 0, permissionGroups, 0, ordinal);
+
+		actions[ordinal]          = action;
+		names[ordinal]            = action.toString();
+		threadSafe[ordinal]       = action.isThreadSafe();
+		clocked[ordinal]          = action.isClocked();
+		permissable[ordinal]      = action.isPermissable();
+		permissionGroups[ordinal] = permissable[ordinal] ? action.getPermissionGroup() : null;
+
+		return new ActionTable(actions, names, threadSafe, clocked, permissable, permissionGroups);
+	}
+
+	/**
+	 * Get the number of actions in the table, ordinals are 0 to size() - 1
+	 */
+	public int size()
+	{
+		return this.actions.length;
+	}
+
+	/**
+	 * Get the action with the specified ordinal
+	 *
+	 * @param ordinal
+	 * @return
+	 */
+	public IScriptAction get(int ordinal)
+	{
+		return this.actions[ordinal];
+	}
+
+	/**
+	 * Get the ordinal of the specified action by identity, or NO_ORDINAL if the action is not in the table
+	 *
+	 * @param action
+	 * @return
+	 */
+	public int indexOf(IScriptAction action)
+	{
+		for (int ordinal = 0; ordinal < this.actions.length; ordinal++)
+		{
+			if (this.actions[ordinal] == action) return ordinal;
+		}
+
+		return ActionTable.NO_ORDINAL;
+	}
+
+	/**
+	 * Get the registered name of the action with the specified ordinal
+	 */
+	public String getName(int ordinal)
+	{
+		return this.names[ordinal];
+	}
+
+	public boolean isThreadSafe(int ordinal)
+	{
+		return this.threadSafe[ordinal];
+	}
+
+	public boolean isClocked(int ordinal)
+	{
+		return this.clocked[ordinal];
+	}
+
+	public boolean isPermissable(int ordinal)
+	{
+		return this.permissable[ordinal];
+	}
+
+	/**
+	 * Get the permission group of the action with the specified ordinal, null if the action is not permissable
+	 */
+	public String getPermissionGroup(int ordinal)
+	{
+		return this.permissionGroups[ordinal];
+	}
+}
@@ -0,0 +1,20 @@
+package net.eq2online.macros.scripting;
+
+import net.minecraft.client.gui.FontRenderer;
+
+/**
+ * Documentation entry which can be rendered by the game client's text editor
+ * 
+ * @author Adam Mummery-Smith
+ */
+public interface IClientDocumentationEntry extends IDocumentationEntry
+{
+	/**
+	 * Callback for use by the text editor, renders this entry as a pop up
+	 * 
+	 * @param fontRenderer
+	 * @param xPosition
+	 * @param yPosition
+	 */
+	public abstract void drawAt(FontRenderer fontRenderer, int xPosition, int yPosition);
+}
@@ -1,9 +1,8 @@
 package net.eq2online.macros.scripting;
 
-import net.minecraft.client.gui.FontRenderer;
-
 /**
- * Interface for script action documentation entries
+ * Interface for script action documentation entries, entries which can be drawn by the text editor implement
+ * {@link IClientDocumentationEntry}
  * 
  * @author Adam Mummery-Smith
  */
@@ -33,13 +32,4 @@ public interface IDocumentationEntry
 	 * Gets a description of what the action returns
 	 */
 	public abstract String getReturnType();
-
-	/**
-	 * Callback for use by the text editor, renders this entry as a pop up
-	 * 
-	 * @param fontRenderer
-	 * @param xPosition
-	 * @param yPosition
-	 */
-	public abstract void drawAt(FontRenderer fontRenderer, int xPosition, int yPosition);
 }
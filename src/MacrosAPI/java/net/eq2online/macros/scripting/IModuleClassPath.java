@@ -0,0 +1,24 @@
+package net.eq2online.macros.scripting;
+
+import java.io.File;
+
+/**
+ * Class path which script modules are added to and loaded from
+ *
+ * @author Adam Mummery-Smith
+ */
+public interface IModuleClassPath
+{
+	/**
+	 * Add a module file to the class path
+	 *
+	 * @param moduleFile
+	 * @throws Exception if the file cannot be added
+	 */
+	public abstract void addModule(File moduleFile) throws Exception;
+
+	/**
+	 * Get the class loader which loads classes from the module files
+	 */
+	public abstract ClassLoader getClassLoader();
+}
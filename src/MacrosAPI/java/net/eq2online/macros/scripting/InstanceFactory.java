@@ -0,0 +1,123 @@
+package net.eq2online.macros.scripting;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates instances of a class using a method handle for one of its constructors. The handle is resolved
+ * once per class and constructor signature and then shared, and is adapted to a fixed arity so that each
+ * call is a direct invocation rather than a reflective call with a boxed argument array.
+ *
+ * @author Adam Mummery-Smith
+ */
+final class InstanceFactory<T>
+{
+	/**
+	 * Factories resolved so far, keyed by the type of the constructor they invoke
+	 */
+	private static final Map<MethodType, InstanceFactory<?>> factories = new ConcurrentHashMap<MethodType, InstanceFactory<?>>();
+
+	private final Class<T> type;
+
+	/**
+	 * Constructor handle adapted to take and return Object
+	 */
+	private final MethodHandle constructor;
+
+	private InstanceFactory(Class<T> type, MethodHandle constructor)
+	{
+		this.type = type;
+		this.constructor = constructor.asType(constructor.type().generic());
+	}
+
+	/**
+	 * Get the class this factory creates instances of
+	 */
+	public Class<T> getType()
+	{
+		return this.type;
+	}
+
+	/**
+	 * Create a new instance using a no-arg constructor
+	 */
+	@SuppressWarnings("unchecked")
+	public T newInstance() throws Exception
+	{
+		try
+		{
+			return (T)this.constructor.invokeExact();
+		}
+		catch (Throwable th)
+		{
+			throw InstanceFactory.rethrow(th);
+		}
+	}
+
+	/**
+	 * Create a new instance using a single-arg constructor
+	 */
+	@SuppressWarnings("unchecked")
+	public T newInstance(Object arg) throws Exception
+	{
+		try
+		{
+			return (T)this.constructor.invokeExact(arg);
+		}
+		catch (Throwable th)
+		{
+			throw InstanceFactory.rethrow(th);
+		}
+	}
+
+	/**
+	 * Create a new instance using a three-arg constructor
+	 */
+	@SuppressWarnings("unchecked")
+	public T newInstance(Object arg0, Object arg1, Object arg2) throws Exception
+	{
+		try
+		{
+			return (T)this.constructor.invokeExact(arg0, arg1, arg2);
+		}
+		catch (Throwable th)
+		{
+			throw InstanceFactory.rethrow(th);
+		}
+	}
+
+	private static Exception rethrow(Throwable th)
+	{
+		if (th instanceof Error) throw (Error)th;
+		if (th instanceof Exception) return (Exception)th;
+		return new RuntimeException(th);
+	}
+
+	/**
+	 * Get the factory for the declared constructor of the specified class with the specified parameter types
+	 *
+	 * @param type
+	 * @param parameterTypes
+	 * @return
+	 * @throws NoSuchMethodException if the class does not declare a matching constructor
+	 * @throws IllegalAccessException if the constructor is not accessible
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> InstanceFactory<T> forClass(Class<T> type, Class<?>... parameterTypes) throws NoSuchMethodException, IllegalAccessException
+	{
+		MethodType key = MethodType.methodType(type, parameterTypes);
+		InstanceFactory<T> factory = (InstanceFactory<T>)InstanceFactory.factories.get(key);
+
+		if (factory == null)
+		{
+			MethodHandle constructor = MethodHandles.lookup().unreflectConstructor(type.getDeclaredConstructor(parameterTypes));
+			factory = new InstanceFactory<T>(type, constructor);
+			InstanceFactory.factories.put(key, factory);
+		}
+
+		return factory;
+	}
+}
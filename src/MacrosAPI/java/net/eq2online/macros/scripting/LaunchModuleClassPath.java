@@ -0,0 +1,28 @@
+package net.eq2online.macros.scripting;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+
+/**
+ * Module class path backed by the launch class loader which loaded the scripting core. The loader's public
+ * addURL method is called reflectively so that the launch wrapper is not needed to compile or load this class
+ *
+ * @author Adam Mummery-Smith
+ */
+final class LaunchModuleClassPath implements IModuleClassPath
+{
+	@Override
+	public void addModule(File moduleFile) throws Exception
+	{
+		ClassLoader classLoader = this.getClassLoader();
+		Method addURL = classLoader.getClass().getMethod("addURL", URL.class);
+		addURL.invoke(classLoader, moduleFile.toURI().toURL());
+	}
+
+	@Override
+	public ClassLoader getClassLoader()
+	{
+		return ScriptCore.class.getClassLoader();
+	}
+}
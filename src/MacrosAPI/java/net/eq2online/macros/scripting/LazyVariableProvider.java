@@ -0,0 +1,294 @@
+package net.eq2online.macros.scripting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.eq2online.macros.scripting.api.IVariableProvider;
+import net.eq2online.macros.scripting.api.IVariableSupplier;
+
+/**
+ * Variable provider whose variables are computed on demand. Each variable is registered with a supplier and a
+ * time to live in ticks, the supplier is called the first time the variable is read after its value has
+ * expired or been invalidated and the value is memoized until then, so variables which no script reads are
+ * never computed. updateVariables() only advances the tick count.
+ *
+ * A variable can depend on variables registered before it. Reading the variable first brings its
+ * dependencies up to date and the variable is recomputed if any of their values changed since it was last
+ * computed, regardless of its own time to live.
+ *
+ * Providers can register their variables in their constructor or in onInit().
+ *
+ * @author Adam Mummery-Smith
+ */
+public class LazyVariableProvider implements IVariableProvider
+{
+	/**
+	 * Time to live for variables which are computed at most once per tick
+	 */
+	public static final int TTL_TICK = 1;
+
+	/**
+	 * Time to live for variables which are only recomputed when they are invalidated
+	 */
+	public static final int TTL_UNTIL_INVALIDATED = 0;
+
+	/**
+	 * Tick on which a variable which has not been computed, or has been invalidated, was computed
+	 */
+	private static final long NEVER = Long.MIN_VALUE;
+
+	/**
+	 * A registered variable
+	 */
+	static final class LazyVariable
+	{
+		final String name;
+
+		final IVariableSupplier supplier;
+
+		final int ttl;
+
+		final LazyVariable[] dependencies;
+
+		/**
+		 * Version of each dependency when this variable was last computed
+		 */
+		final long[] dependencyVersions;
+
+		Object value;
+
+		boolean hasValue;
+
+		long computedTick = LazyVariableProvider.NEVER;
+
+		/**
+		 * Incremented whenever a recomputation changes the value
+		 */
+		long version;
+
+		LazyVariable(String name, IVariableSupplier supplier, int ttl, LazyVariable[] dependencies)
+		{
+			this.name               = name;
+			this.supplier           = supplier;
+			this.ttl                = ttl;
+			this.dependencies       = dependencies;
+			this.dependencyVersions = new long[dependencies.length];
+		}
+	}
+
+	private final Map<String, LazyVariable> variables = new HashMap<String, LazyVariable>();
+
+	/**
+	 * Copy of the registered names, replaced whenever a variable is registered or unregistered so that callers
+	 * can iterate it without holding the lock
+	 */
+	private volatile Set<String> variableNames = Collections.emptySet();
+
+	private long tick;
+
+	private long reads, computations;
+
+	/**
+	 * Register a variable which is computed at most once per tick
+	 *
+	 * @param name
+	 * @param supplier
+	 */
+	public void register(String name, IVariableSupplier supplier)
+	{
+		this.register(name, supplier, LazyVariableProvider.TTL_TICK);
+	}
+
+	/**
+	 * Register a variable, replacing any variable with the same name. A variable which other variables depend
+	 * on cannot be replaced, the dependent variables must be unregistered first
+	 *
+	 * @param name
+	 * @param supplier
+	 * @param ttl number of ticks the computed value remains valid for, or TTL_UNTIL_INVALIDATED
+	 * @param dependsOn names of previously registered variables the value is computed from
+	 * @throws IllegalArgumentException if a dependency is not registered
+	 * @throws IllegalStateException if another registered variable depends on the variable being replaced
+	 */
+	public synchronized void register(String name, IVariableSupplier supplier, int ttl, String... dependsOn)
+	{
+		if (name == null || supplier == null) throw new IllegalArgumentException("Variable name and supplier must be specified");
+
+		LazyVariable[] dependencies = new LazyVariable[dependsOn.length];
+		for (int index = 0; index < dependsOn.length; index++)
+		{
+			dependencies[index] = this.variables.get(dependsOn[index]);
+			if (dependencies[index] == null) throw new IllegalArgumentException("Variable " + name + " depends on unregistered variable " + dependsOn[index]);
+		}
+
+		LazyVariable existing = this.variables.get(name);
+		if (existing != null) this.checkNotRequired(existing);
+
+		this.variables.put(name, new LazyVariable(name, supplier, Math.max(0, ttl), dependencies));
+		this.updateVariableNames();
+	}
+
+	/**
+	 * Unregister a variable
+	 *
+	 * @param name
+	 * @throws IllegalStateException if another registered variable depends on the variable, the dependent
+	 *      variables must be unregistered first
+	 */
+	public synchronized void unregister(String name)
+	{
+		LazyVariable variable = this.variables.get(name);
+		if (variable == null) return;
+
+		this.checkNotRequired(variable);
+		this.variables.remove(name);
+		this.updateVariableNames();
+	}
+
+	/**
+	 * Throws IllegalStateException if another registered variable depends on the specified variable
+	 */
+	private void checkNotRequired(LazyVariable variable)
+	{
+		for (LazyVariable other : this.variables.values())
+		{
+			for (LazyVariable dependency : other.dependencies)
+			{
+				if (dependency == variable) throw new IllegalStateException("Variable " + variable.name + " is required by variable " + other.name);
+			}
+		}
+	}
+
+	private void updateVariableNames()
+	{
+		this.variableNames = Collections.unmodifiableSet(new LinkedHashSet<String>(this.variables.keySet()));
+	}
+
+	/**
+	 * Mark the value of the specified variable as stale so that it is recomputed the next time it is read,
+	 * variables which depend on it are recomputed if its value changes
+	 *
+	 * @param name
+	 */
+	public synchronized void invalidate(String name)
+	{
+		LazyVariable variable = this.variables.get(name);
+		if (variable != null) variable.computedTick = LazyVariableProvider.NEVER;
+	}
+
+	/**
+	 * Mark the values of all variables as stale
+	 */
+	public synchronized void invalidateAll()
+	{
+		for (LazyVariable variable : this.variables.values())
+		{
+			variable.computedTick = LazyVariableProvider.NEVER;
+		}
+	}
+
+	@Override
+	public synchronized void updateVariables(boolean clock)
+	{
+		if (clock) this.tick++;
+	}
+
+	@Override
+	public synchronized Object getVariable(String variableName)
+	{
+		LazyVariable variable = this.variables.get(variableName);
+		if (variable == null) return null;
+
+		this.reads++;
+		return this.refresh(variable).value;
+	}
+
+	/**
+	 * Bring the dependencies of the variable up to date and recompute it if it is stale
+	 */
+	private LazyVariable refresh(LazyVariable variable)
+	{
+		boolean stale = variable.computedTick == LazyVariableProvider.NEVER || (variable.ttl > 0 && this.tick - variable.computedTick >= variable.ttl);
+
+		for (int index = 0; index < variable.dependencies.length; index++)
+		{
+			if (this.refresh(variable.dependencies[index]).version != variable.dependencyVersions[index]) stale = true;
+		}
+
+		if (stale)
+		{
+			Object value = variable.supplier.get();
+			this.computations++;
+
+			if (!variable.hasValue || !LazyVariableProvider.equal(value, variable.value)) variable.version++;
+
+			variable.value = value;
+			variable.hasValue = true;
+			variable.computedTick = this.tick;
+
+			for (int index = 0; index < variable.dependencies.length; index++)
+			{
+				variable.dependencyVersions[index] = variable.dependencies[index].version;
+			}
+		}
+
+		return variable;
+	}
+
+	private static boolean equal(Object value, Object other)
+	{
+		return value == other || (value != null && value.equals(other));
+	}
+
+	/**
+	 * Get the names of the registered variables, the returned set is a snapshot and does not reflect later
+	 * registrations
+	 */
+	@Override
+	public Set<String> getVariables()
+	{
+		return this.variableNames;
+	}
+
+	@Override
+	public void onInit()
+	{
+	}
+
+	/**
+	 * Get the names of the variables which currently have a valid value, that is which have been read and not
+	 * expired since
+	 */
+	public synchronized List<String> getComputedVariables()
+	{
+		List<String> computed = new ArrayList<String>();
+
+		for (LazyVariable variable : this.variables.values())
+		{
+			if (variable.computedTick != LazyVariableProvider.NEVER && (variable.ttl == 0 || this.tick - variable.computedTick < variable.ttl)) computed.add(variable.name);
+		}
+
+		return computed;
+	}
+
+	/**
+	 * Get the number of reads of registered variables
+	 */
+	public synchronized long getReadCount()
+	{
+		return this.reads;
+	}
+
+	/**
+	 * Get the number of times a supplier was called
+	 */
+	public synchronized long getComputationCount()
+	{
+		return this.computations;
+	}
+}
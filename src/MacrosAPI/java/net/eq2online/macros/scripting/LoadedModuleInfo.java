@@ -67,6 +67,16 @@ public class LoadedModuleInfo
 	 */
 	private List<String> eventProviders = new ArrayList<String>();
 
+	/**
+	 * Time taken to scan the module file for module classes, in nanoseconds
+	 */
+	private long scanTime;
+	
+	/**
+	 * Time taken to load and instantiate the module classes, in nanoseconds
+	 */
+	private long loadTime;
+
 	/**
 	 * @param module
 	 */
@@ -132,13 +142,45 @@ public class LoadedModuleInfo
 		return provider;
 	}
 
+	/**
+	 * @param scanTime time taken to scan the module file, in nanoseconds
+	 */
+	public void setScanTime(long scanTime)
+	{
+		this.scanTime = scanTime;
+	}
+	
+	/**
+	 * Get the time taken to scan the module file for module classes, in nanoseconds
+	 */
+	public long getScanTime()
+	{
+		return this.scanTime;
+	}
+	
+	/**
+	 * @param loadTime time taken to load the module classes, in nanoseconds
+	 */
+	public void setLoadTime(long loadTime)
+	{
+		this.loadTime = loadTime;
+	}
+	
+	/**
+	 * Get the time taken to load and instantiate the module classes, in nanoseconds
+	 */
+	public long getLoadTime()
+	{
+		return this.loadTime;
+	}
+
 	/**
 	 * 
 	 */
 	public void printStatus()
 	{
 		if (this.customActionCount + this.customVariableProviderCount > 0)
-			Log.info("API Loaded module {0} found {1} custom action(s) {2} new variable provider(s) {3} new iterator(s), {4} event provider(s)", this.name, this.customActionCount, this.customVariableProviderCount, this.customIteratorCount, this.customEventProviderCount);
+			Log.info("API Loaded module {0} found {1} custom action(s) {2} new variable provider(s) {3} new iterator(s), {4} event provider(s) in {5}ms (scan {6}ms)", this.name, this.customActionCount, this.customVariableProviderCount, this.customIteratorCount, this.customEventProviderCount, this.loadTime / 1000000L, this.scanTime / 1000000L);
 	}
 
 }
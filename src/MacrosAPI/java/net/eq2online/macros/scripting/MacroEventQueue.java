@@ -0,0 +1,712 @@
+package net.eq2online.macros.scripting;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.eq2online.macros.scripting.api.IMacroEvent;
+
+/**
+ * Bounded queue for batching macro events between the threads which raise them and the tick which
+ * dispatches them. Event state is held in arrays indexed by event ID so that queueing an event does not
+ * involve any lookups by name. Events can be given a coalescing policy, so that bursts of the same event
+ * collapse into a single dispatch, and the queue applies a configurable overflow policy when it is full.
+ * Each dispatched event reports how long it waited in the queue and per-event statistics are kept.
+ *
+ * Events are queued at one of four priority levels, from {@link #PRIORITY_LOW} to {@link #PRIORITY_CRITICAL},
+ * the priority passed when sending an event is clamped to this range. {@link #drainTo} dispatches one tick's
+ * worth of events, highest level first, taking no more than each level's quota from that level. An event which
+ * waits longer than its level's aging interval is promoted to the next level so that a flood of higher
+ * priority events cannot starve it indefinitely, and an event which is still queued when the deadline for the
+ * level it was sent at passes is dropped instead of being dispatched late.
+ *
+ * @author Adam Mummery-Smith
+ */
+public class MacroEventQueue
+{
+	/**
+	 * Default maximum number of events in the queue
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * Priority levels, higher levels are dispatched first
+	 */
+	public static final int PRIORITY_LOW = -1, PRIORITY_NORMAL = 0, PRIORITY_HIGH = 1, PRIORITY_CRITICAL = 2;
+
+	/**
+	 * Number of priority levels
+	 */
+	public static final int LEVELS = MacroEventQueue.PRIORITY_CRITICAL - MacroEventQueue.PRIORITY_LOW + 1;
+
+	/**
+	 * Number of buckets in the latency histograms, bucket 0 counts latencies under 1us and bucket n latencies
+	 * under 2^n us, the last bucket counts everything longer
+	 */
+	public static final int HISTOGRAM_BUCKETS = 24;
+
+	/**
+	 * What to do when an event is raised while the same event is already queued
+	 */
+	public enum Coalesce
+	{
+		/**
+		 * Queue every occurrence
+		 */
+		NONE,
+
+		/**
+		 * Replace the arguments and priority of the queued event with the new ones, the event keeps its place
+		 * in the queue, its original enqueue time and its deadline unless the new priority is higher than the
+		 * one it was sent at. In that case the event is treated as sent at the higher level at the time of the
+		 * new occurrence, so its deadline and queue latency are measured from then, and it moves to the back of
+		 * the higher level unless it has already been promoted that far
+		 */
+		LATEST_WINS
+	}
+
+	/**
+	 * What to do when an event is raised while the queue is full
+	 */
+	public enum Overflow
+	{
+		/**
+		 * Reject the new event
+		 */
+		REJECT,
+
+		/**
+		 * Drop the oldest queued event at the lowest level to make room for the new one, the new event is
+		 * rejected if all queued events have a higher priority than it
+		 */
+		DROP_OLDEST
+	}
+
+	/**
+	 * An event waiting to be, or which has been, dispatched
+	 */
+	public static final class QueuedEvent
+	{
+		public final int eventId;
+
+		public final IMacroEvent event;
+
+		int priority;
+
+		String[] args;
+
+		long enqueuedNanos;
+
+		long dispatchedNanos;
+
+		int coalesced;
+
+		/**
+		 * Level the event was sent at, or raised to by a coalesced occurrence, which determines its deadline
+		 */
+		int originLevel;
+
+		/**
+		 * Level the event is currently queued at and the time it entered that level
+		 */
+		int level;
+
+		long levelNanos;
+
+		QueuedEvent(int eventId, IMacroEvent event, int priority, String[] args, int level, long enqueuedNanos)
+		{
+			this.eventId       = eventId;
+			this.event         = event;
+			this.priority      = priority;
+			this.args          = args;
+			this.originLevel   = level;
+			this.enqueuedNanos = enqueuedNanos;
+		}
+
+		public int getPriority()
+		{
+			return this.priority;
+		}
+
+		/**
+		 * Get the priority level the event was dispatched at, which is higher than the priority it was sent at
+		 * if it was promoted while waiting
+		 */
+		public int getDispatchPriority()
+		{
+			return this.level + MacroEventQueue.PRIORITY_LOW;
+		}
+
+		public String[] getArgs()
+		{
+			return this.args;
+		}
+
+		/**
+		 * Get the number of later occurrences which were merged into this one
+		 */
+		public int getCoalescedCount()
+		{
+			return this.coalesced;
+		}
+
+		/**
+		 * Get the time the event spent in the queue, or -1 if it has not been dispatched
+		 */
+		public long getQueueLatencyNanos()
+		{
+			return this.dispatchedNanos != 0L ? this.dispatchedNanos - this.enqueuedNanos : -1L;
+		}
+	}
+
+	/**
+	 * Snapshot of the statistics for one event
+	 */
+	public static final class Stats
+	{
+		public final int eventId;
+
+		public final IMacroEvent event;
+
+		public final long enqueued;
+
+		public final long coalesced;
+
+		public final long dropped;
+
+		/**
+		 * Occurrences dropped because they were still queued when their deadline passed
+		 */
+		public final long expired;
+
+		/**
+		 * Number of times an occurrence was promoted to a higher level because it waited too long
+		 */
+		public final long promoted;
+
+		public final long dispatched;
+
+		public final long totalLatencyNanos;
+
+		public final long maxLatencyNanos;
+
+		/**
+		 * Dispatch latency histogram, see {@link MacroEventQueue#HISTOGRAM_BUCKETS}
+		 */
+		private final long[] histogram;
+
+		Stats(int eventId, IMacroEvent event, long[] counters, long[] histogram)
+		{
+			this.eventId           = eventId;
+			this.event             = event;
+			this.enqueued          = counters[MacroEventQueue.ENQUEUED];
+			this.coalesced         = counters[MacroEventQueue.COALESCED];
+			this.dropped           = counters[MacroEventQueue.DROPPED];
+			this.expired           = counters[MacroEventQueue.EXPIRED];
+			this.promoted          = counters[MacroEventQueue.PROMOTED];
+			this.dispatched        = counters[MacroEventQueue.DISPATCHED];
+			this.totalLatencyNanos = counters[MacroEventQueue.TOTAL_LATENCY];
+			this.maxLatencyNanos   = counters[MacroEventQueue.MAX_LATENCY];
+			this.histogram         = histogram.clone();
+		}
+
+		public long getMeanLatencyNanos()
+		{
+			return this.dispatched > 0 ? this.totalLatencyNanos / this.dispatched : 0L;
+		}
+
+		/**
+		 * Get the number of dispatched occurrences whose latency fell in the specified histogram bucket
+		 */
+		public long getHistogramCount(int bucket)
+		{
+			return this.histogram[bucket];
+		}
+
+		/**
+		 * Get an upper bound for the specified latency percentile, accurate to the histogram bucket, the
+		 * maximum latency is returned for percentiles which fall in the last bucket
+		 *
+		 * @param percentile percentile between 0 and 100
+		 * @return
+		 */
+		public long getLatencyPercentileNanos(double percentile)
+		{
+			if (this.dispatched == 0) return 0L;
+
+			long rank = (long)Math.ceil(this.dispatched * Math.max(0.0, Math.min(100.0, percentile)) / 100.0);
+			long seen = 0L;
+
+			for (int bucket = 0; bucket < MacroEventQueue.HISTOGRAM_BUCKETS - 1; bucket++)
+			{
+				seen += this.histogram[bucket];
+				if (seen >= rank) return Math.min(MacroEventQueue.getBucketLimitNanos(bucket), this.maxLatencyNanos);
+			}
+
+			return this.maxLatencyNanos;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%s: %d sent, %d coalesced, %d dropped, %d expired, %d promoted, %d dispatched, latency mean %.3fms p99 %.3fms max %.3fms", this.event != null ? this.event.getName() : "#" + this.eventId, this.enqueued, this.coalesced, this.dropped, this.expired, this.promoted, this.dispatched, this.getMeanLatencyNanos() / 1000000.0, this.getLatencyPercentileNanos(99.0) / 1000000.0, this.maxLatencyNanos / 1000000.0);
+		}
+	}
+
+	/**
+	 * Indices into the per-event counters
+	 */
+	static final int ENQUEUED = 0, COALESCED = 1, DROPPED = 2, EXPIRED = 3, PROMOTED = 4, DISPATCHED = 5, TOTAL_LATENCY = 6, MAX_LATENCY = 7, COUNTERS = 8;
+
+	/**
+	 * Queued events at each level, in the order they entered the level
+	 */
+	private final ArrayDeque<QueuedEvent>[] levels;
+
+	private int size;
+
+	private final int capacity;
+
+	private Overflow overflow;
+
+	/**
+	 * Maximum events dispatched from each level per tick (0 for no limit), time after which a waiting event is
+	 * promoted from each level and time after which an event sent at each level is dropped (0 for never)
+	 */
+	private final int[] quotas = new int[MacroEventQueue.LEVELS];
+
+	private final long[] agingNanos = new long[MacroEventQueue.LEVELS];
+
+	private final long[] deadlineNanos = new long[MacroEventQueue.LEVELS];
+
+	/**
+	 * Coalescing policy, forced level plus one (0 to use the priority the event is sent with), queued
+	 * occurrence (for coalesced events), event, counters and latency histogram, indexed by event ID
+	 */
+	private Coalesce[] policies = new Coalesce[0];
+
+	private int[] forcedLevels = new int[0];
+
+	private QueuedEvent[] pending = new QueuedEvent[0];
+
+	private IMacroEvent[] events = new IMacroEvent[0];
+
+	private long[][] counters = new long[0][];
+
+	private long[][] histograms = new long[0][];
+
+	public MacroEventQueue()
+	{
+		this(MacroEventQueue.DEFAULT_CAPACITY, Overflow.DROP_OLDEST);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public MacroEventQueue(int capacity, Overflow overflow)
+	{
+		this.capacity = Math.max(1, capacity);
+		this.overflow = overflow;
+
+		this.levels = new ArrayDeque[MacroEventQueue.LEVELS];
+		for (int level = 0; level < MacroEventQueue.LEVELS; level++) this.levels[level] = new ArrayDeque<QueuedEvent>();
+
+		this.setQuota(MacroEventQueue.PRIORITY_LOW, 8);
+		this.setQuota(MacroEventQueue.PRIORITY_NORMAL, 32);
+		this.setQuota(MacroEventQueue.PRIORITY_HIGH, 64);
+		this.setQuota(MacroEventQueue.PRIORITY_CRITICAL, 0);
+
+		long aging = TimeUnit.MILLISECONDS.toNanos(250);
+		this.setAging(MacroEventQueue.PRIORITY_LOW, aging);
+		this.setAging(MacroEventQueue.PRIORITY_NORMAL, aging);
+		this.setAging(MacroEventQueue.PRIORITY_HIGH, aging);
+
+		this.setDeadline(MacroEventQueue.PRIORITY_LOW, TimeUnit.SECONDS.toNanos(2));
+	}
+
+	/**
+	 * Get the level for the specified priority
+	 */
+	static int getLevel(int priority)
+	{
+		return Math.max(0, Math.min(MacroEventQueue.LEVELS - 1, priority - MacroEventQueue.PRIORITY_LOW));
+	}
+
+	public synchronized void setOverflowPolicy(Overflow overflow)
+	{
+		this.overflow = overflow;
+	}
+
+	/**
+	 * Set the maximum number of events dispatched from the specified level on each call to drainTo()
+	 *
+	 * @param priority
+	 * @param quota maximum events per tick, 0 for no limit
+	 */
+	public synchronized void setQuota(int priority, int quota)
+	{
+		this.quotas[MacroEventQueue.getLevel(priority)] = Math.max(0, quota);
+	}
+
+	/**
+	 * Set how long an event may wait at the specified level before it is promoted to the next level, has no
+	 * effect on the highest level
+	 *
+	 * @param priority
+	 * @param agingNanos time before promotion, 0 to never promote
+	 */
+	public synchronized void setAging(int priority, long agingNanos)
+	{
+		this.agingNanos[MacroEventQueue.getLevel(priority)] = Math.max(0L, agingNanos);
+	}
+
+	/**
+	 * Set how long an event sent at the specified level may wait, regardless of any promotion, before it is
+	 * dropped
+	 *
+	 * @param priority
+	 * @param deadlineNanos maximum time in the queue, 0 to never drop
+	 */
+	public synchronized void setDeadline(int priority, long deadlineNanos)
+	{
+		this.deadlineNanos[MacroEventQueue.getLevel(priority)] = Math.max(0L, deadlineNanos);
+	}
+
+	/**
+	 * Set the coalescing policy for the specified event
+	 *
+	 * @param eventId
+	 * @param policy
+	 */
+	public synchronized void setCoalescePolicy(int eventId, Coalesce policy)
+	{
+		this.ensureCapacity(eventId);
+		this.policies[eventId] = policy;
+	}
+
+	public synchronized Coalesce getCoalescePolicy(int eventId)
+	{
+		Coalesce policy = eventId < this.policies.length ? this.policies[eventId] : null;
+		return policy != null ? policy : Coalesce.NONE;
+	}
+
+	/**
+	 * Queue the specified event at a fixed priority, ignoring the priority it is sent with. Useful for raising
+	 * the priority of events such as health changes whose providers send them at normal priority
+	 *
+	 * @param eventId
+	 * @param priority
+	 */
+	public synchronized void setEventPriority(int eventId, int priority)
+	{
+		this.ensureCapacity(eventId);
+		this.forcedLevels[eventId] = MacroEventQueue.getLevel(priority) + 1;
+	}
+
+	/**
+	 * Queue the specified event at the priority it is sent with
+	 *
+	 * @param eventId
+	 */
+	public synchronized void resetEventPriority(int eventId)
+	{
+		if (eventId >= 0 && eventId < this.forcedLevels.length) this.forcedLevels[eventId] = 0;
+	}
+
+	/**
+	 * Queue an event
+	 *
+	 * @param eventId
+	 * @param event
+	 * @param priority
+	 * @param args
+	 * @return false if the event was rejected because the queue is full
+	 */
+	public synchronized boolean offer(int eventId, IMacroEvent event, int priority, String[] args)
+	{
+		this.ensureCapacity(eventId);
+		this.events[eventId] = event;
+		long[] counters = this.counters[eventId];
+		counters[MacroEventQueue.ENQUEUED]++;
+
+		int level = this.forcedLevels[eventId] > 0 ? this.forcedLevels[eventId] - 1 : MacroEventQueue.getLevel(priority);
+		long now = System.nanoTime();
+
+		QueuedEvent queued = this.pending[eventId];
+		if (queued != null)
+		{
+			queued.priority = priority;
+			queued.args = args;
+			queued.coalesced++;
+			counters[MacroEventQueue.COALESCED]++;
+
+			if (level > queued.originLevel)
+			{
+				// The event may already have been promoted to or above the new level while it waited
+				queued.originLevel = level;
+				queued.enqueuedNanos = now;
+
+				if (level > queued.level)
+				{
+					this.levels[queued.level].remove(queued);
+					this.enter(queued, level, now);
+				}
+			}
+
+			return true;
+		}
+
+		if (this.size >= this.capacity && !this.makeRoom(level))
+		{
+			counters[MacroEventQueue.DROPPED]++;
+			return false;
+		}
+
+		queued = new QueuedEvent(eventId, event, priority, args, level, now);
+		this.enter(queued, level, now);
+		this.size++;
+		if (this.policies[eventId] == Coalesce.LATEST_WINS) this.pending[eventId] = queued;
+		return true;
+	}
+
+	/**
+	 * Drop a queued event at or below the specified level according to the overflow policy
+	 *
+	 * @return true if room was made
+	 */
+	private boolean makeRoom(int level)
+	{
+		if (this.overflow != Overflow.DROP_OLDEST) return false;
+
+		for (int victimLevel = 0; victimLevel <= level; victimLevel++)
+		{
+			QueuedEvent oldest = this.levels[victimLevel].poll();
+
+			if (oldest != null)
+			{
+				this.remove(oldest, MacroEventQueue.DROPPED);
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private void enter(QueuedEvent queued, int level, long now)
+	{
+		queued.level = level;
+		queued.levelNanos = now;
+		this.levels[level].add(queued);
+	}
+
+	/**
+	 * Account for an event which has been taken off its level, either to dispatch it or to discard it
+	 */
+	private void remove(QueuedEvent queued, int counter)
+	{
+		if (this.pending[queued.eventId] == queued) this.pending[queued.eventId] = null;
+		this.size--;
+		this.counters[queued.eventId][counter]++;
+	}
+
+	private boolean isExpired(QueuedEvent queued, long now)
+	{
+		long deadline = this.deadlineNanos[queued.originLevel];
+		return deadline > 0L && now - queued.enqueuedNanos >= deadline;
+	}
+
+	/**
+	 * Drop expired events and promote events which have waited too long, starting at the lowest level so that
+	 * an event is promoted at most once per call. Only the head of each level is checked since events at each
+	 * level are in the order they entered it, expired events behind the head are dropped when they reach it
+	 */
+	private void age(long now)
+	{
+		for (int level = 0; level < MacroEventQueue.LEVELS; level++)
+		{
+			ArrayDeque<QueuedEvent> queue = this.levels[level];
+			long aging = level < MacroEventQueue.LEVELS - 1 ? this.agingNanos[level] : 0L;
+
+			for (QueuedEvent head = queue.peek(); head != null; head = queue.peek())
+			{
+				if (this.isExpired(head, now))
+				{
+					queue.poll();
+					this.remove(head, MacroEventQueue.EXPIRED);
+				}
+				else if (aging > 0L && now - head.levelNanos >= aging)
+				{
+					queue.poll();
+					this.counters[head.eventId][MacroEventQueue.PROMOTED]++;
+					this.enter(head, level + 1, now);
+				}
+				else
+				{
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove the highest priority event from the queue, ignoring the quotas
+	 *
+	 * @return the event or null if the queue is empty
+	 */
+	public synchronized QueuedEvent poll()
+	{
+		long now = System.nanoTime();
+		this.age(now);
+
+		for (int level = MacroEventQueue.LEVELS - 1; level >= 0; level--)
+		{
+			ArrayDeque<QueuedEvent> queue = this.levels[level];
+
+			for (QueuedEvent queued = queue.poll(); queued != null; queued = queue.poll())
+			{
+				if (this.isExpired(queued, now))
+				{
+					this.remove(queued, MacroEventQueue.EXPIRED);
+					continue;
+				}
+
+				this.dispatched(queued, now);
+				return queued;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Move the events to dispatch this tick into the supplied batch, highest priority first and in the order
+	 * they were queued within each level, taking no more than the quota from each level and no more than
+	 * maxEvents in total. Should be called once per tick
+	 *
+	 * @param batch
+	 * @param maxEvents
+	 * @return number of events moved
+	 */
+	public synchronized int drainTo(List<QueuedEvent> batch, int maxEvents)
+	{
+		long now = System.nanoTime();
+		this.age(now);
+		int count = 0;
+
+		for (int level = MacroEventQueue.LEVELS - 1; level >= 0 && count < maxEvents; level--)
+		{
+			ArrayDeque<QueuedEvent> queue = this.levels[level];
+			int quota = this.quotas[level] > 0 ? this.quotas[level] : Integer.MAX_VALUE;
+			int taken = 0;
+
+			while (taken < quota && count < maxEvents && !queue.isEmpty())
+			{
+				QueuedEvent queued = queue.poll();
+
+				if (this.isExpired(queued, now))
+				{
+					this.remove(queued, MacroEventQueue.EXPIRED);
+					continue;
+				}
+
+				this.dispatched(queued, now);
+				batch.add(queued);
+				taken++;
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	private void dispatched(QueuedEvent queued, long now)
+	{
+		this.remove(queued, MacroEventQueue.DISPATCHED);
+
+		queued.dispatchedNanos = now;
+		long latency = now - queued.enqueuedNanos;
+		long[] counters = this.counters[queued.eventId];
+		counters[MacroEventQueue.TOTAL_LATENCY] += latency;
+		if (latency > counters[MacroEventQueue.MAX_LATENCY]) counters[MacroEventQueue.MAX_LATENCY] = latency;
+
+		int bucket = 64 - Long.numberOfLeadingZeros(latency / 1000L);
+		this.histograms[queued.eventId][Math.min(bucket, MacroEventQueue.HISTOGRAM_BUCKETS - 1)]++;
+	}
+
+	/**
+	 * Get the upper limit of the specified latency histogram bucket
+	 */
+	public static long getBucketLimitNanos(int bucket)
+	{
+		return bucket < MacroEventQueue.HISTOGRAM_BUCKETS - 1 ? (1L << bucket) * 1000L : Long.MAX_VALUE;
+	}
+
+	public synchronized int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Get the number of events currently queued at the specified level
+	 */
+	public synchronized int size(int priority)
+	{
+		return this.levels[MacroEventQueue.getLevel(priority)].size();
+	}
+
+	public int getCapacity()
+	{
+		return this.capacity;
+	}
+
+	/**
+	 * Get a snapshot of the statistics for each event which has been queued
+	 */
+	public synchronized List<Stats> getStats()
+	{
+		List<Stats> stats = new ArrayList<Stats>();
+
+		for (int eventId = 0; eventId < this.counters.length; eventId++)
+		{
+			if (this.counters[eventId][MacroEventQueue.ENQUEUED] > 0) stats.add(new Stats(eventId, this.events[eventId], this.counters[eventId], this.histograms[eventId]));
+		}
+
+		return Collections.unmodifiableList(stats);
+	}
+
+	private void ensureCapacity(int eventId)
+	{
+		if (eventId < 0) throw new IllegalArgumentException("Invalid event ID " + eventId);
+		if (eventId < this.counters.length) return;
+
+		int size = Math.max(eventId + 1, this.counters.length * 2);
+		int oldSize = this.counters.length;
+
+		Coalesce[] policies = new Coalesce[size];
+		int[] forcedLevels = new int[size];
+		QueuedEvent[] pending = new QueuedEvent[size];
+		IMacroEvent[] events = new IMacroEvent[size];
+		long[][] counters = new long[size][];
+		long[][] histograms = new long[size][];
+
+		System.arraycopy(this.policies, 0, policies, 0, oldSize);
+		System.arraycopy(this.forcedLevels, 0, forcedLevels, 0, oldSize);
+		System.arraycopy(this.pending, 0, pending, 0, oldSize);
+		System.arraycopy(this.events, 0, events, 0, oldSize);
+		System.arraycopy(this.counters, 0, counters, 0, oldSize);
+		System.arraycopy(this.histograms, 0, histograms, 0, oldSize);
+
+		for (int index = oldSize; index < size; index++)
+		{
+			counters[index] = new long[MacroEventQueue.COUNTERS];
+			histograms[index] = new long[MacroEventQueue.HISTOGRAM_BUCKETS];
+		}
+
+		this.policies = policies;
+		this.forcedLevels = forcedLevels;
+		this.pending = pending;
+		this.events = events;
+		this.counters = counters;
+		this.histograms = histograms;
+	}
+}
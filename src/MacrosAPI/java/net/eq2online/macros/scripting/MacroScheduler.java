@@ -0,0 +1,445 @@
+package net.eq2online.macros.scripting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.eq2online.console.Log;
+import net.eq2online.macros.scripting.api.IMacro;
+import net.eq2online.macros.scripting.api.IMacroActionContext;
+import net.eq2online.macros.scripting.api.IMacroActionProcessor;
+import net.eq2online.macros.scripting.exceptions.ScriptException;
+
+/**
+ * Cooperative scheduler which runs macros on the client tick within a time budget. Each scheduled macro
+ * earns a time slice of weight x quantum every tick and is charged for the time it actually uses, so a macro
+ * which overruns its slice is skipped on later ticks until the debt is paid off, unused time is not banked.
+ * The total time spent per tick is capped by a global budget, macros which do not get to run because the
+ * budget is exhausted are deferred and run first on the next tick.
+ *
+ * Macros are only preempted at action boundaries: action processors run by the scheduler should call
+ * {@link #shouldYield} after each action and return, leaving their pointer on the next action, when it
+ * returns true. An action which itself takes longer than the slice is counted as an overrun.
+ *
+ * Scheduling methods may be called from any thread, macros are only ever run on the thread calling tick().
+ * The scheduler's lock is only held between macros, so scheduling methods called while a macro is running do
+ * not wait for the tick to finish. Ticks themselves are serialised.
+ *
+ * @author Adam Mummery-Smith
+ */
+public class MacroScheduler
+{
+	/**
+	 * Default slice per unit of weight
+	 */
+	public static final long DEFAULT_QUANTUM_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+
+	/**
+	 * Default total time to spend running macros per tick
+	 */
+	public static final long DEFAULT_TICK_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+	/**
+	 * Snapshot of the metrics for one scheduled macro
+	 */
+	public static final class Metrics
+	{
+		public final IMacro macro;
+
+		public final int weight;
+
+		/**
+		 * Ticks on which the macro was run
+		 */
+		public final long ticksRun;
+
+		/**
+		 * Ticks on which the macro was skipped, because of debt or because the tick budget was exhausted
+		 */
+		public final long ticksDeferred;
+
+		/**
+		 * Consecutive ticks the macro has currently been waiting to run
+		 */
+		public final int queueDepth;
+
+		/**
+		 * Number of runs which exceeded the time they were allotted
+		 */
+		public final long overruns;
+
+		public final long maxOverrunNanos;
+
+		public final long totalNanos;
+
+		Metrics(Task task)
+		{
+			this.macro           = task.macro;
+			this.weight          = task.weight;
+			this.ticksRun        = task.ticksRun;
+			this.ticksDeferred   = task.ticksDeferred;
+			this.queueDepth      = task.waiting;
+			this.overruns        = task.overruns;
+			this.maxOverrunNanos = task.maxOverrunNanos;
+			this.totalNanos      = task.totalNanos;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%s (weight %d): %d run(s), %d deferred, depth %d, %d overrun(s) max %.3fms, %.3fms total", this.macro.getDisplayName(), this.weight, this.ticksRun, this.ticksDeferred, this.queueDepth, this.overruns, this.maxOverrunNanos / 1000000.0, this.totalNanos / 1000000.0);
+		}
+	}
+
+	/**
+	 * A scheduled macro
+	 */
+	static final class Task
+	{
+		final IMacro macro;
+
+		final IMacroActionProcessor processor;
+
+		final IMacroActionContext context;
+
+		final int weight;
+
+		/**
+		 * Time the macro may still use, negative if the macro has overrun
+		 */
+		long credit;
+
+		boolean stop;
+
+		long ticksRun, ticksDeferred, overruns, maxOverrunNanos, totalNanos;
+
+		int waiting;
+
+		Task(IMacro macro, IMacroActionProcessor processor, IMacroActionContext context, int weight)
+		{
+			this.macro     = macro;
+			this.processor = processor;
+			this.context   = context;
+			this.weight    = weight;
+		}
+	}
+
+	/**
+	 * Scheduler currently running a macro on each thread, null outside tick()
+	 */
+	private static final ThreadLocal<MacroScheduler> running = new ThreadLocal<MacroScheduler>();
+
+	/**
+	 * Held for the whole of a tick so that only one thread ticks at a time, the scheduler's own monitor guards
+	 * the tasks and is released while a macro runs
+	 */
+	private final Object tickLock = new Object();
+
+	private final long quantumNanos;
+
+	private final long tickBudgetNanos;
+
+	private final List<Task> tasks = new ArrayList<Task>();
+
+	/**
+	 * Index of the task to offer time to first on the next tick
+	 */
+	private int cursor;
+
+	/**
+	 * Thread running the current tick and the time at which the running macro's slice ends
+	 */
+	private volatile Thread tickThread;
+
+	private volatile long sliceDeadline;
+
+	private long ticks, ticksOverBudget, lastTickNanos;
+
+	public MacroScheduler()
+	{
+		this(MacroScheduler.DEFAULT_QUANTUM_NANOS, MacroScheduler.DEFAULT_TICK_BUDGET_NANOS);
+	}
+
+	/**
+	 * @param quantumNanos slice per unit of weight
+	 * @param tickBudgetNanos total time to spend running macros per tick
+	 */
+	public MacroScheduler(long quantumNanos, long tickBudgetNanos)
+	{
+		if (quantumNanos <= 0 || tickBudgetNanos <= 0) throw new IllegalArgumentException("Quantum and budget must be positive");
+
+		this.quantumNanos = quantumNanos;
+		this.tickBudgetNanos = tickBudgetNanos;
+	}
+
+	/**
+	 * Schedule a macro, does nothing if the macro is already scheduled
+	 *
+	 * @param macro
+	 * @param processor processor which executes the macro's actions
+	 * @param context
+	 * @param weight relative share of the tick budget, at least 1
+	 * @return true if the macro was scheduled
+	 */
+	public synchronized boolean schedule(IMacro macro, IMacroActionProcessor processor, IMacroActionContext context, int weight)
+	{
+		if (this.getTask(macro) != null) return false;
+
+		this.tasks.add(new Task(macro, processor, context, Math.max(1, weight)));
+		return true;
+	}
+
+	/**
+	 * Remove a macro without running it again
+	 *
+	 * @param macro
+	 * @return true if the macro was scheduled
+	 */
+	public synchronized boolean cancel(IMacro macro)
+	{
+		Task task = this.getTask(macro);
+		if (task == null) return false;
+
+		this.remove(task);
+		return true;
+	}
+
+	private void remove(Task task)
+	{
+		int index = this.tasks.indexOf(task);
+		if (index < 0) return;
+
+		this.tasks.remove(index);
+		if (index < this.cursor) this.cursor--;
+	}
+
+	/**
+	 * Run the macro once more with the stop flag set on the next tick, regardless of its credit, and then
+	 * remove it
+	 *
+	 * @param macro
+	 */
+	public synchronized void stop(IMacro macro)
+	{
+		Task task = this.getTask(macro);
+		if (task != null) task.stop = true;
+	}
+
+	public synchronized boolean isScheduled(IMacro macro)
+	{
+		return this.getTask(macro) != null;
+	}
+
+	/**
+	 * Get the number of scheduled macros
+	 */
+	public synchronized int size()
+	{
+		return this.tasks.size();
+	}
+
+	private Task getTask(IMacro macro)
+	{
+		for (Task task : this.tasks)
+		{
+			if (task.macro == macro) return task;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Run the scheduled macros for one tick
+	 *
+	 * @param clock true if this is a clock tick
+	 */
+	public void tick(boolean clock)
+	{
+		synchronized (this.tickLock)
+		{
+			long tickStart = System.nanoTime();
+			long tickDeadline = tickStart + this.tickBudgetNanos;
+			Task[] order;
+			int start;
+
+			synchronized (this)
+			{
+				int count = this.tasks.size();
+				if (count == 0) return;
+
+				order = new Task[count];
+				start = this.cursor % count;
+				for (int index = 0; index < count; index++) order[index] = this.tasks.get((start + index) % count);
+			}
+
+			// Only macros which were deferred because the budget ran out go first next tick, a macro which is
+			// paying off debt would just be skipped again
+			Task firstBudgetDeferred = null;
+			this.tickThread = Thread.currentThread();
+
+			try
+			{
+				for (Task task : order)
+				{
+					long now, allotted;
+					boolean stop;
+
+					synchronized (this)
+					{
+						// A macro run earlier in this tick, or another thread, may have cancelled this one
+						if (!this.tasks.contains(task)) continue;
+
+						long slice = task.weight * this.quantumNanos;
+						task.credit = Math.min(task.credit + slice, slice);
+
+						now = System.nanoTime();
+						stop = task.stop;
+
+						if (!stop && (task.credit <= 0 || now >= tickDeadline))
+						{
+							task.ticksDeferred++;
+							task.waiting++;
+							if (firstBudgetDeferred == null && task.credit > 0) firstBudgetDeferred = task;
+							continue;
+						}
+
+						allotted = Math.max(0, Math.min(task.credit, tickDeadline - now));
+					}
+
+					this.sliceDeadline = now + allotted;
+					boolean finished = this.run(task, stop, clock);
+					long elapsed = System.nanoTime() - now;
+
+					synchronized (this)
+					{
+						task.credit -= elapsed;
+						task.totalNanos += elapsed;
+						task.ticksRun++;
+						task.waiting = 0;
+
+						long overrun = elapsed - allotted;
+						if (overrun > 0)
+						{
+							task.overruns++;
+							task.maxOverrunNanos = Math.max(task.maxOverrunNanos, overrun);
+						}
+
+						// Test the flag the macro was run with, a stop requested while it was running gets its final
+						// run with stop set on the next tick
+						if (finished || stop || task.macro.isDead()) this.remove(task);
+					}
+				}
+			}
+			finally
+			{
+				this.tickThread = null;
+			}
+
+			synchronized (this)
+			{
+				int next = firstBudgetDeferred != null ? this.tasks.indexOf(firstBudgetDeferred) : -1;
+				this.cursor = next > -1 ? next : start + 1;
+
+				this.lastTickNanos = System.nanoTime() - tickStart;
+				this.ticks++;
+				if (this.lastTickNanos > this.tickBudgetNanos) this.ticksOverBudget++;
+			}
+		}
+	}
+
+	/**
+	 * Run one task, returns true if the macro has finished
+	 */
+	private boolean run(Task task, boolean stop, boolean clock)
+	{
+		MacroScheduler previous = MacroScheduler.running.get();
+		MacroScheduler.running.set(this);
+
+		try
+		{
+			return task.processor.execute(task.macro, task.context, stop, true, clock);
+		}
+		catch (ScriptException ex)
+		{
+			Log.info("Macro {0} stopped by script error: {1}", task.macro.getDisplayName(), ex.getMessage());
+			return true;
+		}
+		finally
+		{
+			MacroScheduler.running.set(previous);
+		}
+	}
+
+	/**
+	 * Get whether the macro being run by this scheduler on the current thread has used up its slice
+	 */
+	public boolean isSliceExpired()
+	{
+		return this.tickThread == Thread.currentThread() && System.nanoTime() >= this.sliceDeadline;
+	}
+
+	/**
+	 * Get whether the calling action processor should stop executing actions and return, always false when
+	 * the processor is not being run by a scheduler
+	 */
+	public static boolean shouldYield()
+	{
+		MacroScheduler running = MacroScheduler.running.get();
+		return running != null && running.isSliceExpired();
+	}
+
+	/**
+	 * Get a snapshot of the metrics for each scheduled macro
+	 */
+	public synchronized List<Metrics> getMetrics()
+	{
+		List<Metrics> metrics = new ArrayList<Metrics>(this.tasks.size());
+
+		for (Task task : this.tasks)
+		{
+			metrics.add(new Metrics(task));
+		}
+
+		return Collections.unmodifiableList(metrics);
+	}
+
+	/**
+	 * Get the number of macros which did not run on the last tick
+	 */
+	public synchronized int getQueueDepth()
+	{
+		int depth = 0;
+
+		for (Task task : this.tasks)
+		{
+			if (task.waiting > 0) depth++;
+		}
+
+		return depth;
+	}
+
+	/**
+	 * Get the number of ticks run so far
+	 */
+	public synchronized long getTicks()
+	{
+		return this.ticks;
+	}
+
+	/**
+	 * Get the number of ticks which took longer than the tick budget
+	 */
+	public synchronized long getTicksOverBudget()
+	{
+		return this.ticksOverBudget;
+	}
+
+	/**
+	 * Get the time taken by the last tick
+	 */
+	public synchronized long getLastTickNanos()
+	{
+		return this.lastTickNanos;
+	}
+}
@@ -1,11 +1,19 @@
 package net.eq2online.macros.scripting;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 import net.eq2online.console.Log;
 import net.eq2online.macros.scripting.api.APIVersion;
@@ -14,18 +22,45 @@ import net.eq2online.macros.scripting.api.IMacrosAPIModule;
 import net.eq2online.macros.scripting.api.IScriptAction;
 import net.eq2online.macros.scripting.api.IScriptedIterator;
 import net.eq2online.macros.scripting.api.IVariableProvider;
-import net.minecraft.launchwrapper.LaunchClassLoader;
 
 public class ModuleLoader
 {
+	/**
+	 * API version which modules must declare
+	 */
+	private static final int API_VERSION = 15; // TODO API Version
+	
+	/**
+	 * Key for module scans in the scan cache
+	 */
+	private static final String CACHE_SCAN = "modules";
+	
 	/**
 	 * Directory containing script addon modules
 	 */
 	private final File modulesDir;
 	
+	/**
+	 * Index of the module classes found in previous sessions
+	 */
+	private final ModuleScanCache scanCache;
+	
+	/**
+	 * Class path the module files are added to
+	 */
+	private final IModuleClassPath classPath;
+	
 	public ModuleLoader(File macrosPath)
 	{
+		this(macrosPath, new LaunchModuleClassPath());
+	}
+	
+	public ModuleLoader(File macrosPath, IModuleClassPath classPath)
+	{
+		this.classPath = classPath;
 		this.modulesDir = new File(macrosPath, "/modules");
+		this.scanCache = new ModuleScanCache(new File(macrosPath, ModuleScanCache.CACHE_FILE_NAME));
+		ModuleScanCache.setDefault(this.scanCache);
 		
 		try
 		{
@@ -35,7 +70,9 @@ public class ModuleLoader
 	}
 
 	/**
-	 * Load the script modules
+	 * Load the script modules. The module jars are first scanned in parallel by reading their central
+	 * directories, the discovered classes are then loaded and instantiated in order on the calling thread.
+	 * Jars which are unchanged since the last session are not scanned, their classes are read from the cache.
 	 */
 	public void loadModules(IErrorLogger logger)
 	{
@@ -43,7 +80,7 @@ public class ModuleLoader
 		{
 			try
 			{
-				LaunchClassLoader classLoader = (LaunchClassLoader)ScriptCore.class.getClassLoader();
+				ClassLoader classLoader = this.classPath.getClassLoader();
 	
 				// Enumerate module files
 				ArrayList<File> moduleFiles = new ArrayList<File>();
@@ -54,96 +91,181 @@ public class ModuleLoader
 					}
 				))
 				{
-					moduleFiles.add(file);
+					if (file.isFile())
+					{
+						moduleFiles.add(file);
+					}
 				}
 				
 				// Add modules files to class path
 				for (File module : moduleFiles)
 				{
-					if (module.isFile())
-					{
-						classLoader.addURL(module.toURI().toURL());
-					}
+					this.classPath.addModule(module);
 				}
 				
 				// Load actions and providers from modules
-				for (File module : moduleFiles)
+				for (ModuleScan scan : ModuleLoader.scanModules(moduleFiles, this.scanCache))
 				{
-					LoadedModuleInfo lmi = new LoadedModuleInfo(module);
-					
-					if (module.isFile() && module.getName().startsWith("module_"));
-					{
-						ZipInputStream zipinputstream = new ZipInputStream(new FileInputStream(module));
-						
-						do
-						{
-							ZipEntry zipentry = zipinputstream.getNextEntry();
-							if (zipentry == null) break;
-							
-							String className = new File(zipentry.getName()).getName();
-							
-							if (!zipentry.isDirectory() && className.endsWith(".class") && !className.contains("$"))
-							{
-								String fullClassName = zipentry.getName().split("\\.")[0];
-								IMacrosAPIModule newModule = null;
-								
-								if (className.startsWith("ScriptAction"))
-								{
-									newModule = lmi.addAction(this.addModule(classLoader, IScriptAction.class, "action", fullClassName, logger));
-								}
-								else if (className.startsWith("VariableProvider"))
-								{
-									newModule = lmi.addProvider(this.addModule(classLoader, IVariableProvider.class, "variable provider", fullClassName, logger));
-								}
-								else if (className.startsWith("ScriptedIterator"))
-								{
-									newModule = lmi.addIterator(this.addModule(classLoader, IScriptedIterator.class, "iterator", fullClassName, logger));
-								}
-								else if (className.startsWith("EventProvider"))
-								{
-									newModule = lmi.addEventProvider(this.addModule(classLoader, IMacroEventProvider.class, "event provider", fullClassName, logger));
-								}
-								else
-								{
-									continue;
-								}
-								
-								if (newModule == null)
-								{
-									if (logger != null) logger.logError("API: Error initialising " + module.getName());
-									break;
-								}
-							}
-						}
-						while (true);
-						
-						zipinputstream.close();
-					}
-					
-					lmi.printStatus();
+					this.loadModule(classLoader, scan, logger);
 				}
+				
+				this.scanCache.save();
 			}
 			catch (Throwable th)
 			{
+				Log.printStackTrace(th);
+			}
+		}
+	}
+	
+	/**
+	 * Instantiate the modules discovered in a module file
+	 * 
+	 * @param classLoader
+	 * @param scan
+	 * @param logger
+	 */
+	private void loadModule(ClassLoader classLoader, ModuleScan scan, IErrorLogger logger)
+	{
+		LoadedModuleInfo lmi = new LoadedModuleInfo(scan.module);
+		lmi.setScanTime(scan.scanTime);
+		
+		if (scan.error != null)
+		{
+			Log.info("API: Error reading module {0}: {1}", scan.module.getName(), scan.error.getMessage());
+			if (logger != null) logger.logError("API: Error reading " + scan.module.getName());
+			return;
+		}
+		
+		long loadStart = System.nanoTime();
+		
+		for (int index = 0; index < scan.classNames.size(); index++)
+		{
+			IMacrosAPIModule newModule = null;
+			
+			switch (scan.moduleTypes.get(index))
+			{
+				case ACTION:
+					newModule = lmi.addAction(this.addModule(classLoader, IScriptAction.class, "action", scan, index, logger));
+					break;
+				case VARIABLE_PROVIDER:
+					newModule = lmi.addProvider(this.addModule(classLoader, IVariableProvider.class, "variable provider", scan, index, logger));
+					break;
+				case ITERATOR:
+					newModule = lmi.addIterator(this.addModule(classLoader, IScriptedIterator.class, "iterator", scan, index, logger));
+					break;
+				case EVENT_PROVIDER:
+					newModule = lmi.addEventProvider(this.addModule(classLoader, IMacroEventProvider.class, "event provider", scan, index, logger));
+					break;
+			}
+			
+			if (newModule == null)
+			{
+				if (logger != null) logger.logError("API: Error initialising " + scan.module.getName());
+				break;
 			}
 		}
+		
+		lmi.setLoadTime(System.nanoTime() - loadStart);
+		lmi.printStatus();
+		
+		if (scan.modified)
+		{
+			this.scanCache.put(scan.module, ModuleLoader.CACHE_SCAN, scan.getCacheEntries());
+		}
+	}
+	
+	/**
+	 * Scan the supplied module files in parallel, the results are returned in the same order as the files
+	 * 
+	 * @param moduleFiles
+	 * @param scanCache
+	 * @return
+	 * @throws InterruptedException
+	 */
+	private static List<ModuleScan> scanModules(List<File> moduleFiles, final ModuleScanCache scanCache) throws InterruptedException
+	{
+		List<ModuleScan> scans = new ArrayList<ModuleScan>();
+		if (moduleFiles.isEmpty()) return scans;
+		
+		int threads = Math.max(1, Math.min(moduleFiles.size(), Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			private int threadNumber = 0;
+			
+			@Override
+			public synchronized Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "Macros module scanner #" + (++this.threadNumber));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		try
+		{
+			List<Future<ModuleScan>> futures = new ArrayList<Future<ModuleScan>>();
+			
+			for (final File module : moduleFiles)
+			{
+				futures.add(executor.submit(new Callable<ModuleScan>()
+				{
+					@Override
+					public ModuleScan call()
+					{
+						return ModuleScan.scan(module, scanCache);
+					}
+				}));
+			}
+			
+			for (Future<ModuleScan> future : futures)
+			{
+				try
+				{
+					scans.add(future.get());
+				}
+				catch (ExecutionException ex)
+				{
+					Log.printStackTrace(ex.getCause());
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		
+		return scans;
 	}
 
 	/**
-	 * Add a new action class from a module
+	 * Add a new action class from a module, the class's API version is recorded in the scan. Classes already
+	 * known to have a bad API version are rejected without being loaded.
 	 * 
 	 * @param classLoader
-	 * @param className
+	 * @param scan
+	 * @param index index of the class in the scan
 	 */
-	private <ModuleType extends IMacrosAPIModule> ModuleType addModule(ClassLoader classLoader, Class<ModuleType> moduleClassType, String moduleType, String className, IErrorLogger logger)
+	private <ModuleType extends IMacrosAPIModule> ModuleType addModule(ClassLoader classLoader, Class<ModuleType> moduleClassType, String moduleType, ModuleScan scan, int index, IErrorLogger logger)
 	{
+		String className = scan.classNames.get(index).replace('/', '.');
+		int knownVersion = scan.apiVersions.get(index);
+		
+		if (knownVersion != ModuleScanCache.UNKNOWN_VERSION && knownVersion != ModuleLoader.API_VERSION)
+		{
+			Log.info("Macros: API Error. Not loading custom {0} in {1}, bad API version.", moduleType, className);
+			if (logger != null) logger.logError("API: Not loading " + className.substring(className.lastIndexOf('.') + 1) + ", bad API version");
+			return null;
+		}
+		
 		try
 		{
-			className = className.replace('/', '.');
 			Class<?> moduleClass = classLoader.loadClass(className);
 			
 			if (moduleClassType.isAssignableFrom(moduleClass))
 			{
+				scan.setAPIVersion(index, ModuleLoader.getAPIVersion(moduleClass));
+				
 				if (!ModuleLoader.checkAPIVersion(moduleClass))
 				{
 					Log.info("Macros: API Error. Not loading custom {0} in {1}, bad API version.", moduleType, className);
@@ -152,7 +274,7 @@ public class ModuleLoader
 				}
 				
 				@SuppressWarnings("unchecked")
-				ModuleType customScriptAction = (ModuleType)moduleClass.newInstance();
+				ModuleType customScriptAction = (ModuleType)InstanceFactory.forClass(moduleClass).newInstance();
 				
 				if (customScriptAction != null)
 				{
@@ -176,8 +298,180 @@ public class ModuleLoader
 	 * @return
 	 */
 	private static final boolean checkAPIVersion(Class<?> moduleClass)
+	{
+		return ModuleLoader.getAPIVersion(moduleClass) == ModuleLoader.API_VERSION;
+	}
+	
+	/**
+	 * Get the API version declared by the module class, or UNKNOWN_VERSION if the class has no annotation
+	 * 
+	 * @param moduleClass
+	 * @return
+	 */
+	private static int getAPIVersion(Class<?> moduleClass)
 	{
 		APIVersion versionAnnotation = moduleClass.getAnnotation(APIVersion.class);
-		return (versionAnnotation != null && versionAnnotation.value() == 15); // TODO API Version
+		return versionAnnotation != null ? versionAnnotation.value() : ModuleScanCache.UNKNOWN_VERSION;
+	}
+
+	/**
+	 * Types of module which can be loaded, identified by the prefix of the class name
+	 */
+	enum ModuleType
+	{
+		ACTION("ScriptAction"),
+		VARIABLE_PROVIDER("VariableProvider"),
+		ITERATOR("ScriptedIterator"),
+		EVENT_PROVIDER("EventProvider");
+		
+		final String prefix;
+		
+		private ModuleType(String prefix)
+		{
+			this.prefix = prefix;
+		}
+		
+		/**
+		 * Get the module type for the specified simple class name, or null if the class is not a module
+		 */
+		static ModuleType forClassName(String className)
+		{
+			for (ModuleType moduleType : ModuleType.values())
+			{
+				if (className.startsWith(moduleType.prefix)) return moduleType;
+			}
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * Result of scanning a module file, the names of module classes in the file in the order they appear
+	 */
+	static final class ModuleScan
+	{
+		final File module;
+		
+		final List<String> classNames = new ArrayList<String>();
+		
+		final List<ModuleType> moduleTypes = new ArrayList<ModuleType>();
+		
+		final List<Integer> apiVersions = new ArrayList<Integer>();
+		
+		long scanTime;
+		
+		IOException error;
+		
+		/**
+		 * True if the scan differs from the cached entries for the module and should be stored
+		 */
+		boolean modified;
+		
+		ModuleScan(File module)
+		{
+			this.module = module;
+		}
+		
+		void add(String className, ModuleType moduleType, int apiVersion)
+		{
+			this.classNames.add(className);
+			this.moduleTypes.add(moduleType);
+			this.apiVersions.add(apiVersion);
+		}
+		
+		void setAPIVersion(int index, int apiVersion)
+		{
+			if (this.apiVersions.get(index) != apiVersion)
+			{
+				this.apiVersions.set(index, apiVersion);
+				this.modified = true;
+			}
+		}
+		
+		List<ModuleScanCache.Entry> getCacheEntries()
+		{
+			List<ModuleScanCache.Entry> entries = new ArrayList<ModuleScanCache.Entry>();
+			
+			for (int index = 0; index < this.classNames.size(); index++)
+			{
+				entries.add(new ModuleScanCache.Entry(this.moduleTypes.get(index).name(), this.classNames.get(index), this.apiVersions.get(index)));
+			}
+			
+			return entries;
+		}
+		
+		/**
+		 * Get the module file's classes from the cache if it is unchanged, otherwise read the module file's
+		 * central directory, entries are not inflated
+		 */
+		static ModuleScan scan(File module, ModuleScanCache scanCache)
+		{
+			ModuleScan scan = new ModuleScan(module);
+			long scanStart = System.nanoTime();
+			
+			if (scanCache != null && scan.readCache(scanCache))
+			{
+				scan.scanTime = System.nanoTime() - scanStart;
+				return scan;
+			}
+			
+			scan.modified = true;
+			ZipFile zipFile = null;
+			
+			try
+			{
+				zipFile = new ZipFile(module);
+				
+				for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); )
+				{
+					ZipEntry zipentry = entries.nextElement();
+					String className = new File(zipentry.getName()).getName();
+					
+					if (!zipentry.isDirectory() && className.endsWith(".class") && !className.contains("$"))
+					{
+						ModuleType moduleType = ModuleType.forClassName(className);
+						
+						if (moduleType != null)
+						{
+							scan.add(zipentry.getName().split("\\.")[0], moduleType, ModuleScanCache.UNKNOWN_VERSION);
+						}
+					}
+				}
+			}
+			catch (IOException ex)
+			{
+				scan.error = ex;
+			}
+			finally
+			{
+				if (zipFile != null) try { zipFile.close(); } catch (IOException ex) {}
+			}
+			
+			scan.scanTime = System.nanoTime() - scanStart;
+			return scan;
+		}
+		
+		private boolean readCache(ModuleScanCache scanCache)
+		{
+			List<ModuleScanCache.Entry> entries = scanCache.get(this.module, ModuleLoader.CACHE_SCAN);
+			if (entries == null) return false;
+			
+			try
+			{
+				for (ModuleScanCache.Entry entry : entries)
+				{
+					this.add(entry.className, ModuleType.valueOf(entry.type), entry.apiVersion);
+				}
+			}
+			catch (IllegalArgumentException ex)
+			{
+				this.classNames.clear();
+				this.moduleTypes.clear();
+				this.apiVersions.clear();
+				return false;
+			}
+			
+			return true;
+		}
 	}
 }
@@ -0,0 +1,335 @@
+package net.eq2online.macros.scripting;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import net.eq2online.console.Log;
+
+/**
+ * Persistent index of the classes discovered when scanning jars for modules and script actions. Entries are
+ * stored per jar and scan type along with the jar's checksum, and are only returned if the checksum still
+ * matches so that unchanged jars don't have to be enumerated on every launch. The size, modification time
+ * and checksum of each jar are stored in the index too, and the checksum is only recalculated if the size or
+ * modification time have changed. Entries for jars which no longer exist are discarded when the index is
+ * loaded.
+ * Each class is recorded with its API version (or -1 if unknown) so that modules with a bad API version
+ * don't have to be loaded just to be rejected. Lookups may be made from multiple threads.
+ *
+ * @author Adam Mummery-Smith
+ */
+public class ModuleScanCache
+{
+	/**
+	 * API version recorded for classes whose version has not been determined
+	 */
+	public static final int UNKNOWN_VERSION = -1;
+
+	/**
+	 * Name of the cache file in the macros directory
+	 */
+	public static final String CACHE_FILE_NAME = "modulecache.properties";
+
+	/**
+	 * Prefix for the keys which store the fingerprint of each jar
+	 */
+	private static final String JAR_PREFIX = "jar:";
+
+	private static final String CHECKSUM_SUFFIX = ".checksum";
+
+	private static final String CLASSES_SUFFIX = ".classes";
+
+	/**
+	 * Cache used by default, set when the module loader is created
+	 */
+	private static ModuleScanCache defaultCache;
+
+	/**
+	 * A class discovered by a scan
+	 */
+	public static final class Entry
+	{
+		/**
+		 * Type of the class, eg. the module type
+		 */
+		public final String type;
+
+		/**
+		 * Fully qualified class name
+		 */
+		public final String className;
+
+		/**
+		 * API version of the class or UNKNOWN_VERSION
+		 */
+		public final int apiVersion;
+
+		public Entry(String type, String className, int apiVersion)
+		{
+			this.type = type;
+			this.className = className;
+			this.apiVersion = apiVersion;
+		}
+	}
+
+	private final File cacheFile;
+
+	private final Properties index = new Properties();
+
+	private boolean dirty;
+
+	public ModuleScanCache(File cacheFile)
+	{
+		this.cacheFile = cacheFile;
+
+		if (this.cacheFile.isFile())
+		{
+			InputStream inputStream = null;
+
+			try
+			{
+				inputStream = new FileInputStream(this.cacheFile);
+				this.index.load(inputStream);
+			}
+			catch (Exception ex)
+			{
+				Log.info("Error reading module cache {0}, modules will be rescanned", this.cacheFile.getName());
+				this.index.clear();
+			}
+			finally
+			{
+				if (inputStream != null) try { inputStream.close(); } catch (IOException ex) {}
+			}
+
+			this.prune();
+		}
+	}
+
+	/**
+	 * Remove the entries for jars which no longer exist
+	 */
+	private void prune()
+	{
+		Set<String> present = new HashSet<String>();
+
+		for (String key : this.index.stringPropertyNames())
+		{
+			String path = ModuleScanCache.getPath(key);
+			if (path != null && (present.contains(path) || new File(path).isFile()))
+			{
+				present.add(path);
+				continue;
+			}
+
+			this.index.remove(key);
+			this.dirty = true;
+		}
+	}
+
+	/**
+	 * Get cached entries for the specified jar and scan, returns null if there are no entries or the jar
+	 * has changed since the entries were stored
+	 *
+	 * @param jar
+	 * @param scan
+	 * @return
+	 */
+	public List<Entry> get(File jar, String scan)
+	{
+		String key = ModuleScanCache.getKey(jar, scan);
+		String checksum, classes;
+
+		synchronized (this)
+		{
+			checksum = this.index.getProperty(key + ModuleScanCache.CHECKSUM_SUFFIX);
+			classes = this.index.getProperty(key + ModuleScanCache.CLASSES_SUFFIX);
+		}
+
+		if (checksum == null || classes == null || !checksum.equals(this.getChecksum(jar)))
+		{
+			return null;
+		}
+
+		List<Entry> entries = new ArrayList<Entry>();
+
+		for (String entry : classes.split(";"))
+		{
+			String[] parts = entry.split(",");
+			if (parts.length != 3) continue;
+
+			int apiVersion = ModuleScanCache.UNKNOWN_VERSION;
+			try { apiVersion = Integer.parseInt(parts[2]); } catch (NumberFormatException ex) {}
+			entries.add(new Entry(parts[0], parts[1], apiVersion));
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Store entries for the specified jar and scan
+	 *
+	 * @param jar
+	 * @param scan
+	 * @param entries
+	 */
+	public void put(File jar, String scan, List<Entry> entries)
+	{
+		String checksum = this.getChecksum(jar);
+		if (checksum == null) return;
+
+		StringBuilder classes = new StringBuilder();
+		for (Entry entry : entries)
+		{
+			if (classes.length() > 0) classes.append(';');
+			classes.append(entry.type).append(',').append(entry.className).append(',').append(entry.apiVersion);
+		}
+
+		String key = ModuleScanCache.getKey(jar, scan);
+
+		synchronized (this)
+		{
+			this.index.setProperty(key + ModuleScanCache.CHECKSUM_SUFFIX, checksum);
+			this.index.setProperty(key + ModuleScanCache.CLASSES_SUFFIX, classes.toString());
+			this.dirty = true;
+		}
+	}
+
+	/**
+	 * Write the cache to disk if it has changed
+	 */
+	public synchronized void save()
+	{
+		if (!this.dirty) return;
+
+		OutputStream outputStream = null;
+
+		try
+		{
+			outputStream = new FileOutputStream(this.cacheFile);
+			this.index.store(outputStream, "Macros module scan cache, safe to delete");
+			this.dirty = false;
+		}
+		catch (IOException ex)
+		{
+			Log.info("Error writing module cache {0}: {1}", this.cacheFile.getName(), ex.getMessage());
+		}
+		finally
+		{
+			if (outputStream != null) try { outputStream.close(); } catch (IOException ex) {}
+		}
+	}
+
+	private static String getKey(File jar, String scan)
+	{
+		return scan + ":" + jar.getAbsolutePath();
+	}
+
+	/**
+	 * Get the path of the jar an index key refers to, or null if the key is not recognised
+	 *
+	 * @param key
+	 * @return
+	 */
+	private static String getPath(String key)
+	{
+		if (key.startsWith(ModuleScanCache.JAR_PREFIX)) return key.substring(ModuleScanCache.JAR_PREFIX.length());
+
+		int scanEnd = key.indexOf(':');
+		if (scanEnd < 0) return null;
+
+		if (key.endsWith(ModuleScanCache.CHECKSUM_SUFFIX)) return key.substring(scanEnd + 1, key.length() - ModuleScanCache.CHECKSUM_SUFFIX.length());
+		if (key.endsWith(ModuleScanCache.CLASSES_SUFFIX)) return key.substring(scanEnd + 1, key.length() - ModuleScanCache.CLASSES_SUFFIX.length());
+		return null;
+	}
+
+	/**
+	 * Get the CRC32 checksum of the specified jar. The fingerprint stored in the index is trusted if the jar's
+	 * size and modification time still match it, otherwise the checksum is recalculated and stored.
+	 *
+	 * @param jar
+	 * @return checksum or null if the file could not be read
+	 */
+	private String getChecksum(File jar)
+	{
+		if (!jar.isFile()) return null;
+
+		String stamp = jar.length() + "/" + jar.lastModified() + "/";
+		String key = ModuleScanCache.JAR_PREFIX + jar.getAbsolutePath();
+		String fingerprint;
+
+		synchronized (this)
+		{
+			fingerprint = this.index.getProperty(key);
+		}
+
+		if (fingerprint == null || !fingerprint.startsWith(stamp))
+		{
+			String checksum = ModuleScanCache.calculateChecksum(jar);
+			if (checksum == null) return null;
+
+			fingerprint = stamp + checksum;
+
+			synchronized (this)
+			{
+				this.index.setProperty(key, fingerprint);
+				this.dirty = true;
+			}
+		}
+
+		return fingerprint.substring(stamp.length());
+	}
+
+	private static String calculateChecksum(File jar)
+	{
+		InputStream inputStream = null;
+
+		try
+		{
+			CRC32 crc = new CRC32();
+			byte[] buffer = new byte[0x10000];
+			inputStream = new FileInputStream(jar);
+
+			for (int read = inputStream.read(buffer); read > -1; read = inputStream.read(buffer))
+			{
+				crc.update(buffer, 0, read);
+			}
+
+			return Long.toHexString(crc.getValue());
+		}
+		catch (IOException ex)
+		{
+			return null;
+		}
+		finally
+		{
+			if (inputStream != null) try { inputStream.close(); } catch (IOException ex) {}
+		}
+	}
+
+	/**
+	 * Get the default cache, may return null if no cache has been set
+	 */
+	public static ModuleScanCache getDefault()
+	{
+		return ModuleScanCache.defaultCache;
+	}
+
+	/**
+	 * Set the default cache
+	 *
+	 * @param cache
+	 */
+	public static void setDefault(ModuleScanCache cache)
+	{
+		ModuleScanCache.defaultCache = cache;
+	}
+}
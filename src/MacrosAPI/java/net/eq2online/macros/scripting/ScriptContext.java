@@ -1,11 +1,11 @@
 package net.eq2online.macros.scripting;
 
-import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.eq2online.macros.scripting.api.IMacroActionContext;
 import net.eq2online.macros.scripting.api.IMacroEventManager;
@@ -22,7 +22,7 @@ import net.eq2online.macros.scripting.api.IVariableProvider;
  */
 public class ScriptContext
 {
-	private static final Map<String, ScriptContext> contexts = new HashMap<String, ScriptContext>();
+	private static final ConcurrentHashMap<String, ScriptContext> contexts = new ConcurrentHashMap<String, ScriptContext>();
 	
 	public static final ScriptContext MAIN = new ScriptContext("main");
 	
@@ -38,7 +38,7 @@ public class ScriptContext
 	 */
 	private ScriptCore core;
 	
-	private Constructor<? extends IMacroActionContext> actionContextCtor;
+	private InstanceFactory<? extends IMacroActionContext> actionContextFactory;
 	
 	private IErrorLogger logger;
 
@@ -49,14 +49,12 @@ public class ScriptContext
 	 */
 	private ScriptContext(String name)
 	{
-		if (ScriptContext.contexts.containsKey(name))
+		this.name = name;
+		
+		if (ScriptContext.contexts.putIfAbsent(this.name, this) != null)
 		{
 			throw new IllegalArgumentException("Context with name \"" + name + "\" already exists, use getContext() instead");
 		}
-		
-		this.name = name;
-		
-		ScriptContext.contexts.put(this.name, this);
 	}
 	
 	/**
@@ -87,7 +85,7 @@ public class ScriptContext
 	{
 		try
 		{
-			this.actionContextCtor = actionContextClass.getDeclaredConstructor(ScriptContext.class, IScriptActionProvider.class, IVariableProvider.class);
+			this.actionContextFactory = InstanceFactory.forClass(actionContextClass, ScriptContext.class, IScriptActionProvider.class, IVariableProvider.class);
 		}
 		catch (Exception ex)
 		{
@@ -158,11 +156,25 @@ public class ScriptContext
 		return this.core.getAction(actionName);
 	}
 	
+	/**
+	 * @param actionName
+	 * @return ordinal or ActionTable.NO_ORDINAL if no action with this name is registered
+	 */
+	public int getActionOrdinal(String actionName)
+	{
+		return this.core.getActionOrdinal(actionName);
+	}
+	
+	public ActionTable getActionTable()
+	{
+		return this.core.getActionTable();
+	}
+	
 	public IMacroActionContext createActionContext(IVariableProvider contextVariableProvider)
 	{
 		try
 		{
-			return this.actionContextCtor.newInstance(this, this.getScriptActionProvider(), contextVariableProvider);
+			return this.actionContextFactory.newInstance(this, this.getScriptActionProvider(), contextVariableProvider);
 		}
 		catch (Exception ex)
 		{
@@ -227,16 +239,25 @@ public class ScriptContext
 	
 	public static ScriptContext getContext(String name)
 	{
-		if (!ScriptContext.contexts.containsKey(name))
+		ScriptContext context = ScriptContext.contexts.get(name);
+		
+		if (context == null)
 		{
-			return new ScriptContext(name);
+			synchronized (ScriptContext.contexts)
+			{
+				context = ScriptContext.contexts.get(name);
+				if (context == null) context = new ScriptContext(name);
+			}
 		}
 		
-		return ScriptContext.contexts.get(name);
+		return context;
 	}
 
+	/**
+	 * Get a snapshot of the contexts which exist
+	 */
 	public static Collection<ScriptContext> getAvailableContexts()
 	{
-		return Collections.unmodifiableCollection(ScriptContext.contexts.values());
+		return Collections.unmodifiableList(new ArrayList<ScriptContext>(ScriptContext.contexts.values()));
 	}
 }
@@ -1,13 +1,12 @@
 package net.eq2online.macros.scripting;
 
-import java.lang.reflect.Constructor;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.eq2online.console.Log;
 import net.eq2online.macros.compatibility.Reflection;
@@ -21,7 +20,7 @@ import net.eq2online.macros.scripting.api.*;
  */
 public final class ScriptCore
 {
-	private static final Map<ScriptContext, ScriptCore> contexts = new HashMap<ScriptContext, ScriptCore>();
+	private static final Map<ScriptContext, ScriptCore> contexts = new ConcurrentHashMap<ScriptContext, ScriptCore>();
 	
 	/**
 	 * Context for this core 
@@ -49,32 +48,59 @@ public final class ScriptCore
 	private IMessageFilter messageFilter;
 	
 	/**
-	 * Mapping of action names to action providers
+	 * Mapping of action names to action providers, actions may be registered from a loader thread while
+	 * being looked up on the client thread
 	 */
-	private final Map<String, IScriptAction> actions = new HashMap<String, IScriptAction>();
+	private final Map<String, IScriptAction> actions = new ConcurrentHashMap<String, IScriptAction>();
 
 	/**
-	 * All actions in a list, for speedy iteration
+	 * All actions in an immutable random-access list, for speedy iteration. Replaced with a new snapshot each
+	 * time an action is registered, registration is serialised on the actions map
 	 */
-	private final List<IScriptAction> actionsList = new LinkedList<IScriptAction>();
+	private volatile List<IScriptAction> actionsList = Collections.emptyList();
+	
+	/**
+	 * Dispatch table indexed by action ordinal, replaced along with the actions list
+	 */
+	private volatile ActionTable actionTable = ActionTable.EMPTY;
+	
+	/**
+	 * Mapping of action names to action ordinals
+	 */
+	private final Map<String, Integer> actionOrdinals = new ConcurrentHashMap<String, Integer>();
 	
 	/**
 	 * Iterators
 	 */
-	private Map<String, Class<? extends IScriptedIterator>> iterators = new HashMap<String, Class<? extends IScriptedIterator>>();
+	private final ConcurrentHashMap<String, Class<? extends IScriptedIterator>> iterators = new ConcurrentHashMap<String, Class<? extends IScriptedIterator>>();
 
 	/**
-	 * Regex used to match actions when highlighting, each registered action is added to this regex so that
+	 * Tree used to match actions when highlighting, each registered action is added to the tree so that
 	 * it can be matched when required by the GUI. Currently only used by the text editor. 
 	 */
-	private Pattern actionRegex = Pattern.compile("");
+	private final ActionNameTrie actionNames = new ActionNameTrie();
 
 	/**
 	 * Documentation provider
 	 */
 	private IDocumentor documentor;
 	
-	static boolean createCoreForContext(ScriptContext context, IScriptActionProvider provider, IMacroEventManager eventManager, IScriptParser defaultParser, IErrorLogger logger, IDocumentor documentor)
+	/**
+	 * Action profiler, disabled unless enabled by the user
+	 */
+	private final ActionProfiler profiler = new ActionProfiler(this);
+	
+	/**
+	 * Scheduler for macros running in this context
+	 */
+	private final MacroScheduler scheduler = new MacroScheduler();
+	
+	/**
+	 * Executor for running thread-safe actions off the tick thread, disabled unless enabled by the user
+	 */
+	private final ActionExecutor executor = new ActionExecutor(this.profiler);
+	
+	static synchronized boolean createCoreForContext(ScriptContext context, IScriptActionProvider provider, IMacroEventManager eventManager, IScriptParser defaultParser, IErrorLogger logger, IDocumentor documentor)
 	{
 		if (!ScriptCore.contexts.containsKey(context) && !context.isCreated())
 		{
@@ -122,44 +148,71 @@ public final class ScriptCore
 
 	public IScriptAction getAction(String actionName)
 	{
-		return this.actions.get(actionName.toLowerCase());
+		return this.actions.get(ScriptCore.toLowerCase(actionName));
 	}
-
+	
 	/**
-	 * Registration callback for script core
+	 * Get the ordinal of the named action, parsers should resolve action names once and keep the ordinal
 	 * 
-	 * @param newAction
+	 * @param actionName
+	 * @return ordinal or ActionTable.NO_ORDINAL if no action with this name is registered
 	 */
-	private boolean registerAction(IScriptAction newAction)
+	public int getActionOrdinal(String actionName)
 	{
-		if (this.actions.containsKey(newAction.toString()))
-			return false;
-		
-		this.actions.put(newAction.toString(), newAction);
-		this.actionsList.add(newAction);
-		this.documentor.setDocumentation(newAction);
-		this.updateScriptActionRegex();
+		Integer ordinal = this.actionOrdinals.get(ScriptCore.toLowerCase(actionName));
+		return ordinal != null ? ordinal.intValue() : ActionTable.NO_ORDINAL;
+	}
+	
+	/**
+	 * Get the current action dispatch table, the returned table is immutable and is not affected by actions
+	 * registered later
+	 * 
+	 * @return
+	 */
+	public ActionTable getActionTable()
+	{
+		return this.actionTable;
+	}
+	
+	/**
+	 * Lower-case the supplied name, returns the same instance without allocating if it is already lower case
+	 */
+	private static String toLowerCase(String name)
+	{
+		for (int charPos = 0; charPos < name.length(); charPos++)
+		{
+			char c = name.charAt(charPos);
+			if (Character.toLowerCase(c) != c) return name.toLowerCase();
+		}
 		
-		return true;
+		return name;
 	}
 
 	/**
-	 * Updates the regex used to recognise script actions in the text editor
+	 * Registration callback for script core
+	 * 
+	 * @param newAction
 	 */
-	private void updateScriptActionRegex()
+	private boolean registerAction(IScriptAction newAction)
 	{
-		String actionList = "";
-		char separator = '(';
-		
-		for (IScriptAction action : this.actions.values())
+		synchronized (this.actions)
 		{
-			actionList += separator + action.toString();
-			separator = '|';
+			if (this.actions.containsKey(newAction.toString()))
+				return false;
+			
+			List<IScriptAction> actionsList = new ArrayList<IScriptAction>(this.actionsList.size() + 1);
+			actionsList.addAll(this.actionsList);
+			actionsList.add(newAction);
+			
+			this.actions.put(newAction.toString(), newAction);
+			this.actionTable = this.actionTable.append(newAction);
+			this.actionOrdinals.put(newAction.toString(), this.actionTable.size() - 1);
+			this.actionsList = Collections.unmodifiableList(actionsList);
+			this.documentor.setDocumentation(newAction);
+			this.actionNames.add(newAction.toString());
 		}
 		
-		actionList += ")";
-		
-		this.actionRegex = Pattern.compile(actionList + "([\\(;]|$)", Pattern.CASE_INSENSITIVE);
+		return true;
 	}
 	
 	/**
@@ -171,6 +224,9 @@ public final class ScriptCore
 	}
 	
 	/**
+	 * Get a snapshot of the registered actions, the returned list is immutable and is not affected by actions
+	 * registered later
+	 * 
 	 * @return
 	 */
 	public List<IScriptAction> getActionsList()
@@ -178,6 +234,59 @@ public final class ScriptCore
 		return this.actionsList;
 	}
 
+	/**
+	 * Get the action profiler, the action processor should invoke actions through the profiler so that they
+	 * can be profiled when profiling is enabled
+	 * 
+	 * @return
+	 */
+	public ActionProfiler getProfiler()
+	{
+		return this.profiler;
+	}
+	
+	/**
+	 * Get a snapshot of the action profile recorded so far
+	 * 
+	 * @return
+	 */
+	public List<ActionProfiler.Entry> getProfileSnapshot()
+	{
+		return this.profiler.getSnapshot();
+	}
+	
+	/**
+	 * Write the action profile recorded so far to the specified file
+	 * 
+	 * @param file
+	 * @return true if the file was written
+	 */
+	public boolean dumpProfile(File file)
+	{
+		return this.profiler.dump(file);
+	}
+
+	/**
+	 * Get the scheduler which runs macros in this context within the per-tick time budget
+	 * 
+	 * @return
+	 */
+	public MacroScheduler getScheduler()
+	{
+		return this.scheduler;
+	}
+
+	/**
+	 * Get the executor which runs thread-safe actions off the tick thread, the action processor should
+	 * submit actions through the executor and treat them as latent until they are complete
+	 * 
+	 * @return
+	 */
+	public ActionExecutor getActionExecutor()
+	{
+		return this.executor;
+	}
+
 	/**
 	 * Register a script action provider with the core
 	 * 
@@ -295,13 +404,11 @@ public final class ScriptCore
 	 */
 	public void registerIterator(String iteratorName, Class<? extends IScriptedIterator> iterator)
 	{
-		if (this.iterators.containsKey(iteratorName))
+		if (this.iterators.putIfAbsent(iteratorName, iterator) != null)
 		{
 			return;
 //			throw new IllegalArgumentException("Attempted to register a duplicate iterator for key '" + iteratorName + "'");
 		}
-		
-		this.iterators.put(iteratorName, iterator);
 	}
 	
 	/**
@@ -352,10 +459,10 @@ public final class ScriptCore
 				try
 				{
 					IScriptAction newAction = null;
-					Constructor<IScriptAction> ctor = (Constructor<IScriptAction>)action.getDeclaredConstructor(ScriptContext.class);
-					if (ctor != null)
+					InstanceFactory<? extends IScriptAction> factory = InstanceFactory.forClass(action, ScriptContext.class);
+					if (factory != null)
 					{
-						newAction = ctor.newInstance(this.context);
+						newAction = factory.newInstance(this.context);
 
 						if (newAction != null)
 						{
@@ -402,30 +509,31 @@ public final class ScriptCore
 	 */
 	public static boolean parseBoolean(String variableValue, int intValue)
 	{
-		return variableValue == null || variableValue.toLowerCase().equals("true") || intValue != 0;
+		return variableValue == null || "true".equalsIgnoreCase(variableValue) || intValue != 0;
 	}
 
 	/**
-	 * Safe function to parse an integer, returns 0 on failure
+	 * Safe function to parse an integer, returns 0 on failure. Surrounding whitespace and thousands separators
+	 * (commas) are ignored
 	 * 
 	 * @param value String parameter to parse
 	 * @return Parsed value or 0 if parsing failed
 	 */
 	public static int tryParseInt(String value, int defaultValue)
 	{
-		if (value == null) return defaultValue;
-		try { return Integer.parseInt(value.trim().replaceAll(",", "")); } catch (NumberFormatException ex) {} return defaultValue;
+		return (int)ScriptCore.parseIntegral(value, Integer.MIN_VALUE, Integer.MAX_VALUE, defaultValue);
 	}
 	
 	/**
-	 * Safe function to parse a long, returns 0 on failure
+	 * Safe function to parse a long, returns 0 on failure. Surrounding whitespace and thousands separators
+	 * (commas) are ignored
 	 * 
 	 * @param value String parameter to parse
 	 * @return Parsed value or 0 if parsing failed
 	 */
 	public static long tryParseLong(String value, long defaultValue)
 	{
-		try { return Long.parseLong(value.trim()); } catch (NumberFormatException ex) {} return defaultValue;
+		return ScriptCore.parseIntegral(value, Long.MIN_VALUE, Long.MAX_VALUE, defaultValue);
 	}
 	
 	/**
@@ -436,7 +544,170 @@ public final class ScriptCore
 	 */
 	public static float tryParseFloat(String value, float defaultValue)
 	{
-		try { return Float.parseFloat(value.trim()); } catch (NumberFormatException ex) {} return defaultValue;
+		if (value == null) return defaultValue;
+		
+		int end = value.length(), pos = 0;
+		while (pos < end && value.charAt(pos) <= ' ') pos++;
+		while (end > pos && value.charAt(end - 1) <= ' ') end--;
+		if (pos == end) return defaultValue;
+		
+		int start = pos;
+		boolean negative = value.charAt(pos) == '-';
+		if (negative || value.charAt(pos) == '+') pos++;
+		
+		// Special values are matched exactly and hex values are validated before being left to the JDK, so that
+		// ordinary text such as "No" or "I think so" is rejected without throwing
+		if (pos < end && (value.charAt(pos) == 'N' || value.charAt(pos) == 'I'))
+		{
+			if (end - pos == 3 && value.regionMatches(pos, "NaN", 0, 3)) return Float.NaN;
+			if (end - pos == 8 && value.regionMatches(pos, "Infinity", 0, 8)) return negative ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+			return defaultValue;
+		}
+		
+		if (pos + 1 < end && value.charAt(pos) == '0' && (value.charAt(pos + 1) | 0x20) == 'x')
+		{
+			return ScriptCore.isHexFloat(value, pos + 2, end) ? Float.parseFloat(value.substring(start, end)) : defaultValue;
+		}
+		
+		// Validate [digits][.digits][e[sign]digits][fFdD] with at least one mantissa digit, accumulating the mantissa
+		// for as long as it is exactly representable
+		long mantissa = 0;
+		int significantDigits = 0, mantissaDigits = 0, fractionDigits = 0, exponent = 0;
+		boolean point = false;
+		
+		for (; pos < end; pos++)
+		{
+			char c = value.charAt(pos);
+			
+			if (c >= '0' && c <= '9')
+			{
+				mantissaDigits++;
+				if (point) fractionDigits++;
+				if (significantDigits > 0 || c != '0') significantDigits++;
+				if (significantDigits <= 18) mantissa = mantissa * 10 + (c - '0');
+			}
+			else if (c == '.' && !point)
+			{
+				point = true;
+			}
+			else break;
+		}
+		
+		if (mantissaDigits == 0) return defaultValue;
+		
+		if (pos < end && (value.charAt(pos) | 0x20) == 'e')
+		{
+			pos++;
+			boolean negativeExponent = pos < end && value.charAt(pos) == '-';
+			if (pos < end && (negativeExponent || value.charAt(pos) == '+')) pos++;
+			
+			int exponentDigits = 0;
+			for (; pos < end && value.charAt(pos) >= '0' && value.charAt(pos) <= '9'; pos++, exponentDigits++)
+			{
+				if (exponent < 100000) exponent = exponent * 10 + (value.charAt(pos) - '0');
+			}
+			
+			if (exponentDigits == 0) return defaultValue;
+			if (negativeExponent) exponent = -exponent;
+		}
+		
+		if (pos < end && "fFdD".indexOf(value.charAt(pos)) > -1) pos++;
+		if (pos != end) return defaultValue;
+		
+		// Fast path, both the mantissa and the power of ten are exact floats so a single operation is correctly rounded
+		int scale = exponent - fractionDigits;
+		if (significantDigits <= 7 && mantissa <= (1 << 24) && scale >= -10 && scale <= 10)
+		{
+			float result = scale < 0 ? (float)mantissa / ScriptCore.FLOAT_POWERS_OF_TEN[-scale] : (float)mantissa * ScriptCore.FLOAT_POWERS_OF_TEN[scale];
+			return negative ? -result : result;
+		}
+		
+		// The text is a valid float so this can't throw
+		return Float.parseFloat(value.substring(start, end));
+	}
+	
+	/**
+	 * Check that the text following a 0x prefix is a hexadecimal float as accepted by Float.parseFloat, that is
+	 * [hexdigits][.hexdigits]p[sign]digits[fFdD] with at least one hex digit
+	 */
+	private static boolean isHexFloat(String value, int pos, int end)
+	{
+		int digits = 0;
+		boolean point = false;
+		
+		for (; pos < end; pos++)
+		{
+			char c = value.charAt(pos);
+			if (Character.digit(c, 16) > -1 && c < 0x80) digits++;
+			else if (c == '.' && !point) point = true;
+			else break;
+		}
+		
+		if (digits == 0 || pos == end || (value.charAt(pos) | 0x20) != 'p') return false;
+		
+		pos++;
+		if (pos < end && (value.charAt(pos) == '-' || value.charAt(pos) == '+')) pos++;
+		
+		int exponentDigits = 0;
+		for (; pos < end && value.charAt(pos) >= '0' && value.charAt(pos) <= '9'; pos++) exponentDigits++;
+		
+		if (pos < end && "fFdD".indexOf(value.charAt(pos)) > -1) pos++;
+		return exponentDigits > 0 && pos == end;
+	}
+	
+	/**
+	 * Powers of ten which are exactly representable as floats
+	 */
+	private static final float[] FLOAT_POWERS_OF_TEN = { 1E0F, 1E1F, 1E2F, 1E3F, 1E4F, 1E5F, 1E6F, 1E7F, 1E8F, 1E9F, 1E10F };
+	
+	/**
+	 * Parse a decimal integer in the specified range without allocating or throwing, commas are skipped and
+	 * surrounding whitespace is ignored. Accumulates negatively in the same way as Long.parseLong so that the
+	 * minimum value can be parsed.
+	 * 
+	 * @param value
+	 * @param minValue
+	 * @param maxValue
+	 * @param defaultValue
+	 * @return
+	 */
+	private static long parseIntegral(String value, long minValue, long maxValue, long defaultValue)
+	{
+		if (value == null) return defaultValue;
+		
+		int end = value.length(), pos = 0;
+		while (pos < end && value.charAt(pos) <= ' ') pos++;
+		while (end > pos && value.charAt(end - 1) <= ' ') end--;
+		
+		long limit = -maxValue;
+		long result = 0;
+		boolean negative = false, signAllowed = true, digits = false;
+		
+		for (; pos < end; pos++)
+		{
+			char c = value.charAt(pos);
+			if (c == ',') continue;
+			
+			if (signAllowed && (c == '-' || c == '+'))
+			{
+				negative = c == '-';
+				if (negative) limit = minValue;
+				signAllowed = false;
+				continue;
+			}
+			
+			signAllowed = false;
+			int digit = Character.digit(c, 10);
+			if (digit < 0 || result < limit / 10) return defaultValue;
+			
+			result *= 10;
+			if (result < limit + digit) return defaultValue;
+			result -= digit;
+			digits = true;
+		}
+		
+		if (!digits) return defaultValue;
+		return negative ? result : -result;
 	}
 	
 	public static int tryParseIntOffset(String value, int defaultValue, int source)
@@ -461,7 +732,8 @@ public final class ScriptCore
 	}
 	
 	/**
-	 * Tokenise a delimited string into multiple strings
+	 * Tokenise a delimited string into multiple strings, see {@link ScriptTokenizer} for a version which
+	 * avoids materialising every parameter
 	 * 
 	 * @param text
 	 * @param separator
@@ -469,96 +741,7 @@ public final class ScriptCore
 	 */
 	public static final String[] tokenize(String text, char separator, char firstParamQuote, char otherParamsQuote, char escape, StringBuilder rawString)
 	{
-		// Array which will contain params as we parse them
-		ArrayList<String> params = new ArrayList<String>();
-		
-		// Current parameter as we build it
-		StringBuilder currentParam = new StringBuilder();
-		boolean escaped = false;
-		boolean quoted = false;
-		boolean emptyParam = true;
-		char quote = firstParamQuote;
-		
-		// This looks horrible but is quicker and more reliable than regex for this purpose
-		for (int charPos = 0; charPos < text.length(); charPos++)
-		{
-			char currentChar = text.charAt(charPos);
-			
-			if (currentChar == escape)
-			{
-				escaped = true;
-			}
-			else if (currentChar == quote)
-			{
-				if (escaped)
-				{
-					escaped = false;
-					currentParam.append(currentChar);
-					emptyParam = false;
-				}
-				else if ((currentParam.length() == 0 || currentParam.toString().matches("^\\s+$")) && !quoted)
-				{
-					currentParam = new StringBuilder();
-					quoted = true;
-					emptyParam = false;
-				}
-				else if (quoted)
-				{
-					quoted = false;
-				}
-				else
-				{
-					currentParam.append(currentChar);
-					emptyParam = false;
-				}
-			}
-			else if (currentChar == separator)
-			{
-				if (escaped)
-				{
-					escaped = false;
-					currentParam.append(currentChar);
-					emptyParam = false;
-				}
-				else if (quoted)
-				{
-					currentParam.append(currentChar);
-					emptyParam = false;
-				}
-				else
-				{
-					quote = otherParamsQuote; // follow on params
-					params.add(currentParam.toString());
-					if (rawString != null) rawString.append(" ").append(currentParam);
-					currentParam = new StringBuilder();
-					emptyParam = true;
-				}
-			}
-			else
-			{
-				if (escaped)
-				{
-					escaped = false;
-					currentParam.append(escape);
-				}
-				
-				currentParam.append(currentChar);
-				emptyParam = false;
-			}
-		}
-		
-		// Append any remaining characters to the params array, if the param ends with a separator then add an empty entry
-		if (!emptyParam)
-		{
-			params.add(currentParam.toString());
-			if (rawString != null) rawString.append(" ").append(currentParam);
-		}
-		else if (text.length() > 0 && text.endsWith(String.valueOf(separator)))
-		{
-			params.add("");
-		}
-		
-		return params.toArray(new String[0]);
+		return new ScriptTokenizer(separator, firstParamQuote, otherParamsQuote, escape).tokenize(text).toArray(rawString);
 	}
 
 	public String highlight(String text)
@@ -568,6 +751,6 @@ public final class ScriptCore
 	
 	public String highlight(String text, String prefix, String suffix)
 	{
-		return this.actionRegex.matcher(text).replaceAll(prefix + "$1" + suffix + "$2");
+		return this.actionNames.highlight(text, prefix, suffix);
 	}
 }
@@ -0,0 +1,409 @@
+package net.eq2online.macros.scripting;
+
+/**
+ * Cursor-style tokeniser for delimited parameter strings. Rather than building a new string for every
+ * parameter, tokenize() records the boundaries of each parameter as offsets into the source text in a
+ * set of reusable buffers, callers can then materialise only the parameters they actually need. A single
+ * instance can be reused for any number of calls but is not thread-safe.
+ *
+ * The parsing rules are identical to those of {@link ScriptCore#tokenize}, which is implemented on top of
+ * this class.
+ *
+ * @author Adam Mummery-Smith
+ */
+public final class ScriptTokenizer
+{
+	private final char separator;
+
+	private final char firstParamQuote;
+
+	private final char otherParamsQuote;
+
+	private final char escape;
+
+	/**
+	 * Text which was most recently tokenised
+	 */
+	private CharSequence text;
+
+	/**
+	 * Number of parameters found in the text
+	 */
+	private int count;
+
+	/**
+	 * Offset of the first source character of each parameter
+	 */
+	private int[] starts = new int[8];
+
+	/**
+	 * Offset after the last source character of each parameter (excluding the separator)
+	 */
+	private int[] ends = new int[8];
+
+	/**
+	 * Start of the parameter's content if the content is a contiguous run of source characters, or -1 if
+	 * the content is empty or must be decoded (because it contains escapes or closed quotes)
+	 */
+	private int[] contentStarts = new int[8];
+
+	/**
+	 * End of the contiguous content run, valid only where contentStarts is not -1
+	 */
+	private int[] contentEnds = new int[8];
+
+	/**
+	 * True if the parameter content needs to be decoded from its source range
+	 */
+	private boolean[] decode = new boolean[8];
+
+	/**
+	 * True if the final parameter is the implicit empty parameter which follows a trailing separator
+	 */
+	private boolean trailingEmpty;
+
+	/**
+	 * Reusable buffer for decoding non-contiguous parameters
+	 */
+	private final StringBuilder decodeBuffer = new StringBuilder();
+
+	public ScriptTokenizer(char separator, char firstParamQuote, char otherParamsQuote, char escape)
+	{
+		this.separator        = separator;
+		this.firstParamQuote  = firstParamQuote;
+		this.otherParamsQuote = otherParamsQuote;
+		this.escape           = escape;
+	}
+
+	/**
+	 * Tokenise the supplied text, replacing the results of any previous call
+	 *
+	 * @param text
+	 * @return fluent interface
+	 */
+	public ScriptTokenizer tokenize(CharSequence text)
+	{
+		this.text = text;
+		this.count = 0;
+		this.trailingEmpty = false;
+
+		int length = text.length();
+		int paramStart = 0;
+		int contentStart = -1, contentEnd = -1;
+		boolean contiguous = true;
+		boolean whitespaceOnly = true;
+		boolean escaped = false;
+		boolean quoted = false;
+		boolean emptyParam = true;
+		char quote = this.firstParamQuote;
+
+		for (int charPos = 0; charPos < length; charPos++)
+		{
+			char currentChar = text.charAt(charPos);
+			int appendFrom = -1;
+
+			if (currentChar == this.escape)
+			{
+				escaped = true;
+			}
+			else if (currentChar == quote)
+			{
+				if (escaped)
+				{
+					escaped = false;
+					appendFrom = charPos;
+				}
+				else if (whitespaceOnly && !quoted)
+				{
+					contentStart = -1;
+					contiguous = true;
+					whitespaceOnly = true;
+					quoted = true;
+					emptyParam = false;
+				}
+				else if (quoted)
+				{
+					quoted = false;
+				}
+				else
+				{
+					appendFrom = charPos;
+				}
+			}
+			else if (currentChar == this.separator)
+			{
+				if (escaped || quoted)
+				{
+					escaped = false;
+					appendFrom = charPos;
+				}
+				else
+				{
+					quote = this.otherParamsQuote; // follow on params
+					this.add(paramStart, charPos, contiguous ? contentStart : -1, contentEnd, !contiguous);
+					paramStart = charPos + 1;
+					contentStart = -1;
+					contiguous = true;
+					whitespaceOnly = true;
+					emptyParam = true;
+				}
+			}
+			else
+			{
+				appendFrom = charPos;
+
+				if (escaped)
+				{
+					escaped = false;
+					appendFrom = charPos - 1;
+					whitespaceOnly &= ScriptTokenizer.isWhitespace(this.escape);
+				}
+			}
+
+			if (appendFrom > -1)
+			{
+				emptyParam = false;
+				whitespaceOnly &= ScriptTokenizer.isWhitespace(currentChar);
+
+				if (contentStart < 0)
+				{
+					contentStart = appendFrom;
+				}
+				else if (contentEnd != appendFrom)
+				{
+					contiguous = false;
+				}
+
+				contentEnd = charPos + 1;
+			}
+		}
+
+		// Append any remaining characters to the params, if the text ends with a separator then add an empty entry
+		if (!emptyParam)
+		{
+			this.add(paramStart, length, contiguous ? contentStart : -1, contentEnd, !contiguous);
+		}
+		else if (length > 0 && text.charAt(length - 1) == this.separator)
+		{
+			this.add(length, length, -1, -1, false);
+			this.trailingEmpty = true;
+		}
+
+		return this;
+	}
+
+	private void add(int start, int end, int contentStart, int contentEnd, boolean decode)
+	{
+		if (this.count == this.starts.length)
+		{
+			int newSize = this.count * 2;
+			this.starts        = ScriptTokenizer.grow(this.starts, newSize);
+			this.ends          = ScriptTokenizer.grow(this.ends, newSize);
+			this.contentStarts = ScriptTokenizer.grow(this.contentStarts, newSize);
+			this.contentEnds   = ScriptTokenizer.grow(this.contentEnds, newSize);
+			boolean[] newDecode = new boolean[newSize];
+			System.arraycopy(this.decode, 0, newDecode, 0, this.count);
+			this.decode = newDecode;
+		}
+
+		this.starts[this.count]        = start;
+		this.ends[this.count]          = end;
+		this.contentStarts[this.count] = contentStart;
+		this.contentEnds[this.count]   = contentEnd;
+		this.decode[this.count]        = decode;
+		this.count++;
+	}
+
+	/**
+	 * Get the number of parameters found by the last call to tokenize()
+	 */
+	public int getCount()
+	{
+		return this.count;
+	}
+
+	/**
+	 * Get the offset in the source text of the first character of the specified parameter
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getStart(int index)
+	{
+		this.checkIndex(index);
+		return this.starts[index];
+	}
+
+	/**
+	 * Get the offset in the source text after the last character of the specified parameter, this does not
+	 * include the separator
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getEnd(int index)
+	{
+		this.checkIndex(index);
+		return this.ends[index];
+	}
+
+	/**
+	 * Get the length of the specified parameter once quotes and escapes have been processed
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getLength(int index)
+	{
+		this.checkIndex(index);
+		if (this.decode[index]) return this.decode(index).length();
+		return this.contentStarts[index] < 0 ? 0 : this.contentEnds[index] - this.contentStarts[index];
+	}
+
+	/**
+	 * Append the specified parameter to the supplied buffer
+	 *
+	 * @param index
+	 * @param buffer
+	 * @return the supplied buffer
+	 */
+	public StringBuilder appendParam(int index, StringBuilder buffer)
+	{
+		this.checkIndex(index);
+
+		if (this.decode[index])
+		{
+			return buffer.append(this.decode(index));
+		}
+
+		if (this.contentStarts[index] > -1)
+		{
+			buffer.append(this.text, this.contentStarts[index], this.contentEnds[index]);
+		}
+
+		return buffer;
+	}
+
+	/**
+	 * Materialise the specified parameter as a string
+	 *
+	 * @param index
+	 * @return
+	 */
+	public String getParam(int index)
+	{
+		this.checkIndex(index);
+
+		if (this.decode[index])
+		{
+			return this.decode(index).toString();
+		}
+
+		return this.contentStarts[index] < 0 ? "" : this.text.subSequence(this.contentStarts[index], this.contentEnds[index]).toString();
+	}
+
+	/**
+	 * Materialise all parameters, appending each parameter to rawString (if not null) preceded by a space
+	 *
+	 * @param rawString
+	 * @return
+	 */
+	public String[] toArray(StringBuilder rawString)
+	{
+		String[] params = new String[this.count];
+
+		for (int index = 0; index < this.count; index++)
+		{
+			params[index] = this.getParam(index);
+
+			if (rawString != null && !(this.trailingEmpty && index == this.count - 1))
+			{
+				rawString.append(" ").append(params[index]);
+			}
+		}
+
+		return params;
+	}
+
+	/**
+	 * Decode a parameter whose content is not a contiguous run of source characters into the reusable buffer
+	 *
+	 * @param index
+	 * @return
+	 */
+	private StringBuilder decode(int index)
+	{
+		StringBuilder currentParam = this.decodeBuffer;
+		currentParam.setLength(0);
+
+		char quote = index == 0 ? this.firstParamQuote : this.otherParamsQuote;
+		boolean whitespaceOnly = true;
+		boolean escaped = false;
+		boolean quoted = false;
+
+		for (int charPos = this.starts[index]; charPos < this.ends[index]; charPos++)
+		{
+			char currentChar = this.text.charAt(charPos);
+
+			if (currentChar == this.escape)
+			{
+				escaped = true;
+			}
+			else if (currentChar == quote && !escaped)
+			{
+				if (whitespaceOnly && !quoted)
+				{
+					currentParam.setLength(0);
+					quoted = true;
+				}
+				else if (quoted)
+				{
+					quoted = false;
+				}
+				else
+				{
+					currentParam.append(currentChar);
+					whitespaceOnly = false;
+				}
+			}
+			else
+			{
+				// Separators inside the range are always escaped or quoted, so are appended like any other char
+				if (escaped && currentChar != quote && currentChar != this.separator)
+				{
+					currentParam.append(this.escape);
+					whitespaceOnly &= ScriptTokenizer.isWhitespace(this.escape);
+				}
+
+				escaped = false;
+				currentParam.append(currentChar);
+				whitespaceOnly &= ScriptTokenizer.isWhitespace(currentChar);
+			}
+		}
+
+		return currentParam;
+	}
+
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= this.count)
+		{
+			throw new IndexOutOfBoundsException("Parameter index " + index + " out of range, " + this.count + " parameter(s)");
+		}
+	}
+
+	/**
+	 * Whitespace as defined by the regex \s character class
+	 */
+	private static boolean isWhitespace(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private static int[] grow(int[] array, int newSize)
+	{
+		int[] newArray = new int[newSize];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+}
@@ -0,0 +1,372 @@
+package net.eq2online.macros.scripting;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import net.eq2online.console.Log;
+import net.eq2online.macros.scripting.api.IScriptAction;
+
+/**
+ * Base documentor which reads and writes the documentation XML with StAX rather than building a DOM. When a
+ * language is loaded the file is only opened, entries are read from the stream the first time they are asked
+ * for and the reader is left where it stopped, so each file is read at most once and only as far as the
+ * entries which have actually been requested. Implementations supply the source of the XML and the entry
+ * objects themselves.
+ *
+ * Entries are read from the layout written by the DOM documentor without depending on its element names.
+ * Every element directly below the root element is an entry. Its name, hidden flag, usage, description and
+ * return type are taken from attributes or child elements with those names, matched without regard to case.
+ * "desc", "return" and "returntype" are also accepted. Child elements may contain markup, the text of nested
+ * elements is included and br elements become line breaks. The writer emits the layout described by the
+ * element constants below.
+ *
+ * @author Adam Mummery-Smith
+ */
+public abstract class StreamingDocumentor implements IDocumentor
+{
+	protected static final String ELEMENT_ROOT = "scriptactions";
+
+	protected static final String ELEMENT_ACTION = "action";
+
+	protected static final String ELEMENT_USAGE = "usage";
+
+	protected static final String ELEMENT_DESCRIPTION = "description";
+
+	protected static final String ELEMENT_RETURNS = "returns";
+
+	protected static final String ATTRIBUTE_NAME = "name";
+
+	protected static final String ATTRIBUTE_HIDDEN = "hidden";
+
+	private static final String ELEMENT_BREAK = "br";
+
+	private static final int FIELD_NAME = 0, FIELD_USAGE = 1, FIELD_DESCRIPTION = 2, FIELD_RETURNS = 3, FIELD_HIDDEN = 4, FIELDS = 5;
+
+	/**
+	 * Entry fields, keyed by lower case attribute or element name
+	 */
+	private static final Map<String, Integer> fieldNames = new HashMap<String, Integer>();
+
+	private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+	private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+	static
+	{
+		StreamingDocumentor.inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		StreamingDocumentor.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		StreamingDocumentor.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+
+		StreamingDocumentor.fieldNames.put(StreamingDocumentor.ATTRIBUTE_NAME, StreamingDocumentor.FIELD_NAME);
+		StreamingDocumentor.fieldNames.put(StreamingDocumentor.ELEMENT_USAGE, StreamingDocumentor.FIELD_USAGE);
+		StreamingDocumentor.fieldNames.put(StreamingDocumentor.ELEMENT_DESCRIPTION, StreamingDocumentor.FIELD_DESCRIPTION);
+		StreamingDocumentor.fieldNames.put("desc", StreamingDocumentor.FIELD_DESCRIPTION);
+		StreamingDocumentor.fieldNames.put(StreamingDocumentor.ELEMENT_RETURNS, StreamingDocumentor.FIELD_RETURNS);
+		StreamingDocumentor.fieldNames.put("return", StreamingDocumentor.FIELD_RETURNS);
+		StreamingDocumentor.fieldNames.put("returntype", StreamingDocumentor.FIELD_RETURNS);
+		StreamingDocumentor.fieldNames.put(StreamingDocumentor.ATTRIBUTE_HIDDEN, StreamingDocumentor.FIELD_HIDDEN);
+	}
+
+	/**
+	 * Entries read so far and entries appended for registered actions, keyed by lower case action name
+	 */
+	private final Map<String, IDocumentationEntry> entries = new LinkedHashMap<String, IDocumentationEntry>();
+
+	/**
+	 * Stream the current language is being read from, null once the whole file has been read
+	 */
+	private InputStream inputStream;
+
+	private XMLStreamReader reader;
+
+	/**
+	 * Element depth the reader is at, entries are read from depth 2
+	 */
+	private int depth;
+
+	/**
+	 * Open the documentation XML for the specified language
+	 *
+	 * @param language
+	 * @return stream to read from or null if there is no documentation for the language
+	 * @throws IOException
+	 */
+	protected abstract InputStream openXml(String language) throws IOException;
+
+	/**
+	 * Create a documentation entry
+	 *
+	 * @param name
+	 * @param usage
+	 * @param description
+	 * @param returnType
+	 * @param hidden
+	 * @return
+	 */
+	protected abstract IDocumentationEntry createEntry(String name, String usage, String description, String returnType, boolean hidden);
+
+	@Override
+	public synchronized IDocumentor loadXml(String language)
+	{
+		this.close();
+		this.entries.clear();
+
+		try
+		{
+			this.inputStream = this.openXml(language);
+
+			if (this.inputStream != null)
+			{
+				synchronized (StreamingDocumentor.inputFactory)
+				{
+					this.reader = StreamingDocumentor.inputFactory.createXMLStreamReader(this.inputStream);
+				}
+
+				this.depth = 0;
+			}
+		}
+		catch (Exception ex)
+		{
+			Log.info("Error opening documentation for language {0}: {1}", language, ex.getMessage());
+			this.close();
+		}
+
+		return this;
+	}
+
+	@Override
+	public synchronized void writeXml(File xmlFile)
+	{
+		this.readRemaining();
+
+		OutputStream outputStream = null;
+		XMLStreamWriter writer = null;
+
+		try
+		{
+			outputStream = new FileOutputStream(xmlFile);
+
+			synchronized (StreamingDocumentor.outputFactory)
+			{
+				writer = StreamingDocumentor.outputFactory.createXMLStreamWriter(outputStream, "UTF-8");
+			}
+
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement(StreamingDocumentor.ELEMENT_ROOT);
+
+			for (IDocumentationEntry entry : this.entries.values())
+			{
+				writer.writeCharacters("\n    ");
+				writer.writeStartElement(StreamingDocumentor.ELEMENT_ACTION);
+				writer.writeAttribute(StreamingDocumentor.ATTRIBUTE_NAME, entry.getName());
+				if (entry.isHidden()) writer.writeAttribute(StreamingDocumentor.ATTRIBUTE_HIDDEN, "true");
+				StreamingDocumentor.writeElement(writer, StreamingDocumentor.ELEMENT_USAGE, entry.getUsage());
+				StreamingDocumentor.writeElement(writer, StreamingDocumentor.ELEMENT_DESCRIPTION, entry.getDescription());
+				StreamingDocumentor.writeElement(writer, StreamingDocumentor.ELEMENT_RETURNS, entry.getReturnType());
+				writer.writeCharacters("\n    ");
+				writer.writeEndElement();
+			}
+
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.flush();
+		}
+		catch (Exception ex)
+		{
+			Log.printStackTrace(ex);
+		}
+		finally
+		{
+			if (writer != null) try { writer.close(); } catch (XMLStreamException ex) {}
+			if (outputStream != null) try { outputStream.close(); } catch (IOException ex) {}
+		}
+	}
+
+	private static void writeElement(XMLStreamWriter writer, String elementName, String text) throws XMLStreamException
+	{
+		writer.writeCharacters("\n        ");
+		writer.writeStartElement(elementName);
+		writer.writeCharacters(text != null ? text : "");
+		writer.writeEndElement();
+	}
+
+	@Override
+	public synchronized IDocumentationEntry getDocumentation(String scriptActionName)
+	{
+		String key = scriptActionName.toLowerCase();
+		IDocumentationEntry entry = this.entries.get(key);
+
+		while (entry == null && this.reader != null)
+		{
+			this.readNextEntry();
+			entry = this.entries.get(key);
+		}
+
+		return entry;
+	}
+
+	@Override
+	public IDocumentationEntry getDocumentation(IScriptAction scriptAction)
+	{
+		return this.getDocumentation(scriptAction.toString());
+	}
+
+	@Override
+	public void setDocumentation(IScriptAction scriptAction)
+	{
+		// Entries are looked up when they are requested, there is nothing to bind up front
+	}
+
+	@Override
+	public synchronized void appendScriptActionNode(IScriptAction scriptAction)
+	{
+		if (this.getDocumentation(scriptAction) == null)
+		{
+			String name = scriptAction.toString();
+			this.entries.put(name.toLowerCase(), this.createEntry(name, name, "", "", false));
+		}
+	}
+
+	/**
+	 * Read all entries which have not been read yet
+	 */
+	protected synchronized void readRemaining()
+	{
+		while (this.reader != null)
+		{
+			this.readNextEntry();
+		}
+	}
+
+	/**
+	 * Read the next entry element from the stream and store the entry, closes the stream at the end of the
+	 * document or if an error occurs
+	 *
+	 * @return the entry read or null if no entry was read
+	 */
+	private IDocumentationEntry readNextEntry()
+	{
+		try
+		{
+			while (this.reader.hasNext())
+			{
+				int event = this.reader.next();
+
+				if (event == XMLStreamConstants.END_ELEMENT)
+				{
+					this.depth--;
+				}
+				else if (event == XMLStreamConstants.START_ELEMENT && ++this.depth == 2)
+				{
+					IDocumentationEntry entry = this.readEntry();
+					this.depth--;
+
+					if (entry != null)
+					{
+						String key = entry.getName().toLowerCase();
+						if (!this.entries.containsKey(key)) this.entries.put(key, entry);
+						return entry;
+					}
+				}
+			}
+		}
+		catch (XMLStreamException ex)
+		{
+			Log.info("Error reading documentation: {0}", ex.getMessage());
+		}
+
+		this.close();
+		return null;
+	}
+
+	/**
+	 * Read the entry element the reader is positioned on, leaves the reader on the element's end tag
+	 */
+	private IDocumentationEntry readEntry() throws XMLStreamException
+	{
+		String[] fields = new String[StreamingDocumentor.FIELDS];
+
+		for (int index = 0; index < this.reader.getAttributeCount(); index++)
+		{
+			Integer field = StreamingDocumentor.fieldNames.get(this.reader.getAttributeLocalName(index).toLowerCase());
+			if (field != null) fields[field] = this.reader.getAttributeValue(index);
+		}
+
+		for (int event = this.reader.next(); event != XMLStreamConstants.END_ELEMENT; event = this.reader.next())
+		{
+			if (event == XMLStreamConstants.START_ELEMENT)
+			{
+				Integer field = StreamingDocumentor.fieldNames.get(this.reader.getLocalName().toLowerCase());
+				String text = this.readText();
+				if (field != null) fields[field] = text;
+			}
+		}
+
+		String name = fields[StreamingDocumentor.FIELD_NAME] != null ? fields[StreamingDocumentor.FIELD_NAME].trim() : "";
+		if (name.length() == 0) return null;
+
+		return this.createEntry(name,
+				StreamingDocumentor.valueOf(fields[StreamingDocumentor.FIELD_USAGE]),
+				StreamingDocumentor.valueOf(fields[StreamingDocumentor.FIELD_DESCRIPTION]),
+				StreamingDocumentor.valueOf(fields[StreamingDocumentor.FIELD_RETURNS]),
+				"true".equalsIgnoreCase(StreamingDocumentor.valueOf(fields[StreamingDocumentor.FIELD_HIDDEN]).trim()));
+	}
+
+	/**
+	 * Read the text content of the element the reader is positioned on including the text of any nested
+	 * elements, leaves the reader on the element's end tag
+	 */
+	private String readText() throws XMLStreamException
+	{
+		StringBuilder text = new StringBuilder();
+
+		for (int level = 1; level > 0; )
+		{
+			int event = this.reader.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT)
+			{
+				level++;
+				if (StreamingDocumentor.ELEMENT_BREAK.equalsIgnoreCase(this.reader.getLocalName())) text.append('\n');
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT)
+			{
+				level--;
+			}
+			else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE || event == XMLStreamConstants.ENTITY_REFERENCE)
+			{
+				text.append(this.reader.getText());
+			}
+		}
+
+		return text.toString();
+	}
+
+	private static String valueOf(String field)
+	{
+		return field != null ? field : "";
+	}
+
+	private void close()
+	{
+		if (this.reader != null) try { this.reader.close(); } catch (XMLStreamException ex) {}
+		if (this.inputStream != null) try { this.inputStream.close(); } catch (IOException ex) {}
+		this.reader = null;
+		this.inputStream = null;
+	}
+}
@@ -1,7 +1,6 @@
 package net.eq2online.macros.scripting;
 
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.eq2online.macros.scripting.api.IArrayProvider;
@@ -53,10 +52,30 @@ public class Variable
 	public static final Pattern arrayVariablePattern = Pattern.compile("\\[([0-9]{1,5})\\]$");
 	
 	/**
-	 * If this variable is an array, this is the reference to the array provider
+	 * If this variable is an array, this is the reference to the array provider, resolved on first use
 	 */
 	private IArrayProvider arrayProvider;
 	
+	/**
+	 * True once the array provider has been resolved
+	 */
+	private boolean arrayProviderResolved;
+	
+	/**
+	 * Array providers to search if the primary provider doesn't have the array
+	 */
+	private final List<IArrayProvider> arrayProviders;
+	
+	/**
+	 * Parsed variable name
+	 */
+	private final VariableHandle handle;
+	
+	/**
+	 * True if the variable was specified or requested as an array
+	 */
+	private final boolean array;
+	
 	/**
 	 * Reference to the macro  
 	 */
@@ -97,59 +116,65 @@ public class Variable
 	 */
 	public int arrayOffset = -1;
 
-	private Variable(IVariableProvider variableProvider, List<IArrayProvider> arrayProviders, IMacro macro, String sharedPrefix, String typePrefix, String variableName, String arrayFormat, String arrayIndex, boolean array)
+	private Variable(IVariableProvider variableProvider, List<IArrayProvider> arrayProviders, IMacro macro, VariableHandle handle, boolean array)
 	{
 		this.variableProvider = variableProvider;
+		this.arrayProviders   = arrayProviders;
 		this.macro            = macro;
-		this.isShared         = sharedPrefix.equals(PREFIX_SHARED);
-		this.prefix           = typePrefix;
-		this.variableName     = variableName;
-		this.qualifiedName    = typePrefix + variableName;
-		
-		if (this.prefix.equals(PREFIX_INT)) this.type = Type.Counter;
-		else if (this.prefix.equals(PREFIX_STRING)) this.type = Type.String;
+		this.handle           = handle;
+		this.array            = handle.hasArrayIndex || array;
+		this.isShared         = handle.isShared;
+		this.prefix           = handle.prefix;
+		this.variableName     = handle.variableName;
+		this.qualifiedName    = handle.qualifiedName;
+		this.type             = handle.type;
 		
-		if (arrayFormat != null || array)
+		if (handle.arrayIndex > -1)
 		{
-			if (this.isShared)
-			{
-				if (this.variableProvider instanceof IArrayProvider)
-				{
-					this.arrayProvider = (IArrayProvider)this.variableProvider;
-				}
-			}
-			else
-			{
-				this.arrayProvider = this.macro.getArrayProvider();
-			}
+			this.arrayOffset = handle.arrayIndex;
+		}
+		else if (array)
+		{
+			this.arrayOffset = 0;
+		}
+	}
+	
+	/**
+	 * Get the array provider for this variable, resolving it if this is the first access
+	 */
+	private IArrayProvider getArrayProvider()
+	{
+		if (!this.arrayProviderResolved)
+		{
+			this.arrayProviderResolved = true;
 			
-			if (this.arrayProvider == null || !this.arrayProvider.checkArrayExists(this.qualifiedName))
+			if (this.array)
 			{
-				for (IArrayProvider otherProvider : arrayProviders)
+				IArrayProvider primary = null;
+				
+				if (this.isShared)
 				{
-					if (otherProvider.checkArrayExists(this.qualifiedName))
+					if (this.variableProvider instanceof IArrayProvider)
 					{
-						this.arrayProvider = otherProvider;
-						break;
+						primary = (IArrayProvider)this.variableProvider;
 					}
 				}
+				else
+				{
+					primary = this.macro.getArrayProvider();
+				}
+				
+				this.arrayProvider = this.handle.resolveArrayProvider(primary, this.arrayProviders);
 			}
 		}
-
-		if (arrayFormat != null && arrayIndex != null)
-		{
-			this.arrayOffset = Math.max(0, Integer.parseInt(arrayIndex));
-		}
-		else if (array)
-		{
-			this.arrayOffset = 0;
-		}
+		
+		return this.arrayProvider;
 	}
 	
 	@Override
 	public String toString()
 	{
-		return String.format("Variable(%s)[%s] %s",  this.qualifiedName, this.arrayOffset, this.arrayProvider);
+		return String.format("Variable(%s)[%s] %s",  this.qualifiedName, this.arrayOffset, this.getArrayProvider());
 	}
 	
 	/**
@@ -157,7 +182,7 @@ public class Variable
 	 */
 	public boolean isArray()
 	{
-		return this.arrayProvider != null && this.arrayOffset > -1;
+		return this.getArrayProvider() != null && this.arrayOffset > -1;
 	}
 	
 	/**
@@ -321,20 +346,15 @@ public class Variable
 	 */
 	private static Variable getVariable(IVariableProvider variableProvider, List<IArrayProvider> arrayProviders, IMacro macro, String variableName, boolean assumeArray)
 	{
-		Matcher var = variableNamePattern.matcher(variableName);
+		VariableHandle handle = VariableHandle.get(variableName);
 		
-		if (var.matches())
-		{                                                                // shared     // type       // name       // array []   // array index
-			return new Variable(variableProvider, arrayProviders, macro, var.group(1), var.group(2), var.group(3), var.group(5), var.group(6), assumeArray);
+		if (handle.isValid)
+		{
+			return new Variable(variableProvider, arrayProviders, macro, handle, assumeArray);
 		}
-		else if (assumeArray && Variable.couldBeArraySpecifier(variableName))
+		else if (assumeArray && handle.getArraySpecifier() != null)
 		{
-			var = variableNamePattern.matcher(getValidVariableOrArraySpecifier(variableName));
-			
-			if (var.matches())
-			{                                                                // shared     // type       // name       // array []   // array index
-				return new Variable(variableProvider, arrayProviders, macro, var.group(1), var.group(2), var.group(3), var.group(5), var.group(6), assumeArray);
-			}
+			return new Variable(variableProvider, arrayProviders, macro, handle.getArraySpecifier(), assumeArray);
 		}
 		
 		return null;
@@ -348,7 +368,7 @@ public class Variable
 	 */
 	public static final boolean isValidVariableName(String variableName)
 	{
-		return variableNamePattern.matcher(variableName).matches();
+		return VariableHandle.get(variableName).isValid;
 	}
 
 	/**
@@ -359,8 +379,8 @@ public class Variable
 	 */
 	public static final boolean isValidScalarVariableName(String variableName)
 	{
-		Matcher matcher = variableNamePattern.matcher(variableName);
-		return matcher.matches() && matcher.group(5) == null;
+		VariableHandle handle = VariableHandle.get(variableName);
+		return handle.isValid && !handle.hasArrayIndex;
 	}
 
 	public static boolean isValidVariableOrArraySpecifier(String variableName)
@@ -422,41 +442,41 @@ public class Variable
 
 	public void arrayPush(String value)
 	{
-		if (this.arrayProvider != null) this.arrayProvider.push(this.qualifiedName, value);
+		if (this.getArrayProvider() != null) this.arrayProvider.push(this.qualifiedName, value);
 	}
 
 	public void arrayPut(String value)
 	{
-		if (this.arrayProvider != null) this.arrayProvider.put(this.qualifiedName, value);
+		if (this.getArrayProvider() != null) this.arrayProvider.put(this.qualifiedName, value);
 	}
 
 	public String arrayPop()
 	{
-		return (this.arrayProvider != null) ? this.arrayProvider.pop(this.qualifiedName) : IStringProvider.EMPTY;
+		return (this.getArrayProvider() != null) ? this.arrayProvider.pop(this.qualifiedName) : IStringProvider.EMPTY;
 	}
 
 	public int arrayIndexOf(String search, boolean caseSensitive)
 	{
-		return (this.arrayProvider != null) ? this.arrayProvider.indexOf(this.qualifiedName, search, caseSensitive) : IArrayProvider.MISSING;
+		return (this.getArrayProvider() != null) ? this.arrayProvider.indexOf(this.qualifiedName, search, caseSensitive) : IArrayProvider.MISSING;
 	}
 
 	public void arrayClear()
 	{
-		if (this.arrayProvider != null) this.arrayProvider.clear(this.qualifiedName);
+		if (this.getArrayProvider() != null) this.arrayProvider.clear(this.qualifiedName);
 	}
 
 	public Object arrayGetValue(int offset)
 	{
-		return (this.arrayProvider != null) ? this.arrayProvider.getArrayVariableValue(this.qualifiedName, offset) : null;
+		return (this.getArrayProvider() != null) ? this.arrayProvider.getArrayVariableValue(this.qualifiedName, offset) : null;
 	}
 
 	public int arrayGetMaxIndex()
 	{
-		return (this.arrayProvider != null) ? this.arrayProvider.getMaxArrayIndex(this.qualifiedName) : -1;
+		return (this.getArrayProvider() != null) ? this.arrayProvider.getMaxArrayIndex(this.qualifiedName) : -1;
 	}
 
 	public boolean arrayExists()
 	{
-		return (this.arrayProvider != null) ? this.arrayProvider.checkArrayExists(this.qualifiedName) : false;
+		return (this.getArrayProvider() != null) ? this.arrayProvider.checkArrayExists(this.qualifiedName) : false;
 	}
 }
\ No newline at end of file
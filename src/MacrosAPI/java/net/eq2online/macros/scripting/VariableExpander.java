@@ -1,5 +1,10 @@
 package net.eq2online.macros.scripting;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -9,7 +14,8 @@ import net.eq2online.macros.scripting.api.IScriptActionProvider;
 /**
  * This class is used to provide variable replacement inside strings, it accepts a text template and a variable provider
  * and uses the variable provider to replace strings in the template in the form %varname%. Owners can then call toString()
- * to retrieve the resultant text
+ * to retrieve the resultant text. Templates are parsed once into literal and variable segments and the parsed form
+ * is cached per template string, so applying the same template repeatedly only costs a single render pass.
  *
  * @author Adam Mummery-Smith
  */
@@ -37,6 +43,42 @@ public class VariableExpander
 
 	private final String defaultStringValue;
 	
+	/**
+	 * Buffer the template is rendered into, reused on each call to apply()
+	 */
+	private final StringBuilder buffer = new StringBuilder();
+	
+	/**
+	 * Values of the distinct variables in the template being rendered, reused on each call to apply()
+	 */
+	private String[] values = new String[0];
+	
+	/**
+	 * Maximum number of variable replacements performed when expanding a template, including the
+	 * replacements performed when expanding variables nested in the values of other variables
+	 */
+	private static final int MAX_REPLACEMENTS = 0x100;
+	
+	/**
+	 * Maximum number of parsed templates to keep in the cache
+	 */
+	private static final int MAX_CACHED_TEMPLATES = 512;
+	
+	/**
+	 * Parsed templates, keyed by template string. Access ordered so that the least recently used template
+	 * is evicted once the cache is full
+	 */
+	private static final Map<String, Template> templates = Collections.synchronizedMap(new LinkedHashMap<String, Template>(64, 0.75F, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Template> eldest)
+		{
+			return this.size() > VariableExpander.MAX_CACHED_TEMPLATES;
+		}
+	});
+	
 	private static Pattern variablePattern = Pattern.compile("%(" + Variable.PREFIX_SHARED + "?[" + Variable.PREFIX_TYPES + "]?[a-z~]([a-z0-9_\\-]*?)(\\[[0-9]{1,5}\\])?)%", Pattern.CASE_INSENSITIVE);
 
 	/**
@@ -68,12 +110,28 @@ public class VariableExpander
 	 */
 	public void apply(IMacro macro)
 	{
+		Template template = VariableExpander.getTemplate(this.templateString);
+		
+		if (template.variables.length == 0)
+		{
+			this.innerString = this.templateString;
+			return;
+		}
+		
+		if (!template.strayPercent && this.render(template, macro))
+		{
+			this.innerString = this.buffer.toString();
+			return;
+		}
+		
+		// Replaced text may join up with stray % signs or contain variables itself, in which case the result depends
+		// on the order replacements are made in, so fall back to replacing and rescanning one variable at a time
 		this.innerString = this.templateString;
 		
 		Matcher variablePatternMatcher = variablePattern.matcher(this.innerString);
 		int replacements = 0;
 		
-		while (variablePatternMatcher.find() && replacements < 0x100)
+		while (variablePatternMatcher.find() && replacements < VariableExpander.MAX_REPLACEMENTS)
 		{
 			replacements++;
 			
@@ -82,6 +140,77 @@ public class VariableExpander
 		}
 	}
 	
+	/**
+	 * Render the template into the buffer in a single pass. Replacements are made in order of first occurrence
+	 * and stop once the replacement limit is reached, as they would be when replacing and rescanning.
+	 * 
+	 * @param template
+	 * @param macro
+	 * @return false if a replaced value contains a % sign, in which case the buffer contents are not valid
+	 */
+	private boolean render(Template template, IMacro macro)
+	{
+		if (this.values.length < template.distinctCount)
+		{
+			this.values = new String[template.distinctCount];
+		}
+		
+		int budget = Math.min(template.distinctCount, VariableExpander.MAX_REPLACEMENTS);
+		boolean valid = true;
+		StringBuilder buffer = this.buffer;
+		buffer.setLength(0);
+		
+		for (int index = 0; index < template.variables.length && valid; index++)
+		{
+			buffer.append(template.literals[index]);
+			int distinct = template.distinct[index];
+			
+			if (distinct < budget)
+			{
+				if (this.values[distinct] == null)
+				{
+					String value = VariableExpander.getReplacement(this.provider, macro, this.quoteStrings, template.variables[index], template.names[index], this.defaultStringValue);
+					this.values[distinct] = value;
+					valid = value.indexOf('%') < 0;
+				}
+				
+				buffer.append(this.values[distinct]);
+			}
+			else
+			{
+				buffer.append(template.variables[index]);
+			}
+		}
+		
+		buffer.append(template.literals[template.variables.length]);
+		
+		for (int distinct = 0; distinct < template.distinctCount; distinct++)
+		{
+			this.values[distinct] = null;
+		}
+		
+		return valid;
+	}
+	
+	/**
+	 * Get the parsed form of the specified template, from the cache if available
+	 * 
+	 * @param text
+	 * @return
+	 */
+	private static Template getTemplate(String text)
+	{
+		Template template = VariableExpander.templates.get(text);
+		
+		if (template == null)
+		{
+			template = Template.parse(text);
+			VariableExpander.templates.put(text, template);
+		}
+		
+		return template;
+	}
+	
 	/**
 	 * Expand a single variable using the supplied provider and macro as context
 	 * 
@@ -108,25 +237,41 @@ public class VariableExpander
 	 * @return
 	 */
 	private static String replaceVariable(IScriptActionProvider provider, IMacro macro, String subject, boolean quoteStrings, String variable, String variableName, String defaultStringValue)
+	{
+		return subject.replace(variable, VariableExpander.getReplacement(provider, macro, quoteStrings, variable, variableName, defaultStringValue));
+	}
+	
+	/**
+	 * Get the text which should replace the specified variable
+	 * 
+	 * @param provider
+	 * @param macro
+	 * @param quoteStrings
+	 * @param variable
+	 * @param variableName
+	 * @param defaultStringValue
+	 * @return
+	 */
+	private static String getReplacement(IScriptActionProvider provider, IMacro macro, boolean quoteStrings, String variable, String variableName, String defaultStringValue)
 	{
 		Object oVariableValue = provider != null ? provider.getVariable(variableName, macro) : null;
 		
 		if (oVariableValue == null)
 		{
-			if (Variable.couldBeInt(variableName)) return subject.replace(variable, "0");
-			if (Variable.couldBeString(variableName)) return subject.replace(variable, defaultStringValue);
-			if (Variable.couldBeBoolean(variableName)) return subject.replace(variable, "False");
-			return subject.replace(variable, variableName);
+			if (Variable.couldBeInt(variableName)) return "0";
+			if (Variable.couldBeString(variableName)) return defaultStringValue;
+			if (Variable.couldBeBoolean(variableName)) return "False";
+			return variableName;
 		}
 		
 		if (oVariableValue instanceof Integer)
 		{
 			int iVariableValue = (Integer)oVariableValue;
-			return subject.replace(variable, String.valueOf(iVariableValue));
+			return String.valueOf(iVariableValue);
 		}
 		else if (oVariableValue instanceof Boolean)
 		{
-			return subject.replace(variable, ((Boolean)oVariableValue) ? "True" : "False");
+			return ((Boolean)oVariableValue) ? "True" : "False";
 		}
 		
 		String variableValue = oVariableValue.toString();
@@ -136,7 +281,7 @@ public class VariableExpander
 			variableValue = "\"" + variableValue + "\"";
 		}
 		
-		return subject.replace(variable, variableValue.replace(variable, variableName));
+		return variableValue.replace(variable, variableName);
 	}
 
 	@Override
@@ -144,4 +289,114 @@ public class VariableExpander
 	{
 		return this.innerString;
 	}
+	
+	/**
+	 * A template string parsed into alternating literal and variable segments
+	 */
+	static final class Template
+	{
+		/**
+		 * Literal text segments, literals[n] precedes variables[n] and the final literal follows the last variable
+		 */
+		final String[] literals;
+		
+		/**
+		 * Variables as they appear in the template, including the enclosing % signs
+		 */
+		final String[] variables;
+		
+		/**
+		 * Names of the variables, without the enclosing % signs
+		 */
+		final String[] names;
+		
+		/**
+		 * For each variable, the index of the first occurrence of the same variable in the template
+		 */
+		final int[] distinct;
+		
+		/**
+		 * Number of distinct variables in the template
+		 */
+		final int distinctCount;
+		
+		/**
+		 * True if any literal segment contains a % sign which could combine with replaced text to form a new variable,
+		 * or if the text of a variable also occurs somewhere it was not matched
+		 */
+		final boolean strayPercent;
+		
+		private Template(String[] literals, String[] variables, String[] names, int[] distinct, int distinctCount, boolean strayPercent)
+		{
+			this.literals      = literals;
+			this.variables     = variables;
+			this.names         = names;
+			this.distinct      = distinct;
+			this.distinctCount = distinctCount;
+			this.strayPercent  = strayPercent;
+		}
+		
+		static Template parse(String text)
+		{
+			List<String> literals = new ArrayList<String>();
+			List<String> variables = new ArrayList<String>();
+			List<String> names = new ArrayList<String>();
+			List<Integer> starts = new ArrayList<Integer>();
+			boolean strayPercent = false;
+			int literalStart = 0;
+			
+			Matcher variablePatternMatcher = variablePattern.matcher(text);
+			while (variablePatternMatcher.find())
+			{
+				String literal = text.substring(literalStart, variablePatternMatcher.start());
+				strayPercent |= literal.indexOf('%') > -1;
+				literals.add(literal);
+				variables.add(variablePatternMatcher.group());
+				names.add(variablePatternMatcher.group(1));
+				starts.add(variablePatternMatcher.start());
+				literalStart = variablePatternMatcher.end();
+			}
+			
+			String tail = text.substring(literalStart);
+			strayPercent |= tail.indexOf('%') > -1;
+			literals.add(tail);
+			
+			int[] distinct = new int[variables.size()];
+			int distinctCount = 0;
+			
+			for (int index = 0; index < distinct.length; index++)
+			{
+				int first = variables.indexOf(variables.get(index));
+				distinct[index] = first == index ? distinctCount++ : distinct[first];
+				
+				// Replacing a variable also replaces any other occurrences of its text, such as "%b%" in "%a%b%b%", so
+				// if the text occurs anywhere that was not matched as a variable the template can't be rendered in one pass
+				if (first == index && !Template.occursOnlyAt(text, variables, starts, index))
+				{
+					strayPercent = true;
+				}
+			}
+			
+			return new Template(literals.toArray(new String[literals.size()]), variables.toArray(new String[variables.size()]), names.toArray(new String[names.size()]), distinct, distinctCount, strayPercent);
+		}
+		
+		/**
+		 * Check that the non-overlapping occurrences of a variable's text, as String.replace would find them, are
+		 * exactly the places where the variable was matched
+		 */
+		private static boolean occursOnlyAt(String text, List<String> variables, List<Integer> starts, int first)
+		{
+			String variable = variables.get(first);
+			int index = first;
+			
+			for (int pos = text.indexOf(variable); pos > -1; pos = text.indexOf(variable, pos + variable.length()))
+			{
+				while (index < variables.size() && !variable.equals(variables.get(index))) index++;
+				if (index == variables.size() || starts.get(index) != pos) return false;
+				index++;
+			}
+			
+			return true;
+		}
+	}
 }
@@ -0,0 +1,189 @@
+package net.eq2online.macros.scripting;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+
+import net.eq2online.macros.scripting.api.IArrayProvider;
+
+/**
+ * Pre-parsed form of a raw variable name. Parsing a variable name with the name pattern is comparatively
+ * expensive and scripts tend to access the same handful of names over and over, so handles are interned
+ * per raw name and reused by {@link Variable#getVariable}. Handles are shared by every macro and context
+ * so they hold no array provider state, the provider is resolved by each {@link Variable} against its own
+ * list of providers.
+ *
+ * @author Adam Mummery-Smith
+ */
+public final class VariableHandle
+{
+	/**
+	 * Maximum number of handles to intern, the cache is simply flushed if it grows larger than this since
+	 * this only happens if scripts generate variable names dynamically
+	 */
+	private static final int MAX_HANDLES = 4096;
+
+	/**
+	 * Interned handles, keyed by raw variable name
+	 */
+	private static final Map<String, VariableHandle> handles = new ConcurrentHashMap<String, VariableHandle>();
+
+	/**
+	 * Raw name this handle was created from
+	 */
+	public final String rawName;
+
+	/**
+	 * True if the raw name is a valid variable name
+	 */
+	public final boolean isValid;
+
+	/**
+	 * True if this variable is a shared (global) variable
+	 */
+	public final boolean isShared;
+
+	/**
+	 * Variable type prefix
+	 */
+	public final String prefix;
+
+	/**
+	 * Type of variable
+	 */
+	public final Variable.Type type;
+
+	/**
+	 * Name of the variable without prefixes or array index
+	 */
+	public final String variableName;
+
+	/**
+	 * Name including type prefix
+	 */
+	public final String qualifiedName;
+
+	/**
+	 * True if the raw name included an array index
+	 */
+	public final boolean hasArrayIndex;
+
+	/**
+	 * Array index if specified, or -1
+	 */
+	public final int arrayIndex;
+
+	/**
+	 * If the raw name is an array specifier such as "name[]", the handle for the name without the suffix
+	 */
+	private final VariableHandle arraySpecifier;
+
+	private VariableHandle(String rawName)
+	{
+		this.rawName = rawName;
+
+		Matcher var = Variable.variableNamePattern.matcher(rawName);
+		this.isValid = var.matches();
+
+		if (this.isValid)
+		{
+			this.isShared      = var.group(1).equals(Variable.PREFIX_SHARED);
+			this.prefix        = var.group(2);
+			this.variableName  = var.group(3);
+			this.qualifiedName = this.prefix + this.variableName;
+			this.hasArrayIndex = var.group(5) != null;
+			this.arrayIndex    = this.hasArrayIndex && var.group(6) != null ? Math.max(0, Integer.parseInt(var.group(6))) : -1;
+			this.arraySpecifier = null;
+		}
+		else
+		{
+			this.isShared      = false;
+			this.prefix        = "";
+			this.variableName  = null;
+			this.qualifiedName = null;
+			this.hasArrayIndex = false;
+			this.arrayIndex    = -1;
+
+			VariableHandle specifier = null;
+			if (Variable.couldBeArraySpecifier(rawName))
+			{
+				specifier = VariableHandle.get(rawName.substring(0, rawName.length() - Variable.SUFFIX_ARRAY.length()));
+			}
+
+			this.arraySpecifier = specifier != null && specifier.isValid ? specifier : null;
+		}
+
+		if (this.prefix.equals(Variable.PREFIX_INT)) this.type = Variable.Type.Counter;
+		else if (this.prefix.equals(Variable.PREFIX_STRING)) this.type = Variable.Type.String;
+		else this.type = Variable.Type.Flag;
+	}
+
+	/**
+	 * Get the handle for the valid variable name equivalent to this array specifier, or null if the raw
+	 * name is not an array specifier
+	 */
+	public VariableHandle getArraySpecifier()
+	{
+		return this.arraySpecifier;
+	}
+
+	/**
+	 * Find the array provider which provides this variable's array. The primary provider is always checked
+	 * first, if it doesn't have the array then the first of the supplied providers which has it is returned.
+	 *
+	 * @param primary
+	 * @param arrayProviders
+	 * @return
+	 */
+	IArrayProvider resolveArrayProvider(IArrayProvider primary, List<IArrayProvider> arrayProviders)
+	{
+		if (primary != null && primary.checkArrayExists(this.qualifiedName))
+		{
+			return primary;
+		}
+
+		if (arrayProviders != null)
+		{
+			for (IArrayProvider otherProvider : arrayProviders)
+			{
+				if (otherProvider.checkArrayExists(this.qualifiedName))
+				{
+					return otherProvider;
+				}
+			}
+		}
+
+		return primary;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("VariableHandle(%s)[%s]", this.rawName, this.arrayIndex);
+	}
+
+	/**
+	 * Get the interned handle for the specified raw variable name
+	 *
+	 * @param rawName
+	 * @return
+	 */
+	public static VariableHandle get(String rawName)
+	{
+		VariableHandle handle = VariableHandle.handles.get(rawName);
+
+		if (handle == null)
+		{
+			if (VariableHandle.handles.size() >= VariableHandle.MAX_HANDLES)
+			{
+				VariableHandle.handles.clear();
+			}
+
+			handle = new VariableHandle(rawName);
+			VariableHandle.handles.put(rawName, handle);
+		}
+
+		return handle;
+	}
+}
@@ -0,0 +1,148 @@
+package net.eq2online.macros.scripting;
+
+import java.util.ArrayDeque;
+
+import net.eq2online.macros.scripting.api.IMacroEventVariableProvider;
+import net.eq2online.macros.scripting.api.IPooledVariableProvider;
+
+/**
+ * Pool of the variable providers spawned by one macro event. Instances are created through a cached
+ * constructor handle rather than by reflection, and providers which implement {@link IPooledVariableProvider}
+ * are reset and kept when they are released so that frequently dispatched events reuse the same few
+ * instances. Providers which do not implement it are created for each dispatch as before.
+ *
+ * @author Adam Mummery-Smith
+ */
+public final class VariableProviderPool
+{
+	/**
+	 * Default maximum number of idle providers kept
+	 */
+	public static final int DEFAULT_MAX_IDLE = 16;
+
+	private final InstanceFactory<? extends IMacroEventVariableProvider> factory;
+
+	private final boolean pooled;
+
+	private final int maxIdle;
+
+	private final ArrayDeque<IMacroEventVariableProvider> idle = new ArrayDeque<IMacroEventVariableProvider>();
+
+	private long created, reused;
+
+	public VariableProviderPool(Class<? extends IMacroEventVariableProvider> providerClass) throws NoSuchMethodException, IllegalAccessException
+	{
+		this(providerClass, VariableProviderPool.DEFAULT_MAX_IDLE);
+	}
+
+	/**
+	 * @param providerClass provider class, must have an accessible no-arg constructor
+	 * @param maxIdle maximum number of released providers to keep
+	 * @throws NoSuchMethodException if the class has no no-arg constructor
+	 * @throws IllegalAccessException if the constructor is not accessible
+	 */
+	public VariableProviderPool(Class<? extends IMacroEventVariableProvider> providerClass, int maxIdle) throws NoSuchMethodException, IllegalAccessException
+	{
+		this.factory = InstanceFactory.forClass(providerClass);
+		this.pooled = IPooledVariableProvider.class.isAssignableFrom(providerClass);
+		this.maxIdle = Math.max(0, maxIdle);
+	}
+
+	public Class<? extends IMacroEventVariableProvider> getProviderClass()
+	{
+		return this.factory.getType();
+	}
+
+	/**
+	 * Get a provider initialised with the specified event arguments, reusing an idle provider if one is
+	 * available
+	 *
+	 * @param args
+	 * @return
+	 * @throws Exception if a new provider could not be created
+	 */
+	public IMacroEventVariableProvider acquire(String[] args) throws Exception
+	{
+		IMacroEventVariableProvider provider = null;
+
+		synchronized (this.idle)
+		{
+			provider = this.idle.poll();
+			if (provider != null) this.reused++;
+		}
+
+		if (provider == null)
+		{
+			provider = this.factory.newInstance();
+			synchronized (this.idle)
+			{
+				this.created++;
+			}
+		}
+
+		provider.initInstance(args);
+		return provider;
+	}
+
+	/**
+	 * Return a provider to the pool, providers which are not poolable, were not created by this pool or are
+	 * released while the pool is full are discarded. Releasing a provider which is already idle has no effect
+	 *
+	 * @param provider
+	 */
+	public void release(IMacroEventVariableProvider provider)
+	{
+		if (!this.pooled || provider == null || provider.getClass() != this.factory.getType()) return;
+
+		synchronized (this.idle)
+		{
+			if (this.idle.size() >= this.maxIdle) return;
+
+			for (IMacroEventVariableProvider idleProvider : this.idle)
+			{
+				if (idleProvider == provider) return;
+			}
+
+			((IPooledVariableProvider)provider).reset();
+			this.idle.push(provider);
+		}
+	}
+
+	/**
+	 * Get whether released providers are reused
+	 */
+	public boolean isPooled()
+	{
+		return this.pooled;
+	}
+
+	public int getIdleCount()
+	{
+		synchronized (this.idle)
+		{
+			return this.idle.size();
+		}
+	}
+
+	/**
+	 * Get the number of providers created by the pool
+	 */
+	public long getCreatedCount()
+	{
+		synchronized (this.idle)
+		{
+			return this.created;
+		}
+	}
+
+	/**
+	 * Get the number of times an idle provider was reused
+	 */
+	public long getReusedCount()
+	{
+		synchronized (this.idle)
+		{
+			return this.reused;
+		}
+	}
+}
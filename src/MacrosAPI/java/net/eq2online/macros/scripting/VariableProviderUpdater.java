@@ -0,0 +1,296 @@
+package net.eq2online.macros.scripting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.eq2online.macros.scripting.api.IChangeTrackingVariableProvider;
+import net.eq2online.macros.scripting.api.IVariableChangeTracker;
+import net.eq2online.macros.scripting.api.IVariableListener;
+import net.eq2online.macros.scripting.api.IVariableProvider;
+
+/**
+ * Updates the variable providers registered with a script action provider each tick. Providers which
+ * implement {@link IChangeTrackingVariableProvider} are only updated on ticks after they have marked
+ * themselves dirty, so unchanged providers are never visited, and the variables they report as changed are
+ * delivered to variable listeners as a single map of new values. Other providers are updated on every tick as
+ * before. The time spent updating each provider is recorded.
+ *
+ * Registration and change tracking may be used from any thread, update() is called on the tick thread.
+ *
+ * @author Adam Mummery-Smith
+ */
+public final class VariableProviderUpdater
+{
+	/**
+	 * Snapshot of the update timings for one provider
+	 */
+	public static final class Timing
+	{
+		public final IVariableProvider provider;
+
+		public final boolean tracked;
+
+		public final long updates;
+
+		/**
+		 * Number of changed variables the provider reported
+		 */
+		public final long changes;
+
+		public final long totalNanos;
+
+		public final long maxNanos;
+
+		Timing(Registration registration)
+		{
+			this.provider   = registration.provider;
+			this.tracked    = registration.tracked;
+			this.updates    = registration.updates;
+			this.changes    = registration.changes;
+			this.totalNanos = registration.totalNanos;
+			this.maxNanos   = registration.maxNanos;
+		}
+
+		public long getMeanNanos()
+		{
+			return this.updates > 0 ? this.totalNanos / this.updates : 0L;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%s%s: %d update(s), %d change(s), %.3fms total, %.3fms max", this.provider.getClass().getSimpleName(), this.tracked ? " (tracked)" : "", this.updates, this.changes, this.totalNanos / 1000000.0, this.maxNanos / 1000000.0);
+		}
+	}
+
+	/**
+	 * A registered provider, also the change tracker handed to tracked providers
+	 */
+	final class Registration implements IVariableChangeTracker
+	{
+		final IVariableProvider provider;
+
+		final boolean tracked;
+
+		final AtomicBoolean dirty = new AtomicBoolean();
+
+		volatile boolean registered = true;
+
+		/**
+		 * Accessed while holding the updater's lock
+		 */
+		long updates, changes, totalNanos, maxNanos;
+
+		Registration(IVariableProvider provider)
+		{
+			this.provider = provider;
+			this.tracked = provider instanceof IChangeTrackingVariableProvider;
+		}
+
+		@Override
+		public void markDirty()
+		{
+			if (this.registered && this.dirty.compareAndSet(false, true)) VariableProviderUpdater.this.dirty.add(this);
+		}
+
+		@Override
+		public void markChanged(String variableName)
+		{
+			if (this.registered && variableName != null) VariableProviderUpdater.this.changed(this, variableName);
+		}
+	}
+
+	private final ConcurrentHashMap<IVariableProvider, Registration> registrations = new ConcurrentHashMap<IVariableProvider, Registration>();
+
+	/**
+	 * Providers updated every tick
+	 */
+	private final List<Registration> polled = new CopyOnWriteArrayList<Registration>();
+
+	/**
+	 * Tracked providers waiting for an update
+	 */
+	private final ConcurrentLinkedQueue<Registration> dirty = new ConcurrentLinkedQueue<Registration>();
+
+	/**
+	 * Dirty providers being updated on the current tick
+	 */
+	private final List<Registration> updating = new ArrayList<Registration>();
+
+	/**
+	 * Variables reported as changed since the last delivery, and the provider which reported each one. The
+	 * two maps are swapped on delivery so that neither is reallocated
+	 */
+	private Map<String, Registration> changes = new LinkedHashMap<String, Registration>();
+
+	private Map<String, Registration> delivering = new LinkedHashMap<String, Registration>();
+
+	private final Map<String, Object> delta = new LinkedHashMap<String, Object>();
+
+	/**
+	 * Register a provider, tracked providers are given their change tracker and updated on the next tick
+	 *
+	 * @param provider
+	 * @return false if the provider was already registered
+	 */
+	public boolean register(IVariableProvider provider)
+	{
+		Registration registration = new Registration(provider);
+		if (this.registrations.putIfAbsent(provider, registration) != null) return false;
+
+		if (registration.tracked)
+		{
+			((IChangeTrackingVariableProvider)provider).setChangeTracker(registration);
+			registration.markDirty();
+		}
+		else
+		{
+			this.polled.add(registration);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Unregister a provider, changes it reported which have not been delivered are discarded
+	 *
+	 * @param provider
+	 * @return false if the provider was not registered
+	 */
+	public boolean unregister(IVariableProvider provider)
+	{
+		Registration registration = this.registrations.remove(provider);
+		if (registration == null) return false;
+
+		registration.registered = false;
+
+		if (registration.tracked)
+		{
+			((IChangeTrackingVariableProvider)provider).setChangeTracker(null);
+		}
+		else
+		{
+			this.polled.remove(registration);
+		}
+
+		return true;
+	}
+
+	private synchronized void changed(Registration registration, String variableName)
+	{
+		registration.changes++;
+		this.changes.put(variableName, registration);
+	}
+
+	/**
+	 * Update the providers which need updating and deliver the changed variables to the supplied listeners.
+	 * The map passed to listeners is reused, listeners must copy any values they want to keep
+	 *
+	 * @param clock true if this is a clock tick
+	 * @param listeners
+	 */
+	public void update(boolean clock, List<IVariableListener> listeners)
+	{
+		for (Registration registration : this.polled)
+		{
+			this.update(registration, clock);
+		}
+
+		// Take the dirty providers before updating any of them so that a provider which marks itself dirty
+		// during its update is queued for the next tick rather than updated again on this one
+		for (Registration registration = this.dirty.poll(); registration != null; registration = this.dirty.poll())
+		{
+			registration.dirty.set(false);
+			if (registration.registered) this.updating.add(registration);
+		}
+
+		for (int index = 0; index < this.updating.size(); index++)
+		{
+			this.update(this.updating.get(index), clock);
+		}
+
+		this.updating.clear();
+
+		this.deliver(listeners);
+	}
+
+	private void update(Registration registration, boolean clock)
+	{
+		long start = System.nanoTime();
+
+		try
+		{
+			registration.provider.updateVariables(clock);
+		}
+		finally
+		{
+			long nanos = System.nanoTime() - start;
+
+			synchronized (this)
+			{
+				registration.updates++;
+				registration.totalNanos += nanos;
+				if (nanos > registration.maxNanos) registration.maxNanos = nanos;
+			}
+		}
+	}
+
+	private void deliver(List<IVariableListener> listeners)
+	{
+		Map<String, Registration> delivering;
+
+		synchronized (this)
+		{
+			if (this.changes.isEmpty()) return;
+
+			delivering = this.changes;
+			this.changes = this.delivering;
+			this.delivering = delivering;
+		}
+
+		this.delta.clear();
+
+		for (Map.Entry<String, Registration> change : delivering.entrySet())
+		{
+			if (change.getValue().registered) this.delta.put(change.getKey(), change.getValue().provider.getVariable(change.getKey()));
+		}
+
+		delivering.clear();
+		if (this.delta.isEmpty()) return;
+
+		for (IVariableListener listener : listeners)
+		{
+			listener.setVariables(this.delta);
+		}
+	}
+
+	/**
+	 * Get the number of tracked providers waiting for an update
+	 */
+	public int getDirtyCount()
+	{
+		return this.dirty.size();
+	}
+
+	/**
+	 * Get a snapshot of the update timings for each registered provider
+	 */
+	public synchronized List<Timing> getTimings()
+	{
+		List<Timing> timings = new ArrayList<Timing>(this.registrations.size());
+
+		for (Registration registration : this.registrations.values())
+		{
+			timings.add(new Timing(registration));
+		}
+
+		return Collections.unmodifiableList(timings);
+	}
+}
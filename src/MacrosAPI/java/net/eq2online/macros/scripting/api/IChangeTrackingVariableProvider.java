@@ -0,0 +1,25 @@
+package net.eq2online.macros.scripting.api;
+
+/**
+ * Variable providers can implement this interface to be updated only when something has changed instead of
+ * on every tick. Where the script action provider supports change tracking the provider is updated once when
+ * it is registered and afterwards only on ticks after it has called markDirty() on its tracker, and should
+ * call markChanged() for each variable whose value changed so that variable listeners receive just the
+ * changes. This is an optimisation only, providers must still produce correct values when updateVariables()
+ * is called on every tick.
+ *
+ * @author Adam Mummery-Smith
+ */
+public interface IChangeTrackingVariableProvider extends IVariableProvider
+{
+	/**
+	 * Called when the provider is registered with the tracker it should report changes to, and with null when
+	 * it is unregistered. Script action providers which do not support change tracking never call this method
+	 * and simply update the provider every tick, so the provider may never receive a tracker and must check for
+	 * null before calling markDirty() or markChanged(). The tracker may also be set to null at any time from
+	 * another thread, so it should be read once into a local before use
+	 *
+	 * @param tracker
+	 */
+	public abstract void setChangeTracker(IVariableChangeTracker tracker);
+}
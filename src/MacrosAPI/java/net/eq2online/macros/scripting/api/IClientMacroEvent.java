@@ -0,0 +1,22 @@
+package net.eq2online.macros.scripting.api;
+
+import net.minecraft.util.IIcon;
+
+/**
+ * Event handle members which use game types, implemented by the events created by the game client's event
+ * manager
+ * 
+ * @author Adam Mummery-Smith
+ */
+public interface IClientMacroEvent extends IMacroEvent
+{
+	/**
+	 * Get the icon to display in the UI
+	 */
+	public abstract IIcon getIcon();
+	
+	/**
+	 * Set the icon to display in the UI
+	 */
+	public abstract void setIcon(IIcon icon);
+}
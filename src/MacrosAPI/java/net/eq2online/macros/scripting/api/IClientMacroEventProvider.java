@@ -0,0 +1,16 @@
+package net.eq2online.macros.scripting.api;
+
+/**
+ * Event provider with a dispatcher which is ticked by the game client
+ *
+ * @author Adam Mummery-Smith
+ */
+public interface IClientMacroEventProvider extends IMacroEventProvider
+{
+	/**
+	 * Get the dispatcher for this provider's events, the dispatcher receives onTick events every frame
+	 * and is expected to dispatch events as required by the provider, the provider can implement its own
+	 * dispatcher in simple scenarios
+	 */
+	public abstract IMacroEventDispatcher getDispatcher();
+}
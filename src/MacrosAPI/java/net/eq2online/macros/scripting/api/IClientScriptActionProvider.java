@@ -0,0 +1,35 @@
+package net.eq2online.macros.scripting.api;
+
+import net.eq2online.macros.scripting.crafting.AutoCraftingToken;
+import net.eq2online.macros.scripting.crafting.IAutoCraftingInitiator;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.entity.EntityClientPlayerMP;
+import net.minecraft.entity.Entity;
+import net.minecraft.item.ItemStack;
+
+/**
+ * Script action provider callbacks which take game objects. The provider supplied by the game client
+ * implements this interface, script actions which need these callbacks should check for it before casting
+ * since other providers (for example the headless provider) do not.
+ * 
+ * @author Adam Mummery-Smith
+ */
+public interface IClientScriptActionProvider extends IScriptActionProvider
+{
+	/**
+	 * @param minecraft
+	 * @param thePlayer
+	 * @param itemstack
+	 * @param slotID
+	 */
+	public abstract void actionUseItem(Minecraft minecraft, EntityClientPlayerMP thePlayer, ItemStack itemstack, int slotID);
+
+	/**
+	 * @param entity
+	 * @param yaw
+	 * @param pitch
+	 */
+	public abstract void actionSetEntityDirection(Entity entity, float yaw, float pitch);
+
+	public abstract AutoCraftingToken actionCraft(IAutoCraftingInitiator initiator, EntityClientPlayerMP thePlayer, String itemId, int damageValue, int amount, boolean shouldThrowResult, boolean verbose);
+}
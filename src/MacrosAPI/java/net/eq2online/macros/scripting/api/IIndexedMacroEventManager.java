@@ -0,0 +1,28 @@
+package net.eq2online.macros.scripting.api;
+
+/**
+ * Optional interface for event managers which can raise events by ID. Kept separate from
+ * {@link IMacroEventManager} so that existing manager implementations are not affected, providers which raise
+ * events frequently should look up the event ID once and check for this interface with instanceof, falling
+ * back to resolving the event with getEvent(int) and sending it by name when the manager does not implement it:
+ * 
+ * <pre>
+ * if (manager instanceof IIndexedMacroEventManager)
+ *     ((IIndexedMacroEventManager)manager).sendEvent(eventId, priority, args);
+ * else
+ *     manager.sendEvent(manager.getEvent(eventId).getName(), priority, args);
+ * </pre>
+ * 
+ * @author Adam Mummery-Smith
+ */
+public interface IIndexedMacroEventManager extends IMacroEventManager
+{
+	/**
+	 * Raise an event by ID with the specified priority, avoiding resolving the event by name on every send
+	 * 
+	 * @param eventId
+	 * @param priority higher values are dispatched first, 0 is normal priority
+	 * @param eventArgs
+	 */
+	public abstract void sendEvent(int eventId, int priority, String... eventArgs);
+}
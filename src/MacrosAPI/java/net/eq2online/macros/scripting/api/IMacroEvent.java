@@ -1,10 +1,9 @@
 package net.eq2online.macros.scripting.api;
 
-import net.minecraft.util.IIcon;
-
 /**
  * Interface for event handles returned by the event manager, when registering an event with the event
- * manager a concrete class implementing IMacroEvent will be returned. 
+ * manager a concrete class implementing IMacroEvent will be returned. Events created by the game client also
+ * implement {@link IClientMacroEvent} which carries the UI icon.
  * 
  * @author Adam Mummery-Smith
  */
@@ -57,16 +56,6 @@ public interface IMacroEvent
 	 */
 	public abstract String getPermissionName();
 	
-	/**
-	 * Get the icon to display in the UI
-	 */
-	public abstract IIcon getIcon();
-	
-	/**
-	 * Set the icon to display in the UI
-	 */
-	public abstract void setIcon(IIcon icon);
-
 	/**
 	 * Get a help line for display in the macro edit GUI, lines are in the range 0-5
 	 * @param eventId
@@ -95,7 +95,7 @@ public interface IMacroEventManager
 	 * Raise an event by name with the specified priority
 	 * 
 	 * @param eventName
-	 * @param priority
+	 * @param priority higher values are dispatched first, 0 is normal priority
 	 * @param eventArgs
 	 */
 	public abstract void sendEvent(String eventName, int priority, String... eventArgs);
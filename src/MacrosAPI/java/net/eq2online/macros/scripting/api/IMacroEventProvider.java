@@ -1,19 +1,13 @@
 package net.eq2online.macros.scripting.api;
 
 /**
- * Interface for event providers
+ * Interface for event providers, providers which dispatch their own events implement
+ * {@link IClientMacroEventProvider}
  *
  * @author Adam Mummery-Smith
  */
 public interface IMacroEventProvider extends IMacrosAPIModule
 {
-	/**
-	 * Get the dispatcher for this provider's events, the dispatcher receives onTick events every frame
-	 * and is expected to dispatch events as required by the provider, the provider can implement its own
-	 * dispatcher in simple scenarios
-	 */
-	public abstract IMacroEventDispatcher getDispatcher();
-
 	/**
 	 * Callback from the event manager whenever configuration changes or a new provider is added, the provider
 	 * should call manager.registerEvent with ALL of the events it provides
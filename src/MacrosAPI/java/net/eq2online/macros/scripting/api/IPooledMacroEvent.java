@@ -0,0 +1,25 @@
+package net.eq2online.macros.scripting.api;
+
+/**
+ * Optional interface for events which reuse the variable providers they spawn. Kept separate from
+ * {@link IMacroEvent} so that existing event implementations are not affected, executives should check for it
+ * with instanceof.
+ * 
+ * An executive which dispatches events MUST call releaseVariableProvider() once the macro spawned by the
+ * event has finished with the provider, otherwise the provider is never returned to the pool and a new one
+ * is created for every dispatch. The headless event manager does this when it dispatches queued events, the
+ * game client's executive is not part of this project and must make the same call itself.
+ * 
+ * @author Adam Mummery-Smith
+ */
+public interface IPooledMacroEvent extends IMacroEvent
+{
+	/**
+	 * Internal method, this is called by the executive when the macro spawned by a dispatched event has finished
+	 * with the provider returned by getVariableProvider so that the provider can be reused. The provider must not
+	 * be used after it is released
+	 * 
+	 * @param provider
+	 */
+	public abstract void releaseVariableProvider(IMacroEventVariableProvider provider);
+}
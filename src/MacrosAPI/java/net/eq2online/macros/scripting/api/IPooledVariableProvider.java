@@ -0,0 +1,18 @@
+package net.eq2online.macros.scripting.api;
+
+/**
+ * Event variable providers can implement this interface to allow their instances to be reused. When the
+ * macro spawned by an event has finished with the provider it is reset and returned to a pool, and the next
+ * dispatch of the same event initialises it again with initInstance() instead of creating a new instance.
+ * Providers implementing this interface must not be retained by anything once they are released.
+ *
+ * @author Adam Mummery-Smith
+ */
+public interface IPooledVariableProvider extends IMacroEventVariableProvider
+{
+	/**
+	 * Called when the provider is returned to the pool, the provider should discard any state from the
+	 * instance it was last initialised for
+	 */
+	public abstract void reset();
+}
@@ -3,19 +3,15 @@ package net.eq2online.macros.scripting.api;
 import java.util.Set;
 
 import net.eq2online.macros.scripting.ScriptContext;
-import net.eq2online.macros.scripting.crafting.AutoCraftingToken;
-import net.eq2online.macros.scripting.crafting.IAutoCraftingInitiator;
-import net.minecraft.client.Minecraft;
-import net.minecraft.client.entity.EntityClientPlayerMP;
-import net.minecraft.entity.Entity;
-import net.minecraft.item.ItemStack;
 
 /**
  * Main script action callback interface, provides most of the action-facing API. This interface is mis-named for
  * historic reasons and really ought to be called ScriptActionActionProvider or ScriptActionCallbackProvider since it
  * PROVIDE actions TO ScriptActions it *doesn't* PROVIDE ScriptActions.
  * 
- * Script Actions should treat this as their primary interface with the game 
+ * Script Actions should treat this as their primary interface with the game. Callbacks which take game objects
+ * are declared on {@link IClientScriptActionProvider} so that this interface can be used without the game on
+ * the class path.
  * 
  * @author Adam Mummery-Smith
  */
@@ -36,7 +32,9 @@ public interface IScriptActionProvider
 	public abstract void unregisterVariableProvider(IVariableProvider variableProvider);
 
 	/**
-	 * Update all variable providers
+	 * Update the registered variable providers. Implementations may skip providers which implement
+	 * IChangeTrackingVariableProvider until they mark themselves dirty, but are not required to and may update
+	 * them on every tick like any other provider
 	 */
 	public abstract void updateVariableProviders(boolean clock);
 
@@ -320,27 +318,12 @@ public interface IScriptActionProvider
 	 */
 	public abstract void actionSelectResourcePacks(String[] resourcePackNames);
 	
-	/**
-	 * @param minecraft
-	 * @param thePlayer
-	 * @param itemstack
-	 * @param slotID
-	 */
-	public abstract void actionUseItem(Minecraft minecraft, EntityClientPlayerMP thePlayer, ItemStack itemstack, int slotID);
-	
 	/**
 	 * @param keyBindId
 	 * @param keyCode
 	 */
 	public abstract void actionBindKey(int keyBindId, int keyCode);
 
-	/**
-	 * @param entity
-	 * @param yaw
-	 * @param pitch
-	 */
-	public abstract void actionSetEntityDirection(Entity entity, float yaw, float pitch);
-
 	/**
 	 * 
 	 */
@@ -364,8 +347,6 @@ public interface IScriptActionProvider
 	
 	public abstract void actionSetLabel(String targetName, String text, String binding);
 
-	public abstract AutoCraftingToken actionCraft(IAutoCraftingInitiator initiator, EntityClientPlayerMP thePlayer, String itemId, int damageValue, int amount, boolean shouldThrowResult, boolean verbose);
-
 	public abstract void actionBreakLoop(IMacro macro, IMacroAction breakAction);
 	
 	public abstract void actionBeginUnsafeBlock(IMacro macro, IMacroAction instance, int maxActions);
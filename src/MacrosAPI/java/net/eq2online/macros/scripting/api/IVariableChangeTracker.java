@@ -0,0 +1,24 @@
+package net.eq2online.macros.scripting.api;
+
+/**
+ * Handle supplied to a {@link IChangeTrackingVariableProvider} when it is registered, through which the
+ * provider reports that it needs updating and which of its variables have changed. Methods may be called
+ * from any thread.
+ *
+ * @author Adam Mummery-Smith
+ */
+public interface IVariableChangeTracker
+{
+	/**
+	 * Request a call to updateVariables() on the next tick
+	 */
+	public abstract void markDirty();
+
+	/**
+	 * Report that the value of the specified variable has changed, variable listeners receive the new value
+	 * on the next tick
+	 *
+	 * @param variableName
+	 */
+	public abstract void markChanged(String variableName);
+}
@@ -0,0 +1,17 @@
+package net.eq2online.macros.scripting.api;
+
+/**
+ * Computes the value of a variable registered with a lazy variable provider, suppliers are only called when
+ * the variable is read and its memoized value is stale
+ *
+ * @author Adam Mummery-Smith
+ */
+public interface IVariableSupplier
+{
+	/**
+	 * Compute the current value of the variable
+	 * 
+	 * @return the value, or null if the variable cannot currently be provided
+	 */
+	public abstract Object get();
+}
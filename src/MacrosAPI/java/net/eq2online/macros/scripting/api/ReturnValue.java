@@ -3,12 +3,18 @@ package net.eq2online.macros.scripting.api;
 import net.eq2online.macros.scripting.ScriptCore;
 
 /**
- * Concrete implementation of a IReturnValue for script actions  
+ * Concrete implementation of a IReturnValue for script actions. Only the value which was set is stored, the
+ * other representations are derived the first time they are requested and then remembered
  * 
  * @author Adam Mummery-Smith
  */
 public class ReturnValue implements IReturnValue
 {
+	/**
+	 * Flags for the views which have been set or derived so far
+	 */
+	private static final int HAS_STRING = 1, HAS_INT = 2, HAS_BOOL = 4;
+	
 	/**
 	 * Actual or inferred boolean value to return
 	 */
@@ -24,6 +30,12 @@ public class ReturnValue implements IReturnValue
 	 */
 	private String stringValue;
 	
+	/**
+	 * Which of the values above are valid, the other values are derived from the original value the first time
+	 * they are requested 
+	 */
+	private int valid;
+	
 	/**
 	 * Create a return value with the specified string value, infers the integer and boolean values 
 	 * 
@@ -60,8 +72,7 @@ public class ReturnValue implements IReturnValue
 	public void setString(String value)
 	{
 		this.stringValue = value;
-		this.integerValue = ScriptCore.tryParseInt(value, 0);
-		this.booleanValue = value == null || value.toLowerCase().equals("true") || this.integerValue != 0;
+		this.valid = ReturnValue.HAS_STRING;
 	}
 	
 	/**
@@ -69,9 +80,10 @@ public class ReturnValue implements IReturnValue
 	 */
 	public void setInt(int value)
 	{
-		this.stringValue = String.valueOf(value);
+		this.stringValue = null;
 		this.integerValue = value;
-		this.booleanValue = this.integerValue != 0;
+		this.booleanValue = value != 0;
+		this.valid = ReturnValue.HAS_INT | ReturnValue.HAS_BOOL;
 	}
 	
 	/**
@@ -82,6 +94,7 @@ public class ReturnValue implements IReturnValue
 		this.stringValue = value ? "True" : "False";
 		this.integerValue = value ? 1 : 0;
 		this.booleanValue = value;
+		this.valid = ReturnValue.HAS_STRING | ReturnValue.HAS_INT | ReturnValue.HAS_BOOL;
 	}
 	
 	/* (non-Javadoc)
@@ -99,6 +112,12 @@ public class ReturnValue implements IReturnValue
 	@Override
 	public boolean getBoolean()
 	{
+		if ((this.valid & ReturnValue.HAS_BOOL) == 0)
+		{
+			this.booleanValue = this.stringValue == null || "true".equalsIgnoreCase(this.stringValue) || this.getInteger() != 0;
+			this.valid |= ReturnValue.HAS_BOOL;
+		}
+		
 		return this.booleanValue;
 	}
 	
@@ -108,6 +127,12 @@ public class ReturnValue implements IReturnValue
 	@Override
 	public int getInteger()
 	{
+		if ((this.valid & ReturnValue.HAS_INT) == 0)
+		{
+			this.integerValue = ScriptCore.tryParseInt(this.stringValue, 0);
+			this.valid |= ReturnValue.HAS_INT;
+		}
+		
 		return this.integerValue;
 	}
 	
@@ -117,6 +142,12 @@ public class ReturnValue implements IReturnValue
 	@Override
 	public String getString()
 	{
+		if ((this.valid & ReturnValue.HAS_STRING) == 0)
+		{
+			this.stringValue = String.valueOf(this.integerValue);
+			this.valid |= ReturnValue.HAS_STRING;
+		}
+		
 		return this.stringValue != null ? this.stringValue : "";
 	}
 	
@@ -1,130 +1,353 @@
 package net.eq2online.macros.scripting.api;
 
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.RandomAccess;
 
 import net.eq2online.macros.scripting.ScriptCore;
 
+/**
+ * Concrete implementation of IReturnValueArray. Values are stored in columns backed by primitive arrays, only
+ * the column which was set is populated up front and the other columns are converted from it when their view
+ * is first requested. Strings converted from integers are created one element at a time as they are read.
+ *
+ * @author Adam Mummery-Smith
+ */
 public class ReturnValueArray implements IReturnValueArray
 {
-	private List<Boolean> bools = new LinkedList<Boolean>();
-	
-	private List<Integer> ints = new LinkedList<Integer>();
-	
-	private List<String> strings = new LinkedList<String>();
+	/**
+	 * Flags for the columns which have been set or converted so far
+	 */
+	private static final int HAS_STRINGS = 1, HAS_INTS = 2, HAS_BOOLS = 4;
+
+	private static final int[] NO_INTS = new int[0];
+
+	private static final String[] NO_STRINGS = new String[0];
+
+	/**
+	 * Boolean column
+	 */
+	private final BitSet bools = new BitSet();
+
+	/**
+	 * Integer column
+	 */
+	private int[] ints = ReturnValueArray.NO_INTS;
+
+	/**
+	 * String column, when converted from integers entries are filled as they are requested
+	 */
+	private String[] strings = ReturnValueArray.NO_STRINGS;
+
+	/**
+	 * Number of values
+	 */
+	private int size;
+
+	/**
+	 * Which columns are valid
+	 */
+	private int valid = ReturnValueArray.HAS_STRINGS | ReturnValueArray.HAS_INTS | ReturnValueArray.HAS_BOOLS;
+
+	/**
+	 * Column which was set, the other columns are converted from this one
+	 */
+	private int origin = ReturnValueArray.HAS_STRINGS;
+
+	/**
+	 * True if the string column is being filled lazily from the integer column
+	 */
+	private boolean lazyStrings;
 
 	private boolean append;
-	
+
+	private final List<Boolean> booleanView = new BooleanView();
+
+	private final List<Integer> integerView = new IntegerView();
+
+	private final List<String> stringView = new StringView();
+
 	public ReturnValueArray(boolean append)
 	{
 		this.append = append;
 	}
-	
+
 	public void putStrings(List<String> strings)
 	{
-		this.strings = strings;
-		this.ints.clear();
+		this.size = strings.size();
+		this.strings = strings.toArray(new String[this.size]);
+		this.lazyStrings = false;
+		this.valid = this.origin = ReturnValueArray.HAS_STRINGS;
+	}
+
+	public void putInts(List<Integer> ints)
+	{
+		this.size = ints.size();
+		this.ints = this.ints.length >= this.size ? this.ints : new int[this.size];
+
+		int index = 0;
+		for (Integer value : ints)
+		{
+			this.ints[index++] = value;
+		}
+
+		this.valid = this.origin = ReturnValueArray.HAS_INTS;
+	}
+
+	public void putBools(List<Boolean> bools)
+	{
+		this.size = bools.size();
 		this.bools.clear();
-		
-		for (String value : this.strings)
+
+		int index = 0;
+		for (Boolean value : bools)
 		{
-			int intVal = ScriptCore.tryParseInt(value, 0);
-			this.ints.add(intVal);
-			this.bools.add(value == null || value.toLowerCase().equals("true") || intVal != 0);
+			this.bools.set(index++, value);
 		}
+
+		this.valid = this.origin = ReturnValueArray.HAS_BOOLS;
 	}
-	
-	public void putInts(List<Integer> ints)
+
+	/**
+	 * Ensure the integer column is populated
+	 */
+	private void convertInts()
+	{
+		if ((this.valid & ReturnValueArray.HAS_INTS) != 0) return;
+
+		if (this.ints.length < this.size) this.ints = new int[this.size];
+
+		if (this.origin == ReturnValueArray.HAS_STRINGS)
+		{
+			for (int index = 0; index < this.size; index++)
+			{
+				this.ints[index] = ScriptCore.tryParseInt(this.strings[index], 0);
+			}
+		}
+		else
+		{
+			for (int index = 0; index < this.size; index++)
+			{
+				this.ints[index] = this.bools.get(index) ? 1 : 0;
+			}
+		}
+
+		this.valid |= ReturnValueArray.HAS_INTS;
+	}
+
+	/**
+	 * Ensure the boolean column is populated
+	 */
+	private void convertBools()
 	{
-		this.ints = ints;
-		this.strings.clear();
+		if ((this.valid & ReturnValueArray.HAS_BOOLS) != 0) return;
+
 		this.bools.clear();
 
-		for (Integer value : this.ints)
+		if (this.origin == ReturnValueArray.HAS_STRINGS)
 		{
-			this.strings.add(String.valueOf(value));
-			this.bools.add(value != 0);
-		}		
+			this.convertInts();
+
+			for (int index = 0; index < this.size; index++)
+			{
+				String value = this.strings[index];
+				this.bools.set(index, value == null || "true".equalsIgnoreCase(value) || this.ints[index] != 0);
+			}
+		}
+		else
+		{
+			for (int index = 0; index < this.size; index++)
+			{
+				this.bools.set(index, this.ints[index] != 0);
+			}
+		}
+
+		this.valid |= ReturnValueArray.HAS_BOOLS;
 	}
-	
-	public void putBools(List<Boolean> bools)
+
+	/**
+	 * Ensure the string column is available, strings from integers are only created as they are requested
+	 */
+	private void convertStrings()
 	{
-		this.bools = bools;
-		this.strings.clear();
-		this.ints.clear();
-		
-		for (Boolean value : this.bools)
+		if ((this.valid & ReturnValueArray.HAS_STRINGS) != 0) return;
+
+		if (this.strings.length < this.size) this.strings = new String[this.size];
+
+		if (this.origin == ReturnValueArray.HAS_INTS)
+		{
+			for (int index = 0; index < this.size; index++) this.strings[index] = null;
+			this.lazyStrings = true;
+		}
+		else
 		{
-			this.strings.add(value ? "True" : "False");
-			this.ints.add(value ? 1 : 0);
+			for (int index = 0; index < this.size; index++)
+			{
+				this.strings[index] = this.bools.get(index) ? "True" : "False";
+			}
+
+			this.lazyStrings = false;
 		}
+
+		this.valid |= ReturnValueArray.HAS_STRINGS;
 	}
-	
+
+	private boolean getBooleanAt(int index)
+	{
+		this.convertBools();
+		return this.bools.get(index);
+	}
+
+	private int getIntegerAt(int index)
+	{
+		this.convertInts();
+		return this.ints[index];
+	}
+
+	private String getStringAt(int index)
+	{
+		this.convertStrings();
+
+		if (this.lazyStrings && this.strings[index] == null)
+		{
+			this.strings[index] = String.valueOf(this.ints[index]);
+		}
+
+		return this.strings[index];
+	}
+
 	@Override
 	public boolean isVoid()
 	{
 		return false;
 	}
-	
+
 	@Override
 	public boolean getBoolean()
 	{
-		return this.bools.size() > 0 ? this.bools.get(0) : false;
+		return this.size > 0 ? this.getBooleanAt(0) : false;
 	}
-	
+
 	@Override
 	public int getInteger()
 	{
-		return this.ints.size() > 0 ? this.ints.get(0) : 0;
+		return this.size > 0 ? this.getIntegerAt(0) : 0;
 	}
-	
+
 	@Override
 	public String getString()
 	{
-		return this.strings.size() > 0 ? this.strings.get(0) : "";
+		return this.size > 0 ? this.getStringAt(0) : "";
 	}
-	
+
 	@Override
 	public String getLocalMessage()
 	{
 		return null;
 	}
-	
+
 	@Override
 	public String getRemoteMessage()
 	{
 		return null;
 	}
-	
+
 	@Override
 	public int size()
 	{
-		return this.strings.size();
+		return this.size;
 	}
-	
+
 	@Override
 	public boolean shouldAppend()
 	{
 		return this.append;
 	}
-	
+
 	@Override
 	public List<Boolean> getBooleans()
 	{
-		return Collections.unmodifiableList(this.bools);
+		this.convertBools();
+		return this.booleanView;
 	}
-	
+
 	@Override
 	public List<Integer> getIntegers()
 	{
-		return Collections.unmodifiableList(this.ints);
+		this.convertInts();
+		return this.integerView;
 	}
-	
+
 	@Override
 	public List<String> getStrings()
 	{
-		return Collections.unmodifiableList(this.strings);
+		this.convertStrings();
+		return this.stringView;
+	}
+
+	/**
+	 * Read-only view of the boolean column
+	 */
+	private final class BooleanView extends AbstractList<Boolean> implements RandomAccess
+	{
+		@Override
+		public Boolean get(int index)
+		{
+			ReturnValueArray.this.checkIndex(index);
+			return ReturnValueArray.this.getBooleanAt(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return ReturnValueArray.this.size;
+		}
+	}
+
+	/**
+	 * Read-only view of the integer column
+	 */
+	private final class IntegerView extends AbstractList<Integer> implements RandomAccess
+	{
+		@Override
+		public Integer get(int index)
+		{
+			ReturnValueArray.this.checkIndex(index);
+			return ReturnValueArray.this.getIntegerAt(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return ReturnValueArray.this.size;
+		}
+	}
+
+	/**
+	 * Read-only view of the string column
+	 */
+	private final class StringView extends AbstractList<String> implements RandomAccess
+	{
+		@Override
+		public String get(int index)
+		{
+			ReturnValueArray.this.checkIndex(index);
+			return ReturnValueArray.this.getStringAt(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return ReturnValueArray.this.size;
+		}
+	}
+
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= this.size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
 	}
-	
 }